@@ -4,6 +4,7 @@ package com.tpcgrp.p6ebs.config;
 import com.tpcgrp.p6ebs.service.ConfigurationService;
 import com.tpcgrp.p6ebs.service.DatabaseService;
 import com.tpcgrp.p6ebs.service.EbsProjectService;
+import com.tpcgrp.p6ebs.service.EbsReferenceDataService;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import com.tpcgrp.p6ebs.service.integration.*;
@@ -17,8 +18,9 @@ public class SpringConfig {
      * Integration service beans
      */
     @Bean
-    public EbsProjectService ebsProjectService(DatabaseService databaseService) {
-        return new EbsProjectService(databaseService);
+    public EbsProjectService ebsProjectService(DatabaseService databaseService,
+                                               EbsReferenceDataService referenceDataService) {
+        return new EbsProjectService(databaseService, referenceDataService);
     }
 
     @Bean
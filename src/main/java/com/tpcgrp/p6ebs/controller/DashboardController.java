@@ -4,6 +4,7 @@ import com.tpcgrp.p6ebs.service.ConfigurationService;
 import com.tpcgrp.p6ebs.service.DatabaseService;
 import com.tpcgrp.p6ebs.service.integration.*;
 import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -21,7 +22,6 @@ import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.Region;
 import org.springframework.stereotype.Controller;
 
-import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.Executors;
@@ -36,6 +36,7 @@ public class DashboardController {
     private final DatabaseService databaseService;
     private final ConfigurationService configService;
     private final IntegrationLogService logService;
+    private final CacheManager cacheManager;
 
     private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor();
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -68,21 +69,28 @@ public class DashboardController {
     @FXML private ProgressBar diskUsageBar;
     @FXML private Text diskUsageText;
 
+    @FXML private ProgressBar cacheHitRateBar;
+    @FXML private Text cacheSummaryText;
+    @FXML private TableView<CacheManager.RegionStats> cacheRegionsTable;
+
     public DashboardController(SynchronizationManager syncManager,
                                SchedulerService schedulerService,
                                DatabaseService databaseService,
                                ConfigurationService configService,
-                               IntegrationLogService logService) {
+                               IntegrationLogService logService,
+                               CacheManager cacheManager) {
         this.syncManager = syncManager;
         this.schedulerService = schedulerService;
         this.databaseService = databaseService;
         this.configService = configService;
         this.logService = logService;
+        this.cacheManager = cacheManager;
     }
 
     @FXML
     public void initialize() {
         setupRecentIntegrationsTable();
+        setupCacheRegionsTable();
         refreshDashboard();
 
         // Schedule automatic refresh every 60 seconds
@@ -136,8 +144,56 @@ public class DashboardController {
         TableColumn<IntegrationRecord, Integer> updatedColumn = new TableColumn<>("Updated");
         updatedColumn.setCellValueFactory(new PropertyValueFactory<>("entitiesUpdated"));
 
+        TableColumn<IntegrationRecord, String> stagesColumn = new TableColumn<>("Stages");
+        stagesColumn.setCellValueFactory(new PropertyValueFactory<>("stages"));
+
         recentIntegrationsTable.getColumns().addAll(
-                typeColumn, statusColumn, startTimeColumn, durationColumn, entitiesColumn, updatedColumn
+                typeColumn, statusColumn, startTimeColumn, durationColumn, entitiesColumn, updatedColumn,
+                stagesColumn
+        );
+    }
+
+    /**
+     * Set up columns for the cache regions table
+     */
+    private void setupCacheRegionsTable() {
+        TableColumn<CacheManager.RegionStats, String> nameColumn = new TableColumn<>("Region");
+        nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
+
+        TableColumn<CacheManager.RegionStats, Integer> entriesColumn = new TableColumn<>("Entries");
+        entriesColumn.setCellValueFactory(new PropertyValueFactory<>("entries"));
+
+        TableColumn<CacheManager.RegionStats, String> weightColumn = new TableColumn<>("Weight");
+        weightColumn.setCellValueFactory(cell -> new SimpleStringProperty(
+                cell.getValue().getMaxWeight() == Long.MAX_VALUE
+                        ? String.valueOf(cell.getValue().getWeight())
+                        : cell.getValue().getWeight() + " / " + cell.getValue().getMaxWeight()));
+
+        TableColumn<CacheManager.RegionStats, String> hitRateColumn = new TableColumn<>("Hit Rate");
+        hitRateColumn.setCellValueFactory(cell -> new SimpleStringProperty(String.format("%.1f%% (%d/%d)",
+                cell.getValue().getHitRate() * 100, cell.getValue().getHits(),
+                cell.getValue().getHits() + cell.getValue().getMisses())));
+
+        TableColumn<CacheManager.RegionStats, Long> diskHitsColumn = new TableColumn<>("Disk Hits");
+        diskHitsColumn.setCellValueFactory(new PropertyValueFactory<>("diskHits"));
+
+        TableColumn<CacheManager.RegionStats, String> loadsColumn = new TableColumn<>("Loads (Failed)");
+        loadsColumn.setCellValueFactory(cell -> new SimpleStringProperty(
+                cell.getValue().getLoads() + " (" + cell.getValue().getLoadFailures() + ")"));
+
+        TableColumn<CacheManager.RegionStats, String> loadTimeColumn = new TableColumn<>("Avg Load");
+        loadTimeColumn.setCellValueFactory(cell -> new SimpleStringProperty(
+                String.format("%.0f ms", cell.getValue().getAverageLoadMillis())));
+
+        TableColumn<CacheManager.RegionStats, String> evictionsColumn =
+                new TableColumn<>("Evictions (Size/Expired/Invalidated/Explicit)");
+        evictionsColumn.setCellValueFactory(cell -> new SimpleStringProperty(String.format("%d/%d/%d/%d",
+                cell.getValue().getSizeEvictions(), cell.getValue().getExpiredEvictions(),
+                cell.getValue().getInvalidatedEvictions(), cell.getValue().getExplicitEvictions())));
+
+        cacheRegionsTable.getColumns().addAll(
+                nameColumn, entriesColumn, weightColumn, hitRateColumn, diskHitsColumn,
+                loadsColumn, loadTimeColumn, evictionsColumn
         );
     }
 
@@ -165,28 +221,17 @@ public class DashboardController {
      * Update integration metrics
      */
     private void updateIntegrationMetrics() {
-        List<SynchronizationManager.SyncRecord> history = syncManager.getSyncHistory(null);
+        // Live metrics are updated as runs complete, so no history scan is needed
+        SyncMetrics metrics = syncManager.getSyncMetrics();
 
-        // Count successful and failed integrations
-        int successCount = 0;
-        int failedCount = 0;
-        int totalEntitiesProcessed = 0;
-        long totalDuration = 0;
+        long successCount = metrics.getCompletedCount();
+        long failedCount = metrics.getFailedCount();
+        long totalEntitiesProcessed = metrics.getEntitiesProcessed();
 
-        for (SynchronizationManager.SyncRecord record : history) {
-            if ("COMPLETED".equals(record.getStatus())) {
-                successCount++;
-            } else {
-                failedCount++;
-            }
-            totalEntitiesProcessed += record.getEntitiesProcessed();
-            totalDuration += record.getDurationMs();
-        }
-
-        int totalCount = history.size();
+        long totalCount = metrics.getRunCount();
         double successRate = totalCount > 0 ? (double) successCount / totalCount * 100 : 0;
         double failureRate = totalCount > 0 ? (double) failedCount / totalCount * 100 : 0;
-        double avgDurationSec = totalCount > 0 ? (double) totalDuration / totalCount / 1000 : 0;
+        double avgDurationSec = metrics.getAverageDurationMs() / 1000.0;
 
         // Update UI components
         successCountText.setText(String.valueOf(successCount));
@@ -196,7 +241,8 @@ public class DashboardController {
         failureRateText.setText(String.format("%.1f%%", failureRate));
 
         entitiesCountText.setText(String.valueOf(totalEntitiesProcessed));
-        avgTimeText.setText(String.format("Avg. time: %.1fs", avgDurationSec));
+        avgTimeText.setText(String.format("Avg. time: %.1fs (p50 %.1fs, p95 %.1fs)", avgDurationSec,
+                metrics.getMedianDurationMs() / 1000.0, metrics.getP95DurationMs() / 1000.0));
 
         // Update scheduled tasks count
         Map<String, SchedulerService.ScheduleInfo> scheduledTasks = schedulerService.getAllScheduledTasks();
@@ -224,43 +270,34 @@ public class DashboardController {
      * Update integration charts
      */
     private void updateIntegrationCharts() {
-        List<SynchronizationManager.SyncRecord> history = syncManager.getSyncHistory(null);
-
         // Update status pie chart
-        int successCount = 0;
-        int failedCount = 0;
+        SyncMetrics metrics = syncManager.getSyncMetrics();
+        long successCount = metrics.getCompletedCount();
+        long failedCount = metrics.getFailedCount();
+        long cancelledCount = metrics.getCancelledCount();
 
         // Count integration types
-        Map<String, Integer> typeCountMap = new HashMap<>();
-
-        for (SynchronizationManager.SyncRecord record : history) {
-            if ("COMPLETED".equals(record.getStatus())) {
-                successCount++;
-            } else {
-                failedCount++;
-            }
-
-            String type = record.getSyncType();
-            typeCountMap.put(type, typeCountMap.getOrDefault(type, 0) + 1);
-        }
+        Map<String, SyncHistoryStore.SyncRollup> typeTotals = syncManager.getSyncTotalsByType();
 
         // Create pie chart data
         ObservableList<PieChart.Data> pieChartData = FXCollections.observableArrayList(
                 new PieChart.Data("Success", successCount),
-                new PieChart.Data("Failed", failedCount)
+                new PieChart.Data("Failed", failedCount),
+                new PieChart.Data("Cancelled", cancelledCount)
         );
         integrationStatusChart.setData(pieChartData);
 
         // Apply colors for pie chart
         pieChartData.get(0).getNode().setStyle("-fx-pie-color: #4caf50;"); // Green for success
         pieChartData.get(1).getNode().setStyle("-fx-pie-color: #f44336;"); // Red for failed
+        pieChartData.get(2).getNode().setStyle("-fx-pie-color: #9e9e9e;"); // Grey for cancelled
 
         // Create bar chart data
         XYChart.Series<String, Number> series = new XYChart.Series<>();
         series.setName("Integration Count");
 
-        for (Map.Entry<String, Integer> entry : typeCountMap.entrySet()) {
-            series.getData().add(new XYChart.Data<>(entry.getKey(), entry.getValue()));
+        for (Map.Entry<String, SyncHistoryStore.SyncRollup> entry : typeTotals.entrySet()) {
+            series.getData().add(new XYChart.Data<>(entry.getKey(), entry.getValue().getRunCount()));
         }
 
         integrationTypesChart.getData().clear();
@@ -271,10 +308,8 @@ public class DashboardController {
      * Update recent integrations table
      */
     private void updateRecentIntegrations() {
-        List<SynchronizationManager.SyncRecord> history = syncManager.getSyncHistory(null);
-
-        // Sort by start time (most recent first)
-        history.sort((r1, r2) -> r2.getStartTime().compareTo(r1.getStartTime()));
+        // Most recent first, bounded to the rows shown
+        List<SynchronizationManager.SyncRecord> history = syncManager.getRecentSyncs(10);
 
         // Convert to table record objects
         ObservableList<IntegrationRecord> records = FXCollections.observableArrayList();
@@ -291,13 +326,9 @@ public class DashboardController {
 
             tableRecord.setEntitiesProcessed(record.getEntitiesProcessed());
             tableRecord.setEntitiesUpdated(record.getEntitiesUpdated());
+            tableRecord.setStages(SyncStageTimer.describe(record.getStageTimings()));
 
             records.add(tableRecord);
-
-            // Limit to 10 most recent records
-            if (records.size() >= 10) {
-                break;
-            }
         }
 
         recentIntegrationsTable.setItems(records);
@@ -353,7 +384,7 @@ public class DashboardController {
     }
 
     /**
-     * Update system metrics (memory, disk usage)
+     * Update system metrics (memory, disk usage, cache)
      */
     private void updateSystemMetrics() {
         // Memory usage
@@ -372,11 +403,8 @@ public class DashboardController {
 
         // Log disk usage
         try {
-            File logDir = new File(System.getProperty("user.home") + "/.p6ebs/logs");
-            long logSize = calculateFolderSize(logDir);
-
-            // Assume 1GB max log size for the progress bar
-            long maxLogSize = 1024 * 1024 * 1024; // 1 GB
+            long logSize = logService.getLogUsageBytes();
+            long maxLogSize = logService.getLogRetentionBytes();
             double diskUsageRatio = (double) logSize / maxLogSize;
             diskUsageBar.setProgress(Math.min(diskUsageRatio, 1.0));
 
@@ -390,30 +418,18 @@ public class DashboardController {
             diskUsageBar.setProgress(0);
             diskUsageText.setText("N/A");
         }
-    }
 
-    /**
-     * Calculate the size of a folder and its contents
-     */
-    private long calculateFolderSize(File folder) {
-        if (!folder.exists() || !folder.isDirectory()) {
-            return 0;
-        }
-
-        long size = 0;
-        File[] files = folder.listFiles();
-
-        if (files != null) {
-            for (File file : files) {
-                if (file.isFile()) {
-                    size += file.length();
-                } else if (file.isDirectory()) {
-                    size += calculateFolderSize(file);
-                }
-            }
-        }
-
-        return size;
+        // Cache effectiveness
+        CacheManager.CacheStats cacheStats = cacheManager.getStats();
+        cacheHitRateBar.setProgress(cacheStats.getHitRate());
+
+        String cacheText = String.format("%.1f%% hit rate, %d entries (%d expired), %d evictions",
+                cacheStats.getHitRate() * 100,
+                cacheStats.getTotalEntries(),
+                cacheStats.getExpiredEntries(),
+                cacheStats.getEvictions());
+        cacheSummaryText.setText(cacheText);
+        cacheRegionsTable.setItems(FXCollections.observableArrayList(cacheStats.getRegions()));
     }
 
     /**
@@ -433,6 +449,7 @@ public class DashboardController {
         private String duration;
         private int entitiesProcessed;
         private int entitiesUpdated;
+        private String stages;
 
         public String getIntegrationType() { return integrationType; }
         public void setIntegrationType(String integrationType) { this.integrationType = integrationType; }
@@ -451,5 +468,8 @@ public class DashboardController {
 
         public int getEntitiesUpdated() { return entitiesUpdated; }
         public void setEntitiesUpdated(int entitiesUpdated) { this.entitiesUpdated = entitiesUpdated; }
+
+        public String getStages() { return stages; }
+        public void setStages(String stages) { this.stages = stages; }
     }
 }
\ No newline at end of file
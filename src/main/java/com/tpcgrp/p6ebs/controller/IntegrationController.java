@@ -28,6 +28,9 @@ public class IntegrationController {
     private final ConfigurationService configService;
     public TabPane integrationTabs;
 
+    // Type of the run started from this panel, which its Cancel button stops
+    private volatile String runningIntegrationType;
+
 
     @FXML
     private TableView<IntegrationHistoryItem> historyTable;
@@ -68,6 +71,12 @@ public class IntegrationController {
     @FXML
     private TableView<ScheduledTaskItem> scheduledTasksTable;
 
+    @FXML
+    private TableView<FailedRecordItem> failedRecordsTable;
+
+    @FXML
+    private Button replayFailedRecordsButton;
+
     public IntegrationController(IntegrationService integrationService,
                                  ValidationService validationService,
                                  SynchronizationManager syncManager,
@@ -107,6 +116,9 @@ public class IntegrationController {
         // Initialize scheduled tasks table
         setupScheduledTasksTable();
 
+        // Initialize failed records table
+        setupFailedRecordsTable();
+
         // Initial UI state
         cancelIntegrationButton.setDisable(true);
         integrationProgressBar.setProgress(0);
@@ -120,6 +132,7 @@ public class IntegrationController {
         // Update the history and scheduler tables
         refreshHistoryTable();
         refreshScheduledTasksTable();
+        refreshFailedRecordsTable();
 
         integrationLogArea.appendText("Integration panel initialized\n");
     }
@@ -164,6 +177,29 @@ public class IntegrationController {
         scheduledTasksTable.getColumns().addAll(typeCol, statusCol, intervalCol, lastRunCol, nextRunCol);
     }
 
+    private void setupFailedRecordsTable() {
+        // Set up failed records table columns
+        TableColumn<FailedRecordItem, String> typeCol = new TableColumn<>("Type");
+        typeCol.setCellValueFactory(new PropertyValueFactory<>("integrationType"));
+
+        TableColumn<FailedRecordItem, String> keyCol = new TableColumn<>("Record");
+        keyCol.setCellValueFactory(new PropertyValueFactory<>("recordKey"));
+
+        TableColumn<FailedRecordItem, String> stageCol = new TableColumn<>("Stage");
+        stageCol.setCellValueFactory(new PropertyValueFactory<>("stage"));
+
+        TableColumn<FailedRecordItem, String> errorCol = new TableColumn<>("Error");
+        errorCol.setCellValueFactory(new PropertyValueFactory<>("errorMessage"));
+
+        TableColumn<FailedRecordItem, Integer> attemptsCol = new TableColumn<>("Attempts");
+        attemptsCol.setCellValueFactory(new PropertyValueFactory<>("attempts"));
+
+        TableColumn<FailedRecordItem, String> lastFailedCol = new TableColumn<>("Last Failed");
+        lastFailedCol.setCellValueFactory(new PropertyValueFactory<>("lastFailed"));
+
+        failedRecordsTable.getColumns().addAll(typeCol, keyCol, stageCol, errorCol, attemptsCol, lastFailedCol);
+    }
+
     private void refreshHistoryTable() {
         // Get synchronization history from manager
         List<SynchronizationManager.SyncRecord> history = syncManager.getSyncHistory(null);
@@ -216,6 +252,26 @@ public class IntegrationController {
         scheduledTasksTable.setItems(FXCollections.observableArrayList(items));
     }
 
+    private void refreshFailedRecordsTable() {
+        // Convert the records waiting to be replayed to table items
+        List<FailedRecordItem> items = new ArrayList<>();
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        for (DeadLetterStore.DeadLetter deadLetter : integrationService.getDeadLetters(null)) {
+            FailedRecordItem item = new FailedRecordItem();
+            item.setIntegrationType(deadLetter.getIntegrationType());
+            item.setRecordKey(deadLetter.getRecordKey());
+            item.setStage(deadLetter.getStage());
+            item.setErrorMessage(deadLetter.getErrorMessage());
+            item.setAttempts(deadLetter.getAttempts());
+            item.setLastFailed(sdf.format(new Date(deadLetter.getLastFailedAt())));
+            items.add(item);
+        }
+
+        // Update table
+        failedRecordsTable.setItems(FXCollections.observableArrayList(items));
+    }
+
     @FXML
     public void startIntegration() {
         String integrationType = integrationTypeCombo.getValue();
@@ -243,6 +299,7 @@ public class IntegrationController {
             ebsParams.put("password", config.getEbsPassword());
 
             // Update UI state
+            runningIntegrationType = integrationType;
             startIntegrationButton.setDisable(true);
             cancelIntegrationButton.setDisable(false);
             integrationProgressBar.setVisible(true);
@@ -250,7 +307,7 @@ public class IntegrationController {
             integrationLogArea.appendText("Starting integration for: " + integrationType + "\n");
 
             // Run integration in background thread
-            new Thread(() -> {
+            Thread integrationThread = new Thread(() -> {
                 try {
                     Map<String, Object> result = integrationService.startIntegration(
                             p6Params,
@@ -268,6 +325,9 @@ public class IntegrationController {
 
                             // Send success notification
                             notificationService.sendSuccessNotification(integrationType, result);
+                        } else if ("cancelled".equals(status)) {
+                            integrationLogArea.appendText("Integration cancelled; work committed before "
+                                    + "the cancellation was kept\n");
                         } else {
                             String errorMsg = (String) result.get("message");
                             integrationLogArea.appendText("Integration failed: " + errorMsg + "\n");
@@ -300,7 +360,9 @@ public class IntegrationController {
                         statusLabel.setText("Ready");
                     });
                 }
-            }).start();
+            }, "Integration-" + integrationType);
+            integrationThread.setDaemon(true);
+            integrationThread.start();
 
         } catch (Exception e) {
             integrationLogArea.appendText("Error loading configuration: " + e.getMessage() + "\n");
@@ -310,15 +372,79 @@ public class IntegrationController {
 
     @FXML
     public void cancelIntegration() {
-        if (integrationService.cancelIntegration()) {
-            integrationLogArea.appendText("Integration cancelled by user\n");
+        // Only the run started from this panel; scheduled runs of other types carry on
+        String integrationType = runningIntegrationType;
+        if (integrationType != null && integrationService.cancelIntegration(integrationType)) {
+            integrationLogArea.appendText("Integration cancelled by user, stopping...\n");
 
-            // Reset UI state
-            startIntegrationButton.setDisable(false);
+            // The UI is reset when the run returns its partial result
             cancelIntegrationButton.setDisable(true);
-            integrationProgressBar.setProgress(0);
-            integrationProgressBar.setVisible(false);
-            statusLabel.setText("Cancelled");
+            statusLabel.setText("Cancelling...");
+        }
+    }
+
+    @FXML
+    public void refreshFailedRecords() {
+        refreshFailedRecordsTable();
+    }
+
+    @FXML
+    public void replayFailedRecords() {
+        if (integrationService.getDeadLetters("ebsTasksToP6").isEmpty()) {
+            showAlert(Alert.AlertType.INFORMATION, "Replay", "There are no failed records to replay");
+            return;
+        }
+
+        try {
+            ConfigurationService.Configuration config = configService.loadConfiguration();
+
+            Map<String, String> p6Params = new HashMap<>();
+            p6Params.put("server", config.getP6Server());
+            p6Params.put("database", config.getP6Database());
+            p6Params.put("username", config.getP6Username());
+            p6Params.put("password", config.getP6Password());
+
+            replayFailedRecordsButton.setDisable(true);
+            integrationProgressBar.setVisible(true);
+            integrationLogArea.appendText("Replaying failed EBS task records\n");
+
+            Thread replayThread = new Thread(() -> {
+                Map<String, Object> replayResult;
+                try {
+                    replayResult = integrationService.replayDeadLetters(
+                            p6Params, "ebsTasksToP6", this::updateProgress);
+                } catch (Exception e) {
+                    replayResult = new HashMap<>();
+                    replayResult.put("status", "error");
+                    replayResult.put("message", e.getMessage());
+                }
+
+                // The UI is reset whatever the outcome, so the Replay button comes back
+                Map<String, Object> result = replayResult;
+                Platform.runLater(() -> {
+                    if ("error".equals(result.get("status"))) {
+                        integrationLogArea.appendText("Replay failed: " + result.get("message") + "\n");
+                        showAlert(Alert.AlertType.ERROR, "Error", "Replay failed: " + result.get("message"));
+                    } else {
+                        integrationLogArea.appendText("Replay finished: " + result.get("replayed") + " written, "
+                                + result.get("failed") + " failed, " + result.get("remaining") + " remaining\n");
+                    }
+
+                    // Reset UI state
+                    replayFailedRecordsButton.setDisable(false);
+                    integrationProgressBar.setProgress(0);
+                    integrationProgressBar.setVisible(false);
+                    statusLabel.setText("Ready");
+
+                    refreshFailedRecordsTable();
+                });
+            }, "Replay-ebsTasksToP6");
+            replayThread.setDaemon(true);
+            replayThread.start();
+
+        } catch (Exception e) {
+            integrationLogArea.appendText("Error loading configuration: " + e.getMessage() + "\n");
+            showAlert(Alert.AlertType.ERROR, "Error", "Failed to load configuration: " + e.getMessage());
         }
     }
 
@@ -603,4 +729,30 @@ public class IntegrationController {
         public String getNextRun() { return nextRun; }
         public void setNextRun(String nextRun) { this.nextRun = nextRun; }
     }
+
+    /**
+     * Data class for failed records table
+     */
+    public static class FailedRecordItem {
+        private String integrationType;
+        private String recordKey;
+        private String stage;
+        private String errorMessage;
+        private int attempts;
+        private String lastFailed;
+
+        // Getters and setters
+        public String getIntegrationType() { return integrationType; }
+        public void setIntegrationType(String integrationType) { this.integrationType = integrationType; }
+        public String getRecordKey() { return recordKey; }
+        public void setRecordKey(String recordKey) { this.recordKey = recordKey; }
+        public String getStage() { return stage; }
+        public void setStage(String stage) { this.stage = stage; }
+        public String getErrorMessage() { return errorMessage; }
+        public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+        public int getAttempts() { return attempts; }
+        public void setAttempts(int attempts) { this.attempts = attempts; }
+        public String getLastFailed() { return lastFailed; }
+        public void setLastFailed(String lastFailed) { this.lastFailed = lastFailed; }
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.tpcgrp.p6ebs.controller;
 
 import com.tpcgrp.p6ebs.service.P6ProjectService;
+import com.tpcgrp.p6ebs.service.integration.CacheManager;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
@@ -21,6 +22,7 @@ import java.util.stream.Collectors;
 public class P6ProjectSearchController {
 
     private final P6ProjectService p6ProjectService;
+    private final CacheManager.CacheRegion projectRegion;
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
 
@@ -33,6 +35,10 @@ public class P6ProjectSearchController {
     // Cache of projects for search
     private List<Map<String, Object>> projectCache = new ArrayList<>();
 
+    // The project list is served from disk after a restart and refreshed in the background
+    private static final long PROJECT_LIST_TTL = 24 * 60 * 60 * 1000;
+    private static final long PROJECT_LIST_REFRESH_AFTER = 10 * 60 * 1000;
+
     // Minimum search length before performing search
     private static final int MIN_SEARCH_LENGTH = 3;
 
@@ -58,8 +64,11 @@ public class P6ProjectSearchController {
     // Hold the mapping from display string to project ID
     private Map<String, String> displayToIdMap = new HashMap<>();
 
-    public P6ProjectSearchController(P6ProjectService p6ProjectService) {
+    public P6ProjectSearchController(P6ProjectService p6ProjectService, CacheManager cacheManager) {
         this.p6ProjectService = p6ProjectService;
+        this.projectRegion = cacheManager.defineRegion(
+                "p6.project", PROJECT_LIST_TTL, PROJECT_LIST_REFRESH_AFTER, Long.MAX_VALUE);
+        this.projectRegion.setPersistent(true);
     }
 
     @FXML
@@ -131,26 +140,40 @@ public class P6ProjectSearchController {
 
         executorService.submit(() -> {
             try {
-                // Load all projects to cache for quick search
-                projectCache = p6ProjectService.getAllProjects(
-                        server, database, username, password
-                );
+                // Load all projects to cache for quick search; the shared cache
+                // refreshes the list in the background once it gets old
+                projectCache = projectRegion.get(getProjectCacheKey(), this::fetchAllProjects);
 
                 Platform.runLater(() -> {
                     searchProgressIndicator.setVisible(false);
                     logMessage("Loaded " + projectCache.size() + " projects from P6");
                 });
-            } catch (SQLException e) {
+            } catch (CacheManager.CacheLoadException e) {
+                String message = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
                 Platform.runLater(() -> {
                     searchProgressIndicator.setVisible(false);
-                    logMessage("Error loading projects: " + e.getMessage());
-                    showAlert(Alert.AlertType.ERROR, "Error", "Failed to load projects: " + e.getMessage());
+                    logMessage("Error loading projects: " + message);
+                    showAlert(Alert.AlertType.ERROR, "Error", "Failed to load projects: " + message);
                 });
             }
         });
     }
 
+    private List<Map<String, Object>> fetchAllProjects() throws SQLException {
+        return p6ProjectService.getAllProjects(server, database, username, password);
+    }
+
+    private String getProjectCacheKey() {
+        return server + "/" + database;
+    }
+
     private void performSearch(String searchText) {
+        // Pick up a background-refreshed project list without blocking the UI thread
+        List<Map<String, Object>> cachedProjects = projectRegion.get(getProjectCacheKey());
+        if (cachedProjects != null) {
+            projectCache = cachedProjects;
+        }
+
         if (projectCache.isEmpty()) {
             logMessage("Project cache is empty. Cannot search.");
             return;
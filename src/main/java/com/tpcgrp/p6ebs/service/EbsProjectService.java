@@ -1,5 +1,6 @@
 package com.tpcgrp.p6ebs.service;
 
+import com.tpcgrp.p6ebs.service.integration.CancellationToken;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
@@ -11,9 +12,11 @@ import java.util.*;
 public class EbsProjectService {
 
     private final DatabaseService databaseService;
+    private final EbsReferenceDataService referenceDataService;
 
-    public EbsProjectService(DatabaseService databaseService) {
+    public EbsProjectService(DatabaseService databaseService, EbsReferenceDataService referenceDataService) {
         this.databaseService = databaseService;
+        this.referenceDataService = referenceDataService;
     }
 
     /**
@@ -23,48 +26,58 @@ public class EbsProjectService {
      * @param sid The Oracle SID
      * @param username Database username
      * @param password Database password
+     * @param cancellation Token of the run reading the projects
      * @return List of project maps containing all project data
-     * @throws SQLException If a database error occurs
+     * @throws SQLException If a database error occurs, including the query being cancelled
      */
     public List<Map<String, Object>> getAllProjects(String server, String sid,
-                                                    String username, String password) throws SQLException {
+                                                    String username, String password,
+                                                    CancellationToken cancellation) throws SQLException {
 
         String url = String.format("jdbc:oracle:thin:@%s:1521:%s", server, sid);
 
         List<Map<String, Object>> projects = new ArrayList<>();
 
+        // Reference names are resolved in-process from cached lookups instead of joins;
+        // the per-project currency stays joined in SQL
+        EbsReferenceDataService.Lookup statusNames = referenceDataService.getProjectStatusNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup typeNames = referenceDataService.getProjectTypeNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup organizationNames = referenceDataService.getOrganizationNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             // SQL query to get projects with key information
             String sql = "SELECT p.project_id, p.segment1 as project_number, p.name as project_name, " +
                     "p.description, p.start_date, p.completion_date, " +
-                    "p.project_status_code, ps.project_status_name, " +
-                    "pt.project_type_name, p.carrying_out_organization_id, " +
-                    "org.name as organization_name, p.created_by, " +
+                    "p.project_status_code, p.project_type_code, " +
+                    "p.carrying_out_organization_id, p.created_by, " +
                     "p.creation_date, p.last_updated_by, p.last_update_date, " +
                     "ppc.project_currency_code " +
                     "FROM pa_projects_all p " +
-                    "JOIN pa_project_statuses_v ps ON p.project_status_code = ps.project_status_code " +
-                    "JOIN pa_project_types pt ON p.project_type_code = pt.project_type_code " +
-                    "JOIN hr_all_organization_units org ON p.carrying_out_organization_id = org.organization_id " +
                     "JOIN pa_project_currencies ppc ON p.project_id = ppc.project_id " +
                     "ORDER BY p.segment1";
 
-            try (PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(sql))) {
+                try (ResultSet rs = stmt.executeQuery()) {
 
-                ResultSetMetaData metaData = rs.getMetaData();
-                int columnCount = metaData.getColumnCount();
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    int columnCount = metaData.getColumnCount();
 
-                while (rs.next()) {
-                    Map<String, Object> project = new HashMap<>();
+                    while (rs.next() && !cancellation.isCancelled()) {
+                        Map<String, Object> project = new HashMap<>();
 
-                    for (int i = 1; i <= columnCount; i++) {
-                        String columnName = metaData.getColumnName(i);
-                        Object value = rs.getObject(i);
-                        project.put(columnName, value);
-                    }
+                        for (int i = 1; i <= columnCount; i++) {
+                            String columnName = metaData.getColumnName(i);
+                            Object value = rs.getObject(i);
+                            project.put(columnName, value);
+                        }
 
-                    projects.add(project);
+                        statusNames.resolve(project, "project_status_code", "project_status_name");
+                        typeNames.resolve(project, "project_type_code", "project_type_name");
+                        organizationNames.resolve(project, "carrying_out_organization_id", "organization_name");
+                        projects.add(project);
+                    }
+                } finally {
+                    cancellation.unregister(stmt);
                 }
             }
         }
@@ -89,19 +102,18 @@ public class EbsProjectService {
 
         String url = String.format("jdbc:oracle:thin:@%s:1521:%s", server, sid);
 
+        EbsReferenceDataService.Lookup statusNames = referenceDataService.getProjectStatusNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup typeNames = referenceDataService.getProjectTypeNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup organizationNames = referenceDataService.getOrganizationNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             String sql = "SELECT p.project_id, p.segment1 as project_number, p.name as project_name, " +
                     "p.description, p.long_name, p.start_date, p.completion_date, " +
-                    "p.project_status_code, ps.project_status_name, " +
-                    "p.project_type_code, pt.project_type_name, p.carrying_out_organization_id, " +
-                    "org.name as organization_name, p.created_by, " +
-                    "p.creation_date, p.last_updated_by, p.last_update_date, " +
+                    "p.project_status_code, p.project_type_code, p.carrying_out_organization_id, " +
+                    "p.created_by, p.creation_date, p.last_updated_by, p.last_update_date, " +
                     "p.public_sector_flag, p.allow_cross_charge_flag, " +
                     "ppc.project_currency_code, ppc.project_functional_currency " +
                     "FROM pa_projects_all p " +
-                    "JOIN pa_project_statuses_v ps ON p.project_status_code = ps.project_status_code " +
-                    "JOIN pa_project_types pt ON p.project_type_code = pt.project_type_code " +
-                    "JOIN hr_all_organization_units org ON p.carrying_out_organization_id = org.organization_id " +
                     "JOIN pa_project_currencies ppc ON p.project_id = ppc.project_id " +
                     "WHERE p.project_id = ?";
 
@@ -120,6 +132,9 @@ public class EbsProjectService {
                             project.put(columnName, value);
                         }
 
+                        statusNames.resolve(project, "project_status_code", "project_status_name");
+                        typeNames.resolve(project, "project_type_code", "project_type_name");
+                        organizationNames.resolve(project, "carrying_out_organization_id", "organization_name");
                         return project;
                     }
                 }
@@ -148,15 +163,15 @@ public class EbsProjectService {
 
         List<Map<String, Object>> projects = new ArrayList<>();
 
+        EbsReferenceDataService.Lookup statusNames = referenceDataService.getProjectStatusNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup typeNames = referenceDataService.getProjectTypeNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup organizationNames = referenceDataService.getOrganizationNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             String sql = "SELECT p.project_id, p.segment1 as project_number, p.name as project_name, " +
                     "p.description, p.start_date, p.completion_date, " +
-                    "p.project_status_code, ps.project_status_name, " +
-                    "pt.project_type_name, org.name as organization_name " +
+                    "p.project_status_code, p.project_type_code, p.carrying_out_organization_id " +
                     "FROM pa_projects_all p " +
-                    "JOIN pa_project_statuses_v ps ON p.project_status_code = ps.project_status_code " +
-                    "JOIN pa_project_types pt ON p.project_type_code = pt.project_type_code " +
-                    "JOIN hr_all_organization_units org ON p.carrying_out_organization_id = org.organization_id " +
                     "WHERE p.project_status_code = ? " +
                     "ORDER BY p.segment1";
 
@@ -176,6 +191,9 @@ public class EbsProjectService {
                             project.put(columnName, value);
                         }
 
+                        statusNames.resolve(project, "project_status_code", "project_status_name");
+                        typeNames.resolve(project, "project_type_code", "project_type_name");
+                        organizationNames.resolve(project, "carrying_out_organization_id", "organization_name");
                         projects.add(project);
                     }
                 }
@@ -204,14 +222,14 @@ public class EbsProjectService {
 
         List<Map<String, Object>> projects = new ArrayList<>();
 
+        EbsReferenceDataService.Lookup statusNames = referenceDataService.getProjectStatusNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup typeNames = referenceDataService.getProjectTypeNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             String sql = "SELECT p.project_id, p.segment1 as project_number, p.name as project_name, " +
                     "p.description, p.start_date, p.completion_date, " +
-                    "p.project_status_code, ps.project_status_name, " +
-                    "pt.project_type_name " +
+                    "p.project_status_code, p.project_type_code " +
                     "FROM pa_projects_all p " +
-                    "JOIN pa_project_statuses_v ps ON p.project_status_code = ps.project_status_code " +
-                    "JOIN pa_project_types pt ON p.project_type_code = pt.project_type_code " +
                     "WHERE p.carrying_out_organization_id = ? " +
                     "ORDER BY p.segment1";
 
@@ -231,6 +249,8 @@ public class EbsProjectService {
                             project.put(columnName, value);
                         }
 
+                        statusNames.resolve(project, "project_status_code", "project_status_name");
+                        typeNames.resolve(project, "project_type_code", "project_type_name");
                         projects.add(project);
                     }
                 }
@@ -260,15 +280,15 @@ public class EbsProjectService {
 
         List<Map<String, Object>> projects = new ArrayList<>();
 
+        EbsReferenceDataService.Lookup statusNames = referenceDataService.getProjectStatusNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup typeNames = referenceDataService.getProjectTypeNames(server, sid, username, password);
+        EbsReferenceDataService.Lookup organizationNames = referenceDataService.getOrganizationNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             String sql = "SELECT p.project_id, p.segment1 as project_number, p.name as project_name, " +
                     "p.description, p.start_date, p.completion_date, " +
-                    "p.project_status_code, ps.project_status_name, " +
-                    "pt.project_type_name, org.name as organization_name " +
+                    "p.project_status_code, p.project_type_code, p.carrying_out_organization_id " +
                     "FROM pa_projects_all p " +
-                    "JOIN pa_project_statuses_v ps ON p.project_status_code = ps.project_status_code " +
-                    "JOIN pa_project_types pt ON p.project_type_code = pt.project_type_code " +
-                    "JOIN hr_all_organization_units org ON p.carrying_out_organization_id = org.organization_id " +
                     "WHERE (p.start_date <= TO_DATE(?, 'YYYY-MM-DD') AND " +
                     "       p.completion_date >= TO_DATE(?, 'YYYY-MM-DD')) OR " +
                     "      (p.start_date BETWEEN TO_DATE(?, 'YYYY-MM-DD') AND TO_DATE(?, 'YYYY-MM-DD')) OR " +
@@ -296,6 +316,9 @@ public class EbsProjectService {
                             project.put(columnName, value);
                         }
 
+                        statusNames.resolve(project, "project_status_code", "project_status_name");
+                        typeNames.resolve(project, "project_type_code", "project_type_name");
+                        organizationNames.resolve(project, "carrying_out_organization_id", "organization_name");
                         projects.add(project);
                     }
                 }
@@ -324,16 +347,17 @@ public class EbsProjectService {
 
         List<Map<String, Object>> tasks = new ArrayList<>();
 
+        EbsReferenceDataService.Lookup taskStatusNames = referenceDataService.getTaskStatusNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             String sql = "SELECT t.task_id, t.task_number, t.task_name, t.description, " +
                     "t.start_date, t.completion_date, " +
                     "t.actual_start_date, t.actual_finish_date, " +
                     "t.planned_duration, t.actual_duration, " +
-                    "t.task_status_code, ts.task_status_name, " +
+                    "t.task_status_code, " +
                     "t.wbs_level, t.parent_task_id, pt.task_name as parent_task_name, " +
                     "t.creation_date, t.last_update_date " +
                     "FROM pa_tasks t " +
-                    "JOIN pa_task_statuses_v ts ON t.task_status_code = ts.task_status_code " +
                     "LEFT JOIN pa_tasks pt ON t.parent_task_id = pt.task_id " +
                     "WHERE t.project_id = ? " +
                     "ORDER BY t.task_number";
@@ -354,6 +378,7 @@ public class EbsProjectService {
                             task.put(columnName, value);
                         }
 
+                        taskStatusNames.resolve(task, "task_status_code", "task_status_name");
                         tasks.add(task);
                     }
                 }
@@ -371,37 +396,41 @@ public class EbsProjectService {
      * @param username Database username
      * @param password Database password
      * @param projectId The project ID
+     * @param cancellation Token of the run reading the summary
      * @return Map containing financial summary information
-     * @throws SQLException If a database error occurs
+     * @throws SQLException If a database error occurs, including a query being cancelled
      */
     public Map<String, Object> getProjectFinancialSummary(String server, String sid,
                                                           String username, String password,
-                                                          String projectId) throws SQLException {
+                                                          String projectId,
+                                                          CancellationToken cancellation) throws SQLException {
 
         String url = String.format("jdbc:oracle:thin:@%s:1521:%s", server, sid);
 
         Map<String, Object> summary = new HashMap<>();
 
+        EbsReferenceDataService.Lookup statusNames = referenceDataService.getProjectStatusNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             // Get project basic info
             String projectSql = "SELECT p.name as project_name, p.segment1 as project_number, " +
-                    "p.project_status_code, ps.project_status_name, " +
-                    "ppc.project_currency_code " +
+                    "p.project_status_code, ppc.project_currency_code " +
                     "FROM pa_projects_all p " +
-                    "JOIN pa_project_statuses_v ps ON p.project_status_code = ps.project_status_code " +
                     "JOIN pa_project_currencies ppc ON p.project_id = ppc.project_id " +
                     "WHERE p.project_id = ?";
 
-            try (PreparedStatement stmt = conn.prepareStatement(projectSql)) {
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(projectSql))) {
                 stmt.setString(1, projectId);
 
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
                         summary.put("project_name", rs.getString("project_name"));
                         summary.put("project_number", rs.getString("project_number"));
-                        summary.put("project_status", rs.getString("project_status_name"));
+                        summary.put("project_status", statusNames.get(rs.getString("project_status_code")));
                         summary.put("currency_code", rs.getString("project_currency_code"));
                     }
+                } finally {
+                    cancellation.unregister(stmt);
                 }
             }
 
@@ -410,13 +439,15 @@ public class EbsProjectService {
                     "FROM pa_project_budgets " +
                     "WHERE project_id = ?";
 
-            try (PreparedStatement stmt = conn.prepareStatement(budgetSql)) {
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(budgetSql))) {
                 stmt.setString(1, projectId);
 
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
                         summary.put("total_budget", rs.getDouble("total_budget"));
                     }
+                } finally {
+                    cancellation.unregister(stmt);
                 }
             }
 
@@ -426,13 +457,15 @@ public class EbsProjectService {
                     "JOIN pa_expenditure_items_v peiv ON pei.expenditure_item_id = peiv.expenditure_item_id " +
                     "WHERE pei.project_id = ?";
 
-            try (PreparedStatement stmt = conn.prepareStatement(costSql)) {
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(costSql))) {
                 stmt.setString(1, projectId);
 
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
                         summary.put("actual_cost", rs.getDouble("actual_cost"));
                     }
+                } finally {
+                    cancellation.unregister(stmt);
                 }
             }
 
@@ -441,13 +474,15 @@ public class EbsProjectService {
                     "FROM pa_commitments " +
                     "WHERE project_id = ?";
 
-            try (PreparedStatement stmt = conn.prepareStatement(commitmentSql)) {
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(commitmentSql))) {
                 stmt.setString(1, projectId);
 
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
                         summary.put("committed_cost", rs.getDouble("committed_cost"));
                     }
+                } finally {
+                    cancellation.unregister(stmt);
                 }
             }
 
@@ -456,13 +491,15 @@ public class EbsProjectService {
                     "FROM pa_project_revenues " +
                     "WHERE project_id = ?";
 
-            try (PreparedStatement stmt = conn.prepareStatement(revenueSql)) {
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(revenueSql))) {
                 stmt.setString(1, projectId);
 
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
                         summary.put("total_revenue", rs.getDouble("total_revenue"));
                     }
+                } finally {
+                    cancellation.unregister(stmt);
                 }
             }
 
@@ -0,0 +1,207 @@
+package com.tpcgrp.p6ebs.service;
+
+import com.tpcgrp.p6ebs.service.integration.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Service class for read-through caching of small Oracle EBS reference tables
+ * (project statuses, project types, organizations and task statuses).
+ * Project and task queries select the raw codes and resolve names through these
+ * lookups instead of joining the reference tables on every query. A code missing
+ * from a cached lookup reloads it once per query; a row whose code is still
+ * unknown is kept with no name, so a stale cache never hides rows.
+ */
+@Service
+public class EbsReferenceDataService {
+
+    private static final String REGION_NAME = "ebs.reference";
+
+    // Reference tables change rarely; refresh hourly in the background, hard-expire after 4 hours
+    private static final long REFERENCE_TTL = 4 * 60 * 60 * 1000;
+    private static final long REFERENCE_REFRESH_AFTER = 60 * 60 * 1000;
+    private static final long REFERENCE_MAX_WEIGHT = 1_000_000;
+
+    private final CacheManager.CacheRegion referenceRegion;
+
+    public EbsReferenceDataService(CacheManager cacheManager) {
+        this.referenceRegion = cacheManager.defineRegion(
+                REGION_NAME, REFERENCE_TTL, REFERENCE_REFRESH_AFTER, REFERENCE_MAX_WEIGHT);
+
+        // Keep lookups on disk so a restarted process does not have to reload them from EBS
+        this.referenceRegion.setPersistent(true);
+    }
+
+    /**
+     * Get project status names keyed by project_status_code.
+     *
+     * @param server The database server address
+     * @param sid The Oracle SID
+     * @param username Database username
+     * @param password Database password
+     * @return Lookup of status code to status name
+     * @throws SQLException If a database error occurs on a cold load
+     */
+    public Lookup getProjectStatusNames(String server, String sid,
+                                        String username, String password) throws SQLException {
+        return new Lookup("projectStatuses", server, sid, username, password,
+                "SELECT project_status_code, project_status_name FROM pa_project_statuses_v");
+    }
+
+    /**
+     * Get project type names keyed by project_type_code.
+     *
+     * @param server The database server address
+     * @param sid The Oracle SID
+     * @param username Database username
+     * @param password Database password
+     * @return Lookup of type code to type name
+     * @throws SQLException If a database error occurs on a cold load
+     */
+    public Lookup getProjectTypeNames(String server, String sid,
+                                      String username, String password) throws SQLException {
+        return new Lookup("projectTypes", server, sid, username, password,
+                "SELECT project_type_code, project_type_name FROM pa_project_types");
+    }
+
+    /**
+     * Get organization names keyed by organization_id.
+     *
+     * @param server The database server address
+     * @param sid The Oracle SID
+     * @param username Database username
+     * @param password Database password
+     * @return Lookup of organization ID to organization name
+     * @throws SQLException If a database error occurs on a cold load
+     */
+    public Lookup getOrganizationNames(String server, String sid,
+                                       String username, String password) throws SQLException {
+        return new Lookup("organizations", server, sid, username, password,
+                "SELECT organization_id, name FROM hr_all_organization_units");
+    }
+
+    /**
+     * Get task status names keyed by task_status_code.
+     *
+     * @param server The database server address
+     * @param sid The Oracle SID
+     * @param username Database username
+     * @param password Database password
+     * @return Lookup of task status code to task status name
+     * @throws SQLException If a database error occurs on a cold load
+     */
+    public Lookup getTaskStatusNames(String server, String sid,
+                                     String username, String password) throws SQLException {
+        return new Lookup("taskStatuses", server, sid, username, password,
+                "SELECT task_status_code, task_status_name FROM pa_task_statuses_v");
+    }
+
+    /**
+     * Drop all cached reference data, e.g. after reference tables were changed in EBS.
+     */
+    public void invalidate() {
+        referenceRegion.invalidateAll();
+    }
+
+    /**
+     * Read a two-column code/name lookup through the reference cache region
+     */
+    private Map<String, String> lookup(String cacheKey, String server, String sid,
+                                       String username, String password, String sql) throws SQLException {
+        try {
+            return referenceRegion.get(cacheKey, () -> loadLookup(server, sid, username, password, sql));
+        } catch (CacheManager.CacheLoadException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Failed to load EBS reference data: " + cacheKey, e.getCause());
+        }
+    }
+
+    /**
+     * Load a two-column code/name lookup from EBS
+     */
+    private Map<String, String> loadLookup(String server, String sid,
+                                           String username, String password, String sql) throws SQLException {
+
+        String url = String.format("jdbc:oracle:thin:@%s:1521:%s", server, sid);
+
+        Map<String, String> lookup = new HashMap<>();
+
+        try (Connection conn = DriverManager.getConnection(url, username, password);
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                Object code = rs.getObject(1);
+                if (code != null) {
+                    lookup.put(code.toString(), rs.getString(2));
+                }
+            }
+        }
+
+        return Collections.unmodifiableMap(lookup);
+    }
+
+    /**
+     * A cached code/name lookup as used by one query. A code the cached copy
+     * does not know may be new in EBS, so the first such code reloads the
+     * lookup from the database; codes still unknown after that resolve to no
+     * name, as with an outer join.
+     */
+    public class Lookup {
+        private final String cacheKey;
+        private final String server;
+        private final String sid;
+        private final String username;
+        private final String password;
+        private final String sql;
+        private Map<String, String> names;
+        private boolean reloaded;
+
+        private Lookup(String table, String server, String sid,
+                       String username, String password, String sql) throws SQLException {
+            this.cacheKey = table + "@" + server + "/" + sid;
+            this.server = server;
+            this.sid = sid;
+            this.username = username;
+            this.password = password;
+            this.sql = sql;
+            this.names = lookup(cacheKey, server, sid, username, password, sql);
+        }
+
+        /**
+         * Get the name for a code; null if the code is null or unknown in EBS
+         *
+         * @throws SQLException If reloading the lookup fails
+         */
+        public String get(Object code) throws SQLException {
+            if (code == null) {
+                return null;
+            }
+
+            String key = code.toString();
+            if (!names.containsKey(key) && !reloaded) {
+                reloaded = true;
+                referenceRegion.remove(cacheKey);
+                names = lookup(cacheKey, server, sid, username, password, sql);
+            }
+            return names.get(key);
+        }
+
+        /**
+         * Resolve a reference name into a row, matching the column-name case the driver used for the row
+         *
+         * @param row The row to update
+         * @param codeColumn The column holding the lookup code
+         * @param nameColumn The column to store the resolved name in
+         * @throws SQLException If reloading the lookup fails
+         */
+        public void resolve(Map<String, Object> row, String codeColumn, String nameColumn) throws SQLException {
+            String key = row.containsKey(codeColumn) ? codeColumn : codeColumn.toUpperCase();
+            row.put(key.equals(codeColumn) ? nameColumn : nameColumn.toUpperCase(), get(row.get(key)));
+        }
+    }
+}
\ No newline at end of file
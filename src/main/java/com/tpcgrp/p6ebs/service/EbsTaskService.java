@@ -1,5 +1,7 @@
 package com.tpcgrp.p6ebs.service;
 
+import com.tpcgrp.p6ebs.service.integration.CancellationToken;
+
 import java.sql.*;
 import java.util.*;
 
@@ -9,9 +11,11 @@ import java.util.*;
 public class EbsTaskService {
 
     private final DatabaseService databaseService;
+    private final EbsReferenceDataService referenceDataService;
 
-    public EbsTaskService(DatabaseService databaseService) {
+    public EbsTaskService(DatabaseService databaseService, EbsReferenceDataService referenceDataService) {
         this.databaseService = databaseService;
+        this.referenceDataService = referenceDataService;
     }
 
     /**
@@ -26,11 +30,32 @@ public class EbsTaskService {
      */
     public List<Map<String, Object>> getAllTasks(String server, String sid,
                                                  String username, String password) throws SQLException {
+        return getAllTasks(server, sid, username, password, CancellationToken.NONE);
+    }
+
+    /**
+     * Retrieves all tasks from Oracle EBS database, stopping early if the run is cancelled.
+     * The query is cancelled on the database when the run is; rows read until then are returned.
+     *
+     * @param server The database server address
+     * @param sid The Oracle SID
+     * @param username Database username
+     * @param password Database password
+     * @param cancellation Token of the run reading the tasks
+     * @return List of task maps containing all task data
+     * @throws SQLException If a database error occurs, including the query being cancelled
+     */
+    public List<Map<String, Object>> getAllTasks(String server, String sid,
+                                                 String username, String password,
+                                                 CancellationToken cancellation) throws SQLException {
 
         String url = String.format("jdbc:oracle:thin:@%s:1521:%s", server, sid);
 
         List<Map<String, Object>> tasks = new ArrayList<>();
 
+        // Task status names are resolved in-process from a cached lookup instead of a join
+        EbsReferenceDataService.Lookup taskStatusNames = referenceDataService.getTaskStatusNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             // SQL query to get tasks with key information
             String sql = "SELECT t.task_id, t.task_number, t.task_name, t.description, " +
@@ -38,31 +63,34 @@ public class EbsTaskService {
                     "t.start_date, t.completion_date, " +
                     "t.actual_start_date, t.actual_finish_date, " +
                     "t.planned_duration, t.actual_duration, " +
-                    "t.task_status_code, ts.task_status_name, " +
+                    "t.task_status_code, " +
                     "t.wbs_level, t.parent_task_id, pt.task_name as parent_task_name, " +
                     "t.creation_date, t.last_update_date " +
                     "FROM pa_tasks t " +
                     "JOIN pa_projects_all p ON t.project_id = p.project_id " +
-                    "JOIN pa_task_statuses_v ts ON t.task_status_code = ts.task_status_code " +
                     "LEFT JOIN pa_tasks pt ON t.parent_task_id = pt.task_id " +
                     "ORDER BY p.segment1, t.task_number";
 
-            try (PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(sql))) {
+                try (ResultSet rs = stmt.executeQuery()) {
 
-                ResultSetMetaData metaData = rs.getMetaData();
-                int columnCount = metaData.getColumnCount();
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    int columnCount = metaData.getColumnCount();
 
-                while (rs.next()) {
-                    Map<String, Object> task = new HashMap<>();
+                    while (rs.next() && !cancellation.isCancelled()) {
+                        Map<String, Object> task = new HashMap<>();
 
-                    for (int i = 1; i <= columnCount; i++) {
-                        String columnName = metaData.getColumnName(i);
-                        Object value = rs.getObject(i);
-                        task.put(columnName, value);
-                    }
+                        for (int i = 1; i <= columnCount; i++) {
+                            String columnName = metaData.getColumnName(i);
+                            Object value = rs.getObject(i);
+                            task.put(columnName, value);
+                        }
 
-                    tasks.add(task);
+                        taskStatusNames.resolve(task, "task_status_code", "task_status_name");
+                        tasks.add(task);
+                    }
+                } finally {
+                    cancellation.unregister(stmt);
                 }
             }
         }
@@ -146,15 +174,16 @@ public class EbsTaskService {
 
         List<Map<String, Object>> tasks = new ArrayList<>();
 
+        EbsReferenceDataService.Lookup taskStatusNames = referenceDataService.getTaskStatusNames(server, sid, username, password);
+
         try (Connection conn = DriverManager.getConnection(url, username, password)) {
             String sql = "SELECT t.task_id, t.task_number, t.task_name, t.description, " +
                     "t.start_date, t.completion_date, " +
                     "t.actual_start_date, t.actual_finish_date, " +
                     "t.planned_duration, t.actual_duration, " +
-                    "t.task_status_code, ts.task_status_name, " +
+                    "t.task_status_code, " +
                     "t.wbs_level, t.parent_task_id, pt.task_name as parent_task_name " +
                     "FROM pa_tasks t " +
-                    "JOIN pa_task_statuses_v ts ON t.task_status_code = ts.task_status_code " +
                     "LEFT JOIN pa_tasks pt ON t.parent_task_id = pt.task_id " +
                     "WHERE t.project_id = ? " +
                     "ORDER BY t.wbs_level, t.task_number";
@@ -175,6 +204,7 @@ public class EbsTaskService {
                             task.put(columnName, value);
                         }
 
+                        taskStatusNames.resolve(task, "task_status_code", "task_status_name");
                         tasks.add(task);
                     }
                 }
@@ -1,7 +1,15 @@
 package com.tpcgrp.p6ebs.service;
 
+import com.tpcgrp.p6ebs.service.integration.CancellationToken;
+
+import java.math.BigDecimal;
 import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.Date;
 import org.springframework.stereotype.Service;
 
 /**
@@ -10,6 +18,8 @@ import org.springframework.stereotype.Service;
 @Service
 public class P6ActivityService {
 
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private final DatabaseService databaseService;
 
     public P6ActivityService(DatabaseService databaseService) {
@@ -146,6 +156,23 @@ public class P6ActivityService {
      */
     public List<Map<String, Object>> getAllProjects(String server, String database,
                                                     String username, String password) throws SQLException {
+        return getAllProjects(server, database, username, password, CancellationToken.NONE);
+    }
+
+    /**
+     * Get a list of all projects from P6 for an integration run.
+     *
+     * @param server The database server address
+     * @param database The database name
+     * @param username Database username
+     * @param password Database password
+     * @param cancellation Token of the run reading the projects
+     * @return List of project maps
+     * @throws SQLException If a database error occurs, including the query being cancelled
+     */
+    public List<Map<String, Object>> getAllProjects(String server, String database,
+                                                    String username, String password,
+                                                    CancellationToken cancellation) throws SQLException {
         
         /** P6 SQL CONNECTION
            /** P6 SQL CONNECTION
@@ -164,22 +191,25 @@ public class P6ActivityService {
                     "FROM PROJECTS " +
                     "ORDER BY proj_name";
 
-            try (PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(sql))) {
+                try (ResultSet rs = stmt.executeQuery()) {
 
-                ResultSetMetaData metaData = rs.getMetaData();
-                int columnCount = metaData.getColumnCount();
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    int columnCount = metaData.getColumnCount();
 
-                while (rs.next()) {
-                    Map<String, Object> project = new HashMap<>();
+                    while (rs.next() && !cancellation.isCancelled()) {
+                        Map<String, Object> project = new HashMap<>();
 
-                    for (int i = 1; i <= columnCount; i++) {
-                        String columnName = metaData.getColumnName(i);
-                        Object value = rs.getObject(i);
-                        project.put(columnName, value);
-                    }
+                        for (int i = 1; i <= columnCount; i++) {
+                            String columnName = metaData.getColumnName(i);
+                            Object value = rs.getObject(i);
+                            project.put(columnName, value);
+                        }
 
-                    projects.add(project);
+                        projects.add(project);
+                    }
+                } finally {
+                    cancellation.unregister(stmt);
                 }
             }
         }
@@ -220,7 +250,28 @@ public class P6ActivityService {
     }
 
     /**
-     * Create or update an activity in P6
+     * Open a connection to the P6 database.
+     *
+     * @param server The database server address
+     * @param database The database name
+     * @param username Database username
+     * @param password Database password
+     * @return Open connection, to be closed by the caller
+     * @throws SQLException If a database error occurs
+     */
+    public Connection openConnection(String server, String database,
+                                     String username, String password) throws SQLException {
+        String url = String.format("jdbc:oracle:thin:@%s:1521:%s", server, database);
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    /**
+     * Create or update an activity in P6. The activity's current row is read
+     * in place of an existence check and compared with the new data, and an
+     * update sets only the columns whose values differ; when none differ
+     * nothing is written. Columns appear in name order, so the same set of
+     * columns always gives the same statement text and the database can
+     * reuse its cursor.
      *
      * @param server The database server address
      * @param database The database name
@@ -234,90 +285,149 @@ public class P6ActivityService {
                                           String username, String password,
                                           Map<String, Object> activityData) throws SQLException {
 
-        String url = String.format("jdbc:oracle:thin:@%s:1521:%s", server, database);
-
-        try (Connection conn = DriverManager.getConnection(url, username, password)) {
-            // Check if activity exists
-            String activityId = activityData.get("activity_id").toString();
-            String projectId = activityData.get("proj_id").toString();
-
-            String checkSql = "SELECT COUNT(*) FROM ACTIVITIES WHERE activity_id = ? AND proj_id = ?";
-
-            boolean exists = false;
-
-            try (PreparedStatement stmt = conn.prepareStatement(checkSql)) {
-                stmt.setString(1, activityId);
-                stmt.setString(2, projectId);
+        try (Connection conn = openConnection(server, database, username, password)) {
+            return createOrUpdateActivity(conn, activityData, CancellationToken.NONE);
+        }
+    }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        exists = rs.getInt(1) > 0;
+    /**
+     * Create or update an activity in P6 over an open connection, so that a
+     * caller writing many activities connects once for all of them.
+     *
+     * @param conn Open connection to the P6 database
+     * @param activityData Activity data to create/update
+     * @param cancellation Token of the run writing the activity
+     * @return boolean indicating success or failure
+     * @throws SQLException If a database error occurs, including a statement being cancelled
+     */
+    public boolean createOrUpdateActivity(Connection conn, Map<String, Object> activityData,
+                                          CancellationToken cancellation) throws SQLException {
+        String activityId = activityData.get("activity_id").toString();
+        String projectId = activityData.get("proj_id").toString();
+
+        // Non-null values to write, by column name; the keys identify the row
+        SortedMap<String, Object> values = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : activityData.entrySet()) {
+            if (entry.getValue() != null) {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        values.remove("activity_id");
+        values.remove("proj_id");
+
+        // Read the current values of those columns, which also tells if the activity exists
+        Map<String, Object> current = null;
+        String selectSql = "SELECT " + (values.isEmpty() ? "1" : String.join(", ", values.keySet())) +
+                " FROM ACTIVITIES WHERE activity_id = ? AND proj_id = ?";
+
+        try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(selectSql))) {
+            stmt.setString(1, activityId);
+            stmt.setString(2, projectId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    current = new HashMap<>();
+                    int column = 1;
+                    for (String key : values.keySet()) {
+                        current.put(key, rs.getObject(column++));
                     }
                 }
+            } finally {
+                cancellation.unregister(stmt);
             }
+        }
 
-            if (exists) {
-                // Update existing activity
-                StringBuilder updateSql = new StringBuilder("UPDATE ACTIVITIES SET ");
-                List<String> setClauses = new ArrayList<>();
-                List<Object> params = new ArrayList<>();
-
-                for (Map.Entry<String, Object> entry : activityData.entrySet()) {
-                    String key = entry.getKey();
-                    if (!key.equals("activity_id") && !key.equals("proj_id") && entry.getValue() != null) {
-                        setClauses.add(key + " = ?");
-                        params.add(entry.getValue());
-                    }
+        if (current != null) {
+            // Update only the columns that changed
+            SortedMap<String, Object> changed = new TreeMap<>();
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (!sameValue(current.get(entry.getKey()), entry.getValue())) {
+                    changed.put(entry.getKey(), entry.getValue());
                 }
+            }
 
-                updateSql.append(String.join(", ", setClauses));
-                updateSql.append(" WHERE activity_id = ? AND proj_id = ?");
-
-                try (PreparedStatement stmt = conn.prepareStatement(updateSql.toString())) {
-                    int paramIndex = 1;
-                    for (Object param : params) {
-                        stmt.setObject(paramIndex++, param);
-                    }
-
-                    stmt.setString(paramIndex++, activityId);
-                    stmt.setString(paramIndex, projectId);
+            if (changed.isEmpty()) {
+                return true;
+            }
 
-                    int rowsUpdated = stmt.executeUpdate();
-                    return rowsUpdated > 0;
-                }
-            } else {
-                // Insert new activity
-                StringBuilder insertSql = new StringBuilder("INSERT INTO ACTIVITIES (");
-                StringBuilder valuesSql = new StringBuilder("VALUES (");
-                List<Object> params = new ArrayList<>();
-
-                for (Map.Entry<String, Object> entry : activityData.entrySet()) {
-                    if (entry.getValue() != null) {
-                        if (params.size() > 0) {
-                            insertSql.append(", ");
-                            valuesSql.append(", ");
-                        }
+            List<String> setClauses = new ArrayList<>();
+            for (String key : changed.keySet()) {
+                setClauses.add(key + " = ?");
+            }
+            String updateSql = "UPDATE ACTIVITIES SET " + String.join(", ", setClauses) +
+                    " WHERE activity_id = ? AND proj_id = ?";
 
-                        insertSql.append(entry.getKey());
-                        valuesSql.append("?");
-                        params.add(entry.getValue());
-                    }
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(updateSql))) {
+                int paramIndex = 1;
+                for (Object param : changed.values()) {
+                    stmt.setObject(paramIndex++, param);
                 }
 
-                insertSql.append(") ").append(valuesSql).append(")");
+                stmt.setString(paramIndex++, activityId);
+                stmt.setString(paramIndex, projectId);
 
-                try (PreparedStatement stmt = conn.prepareStatement(insertSql.toString())) {
-                    int paramIndex = 1;
-                    for (Object param : params) {
-                        stmt.setObject(paramIndex++, param);
-                    }
+                int rowsUpdated;
+                try {
+                    rowsUpdated = stmt.executeUpdate();
+                } finally {
+                    cancellation.unregister(stmt);
+                }
+                return rowsUpdated > 0;
+            }
+        } else {
+            // Insert new activity
+            SortedMap<String, Object> columns = new TreeMap<>(values);
+            columns.put("activity_id", activityData.get("activity_id"));
+            columns.put("proj_id", activityData.get("proj_id"));
+
+            String insertSql = "INSERT INTO ACTIVITIES (" + String.join(", ", columns.keySet()) + ") " +
+                    "VALUES (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+
+            try (PreparedStatement stmt = cancellation.register(conn.prepareStatement(insertSql))) {
+                int paramIndex = 1;
+                for (Object param : columns.values()) {
+                    stmt.setObject(paramIndex++, param);
+                }
 
-                    int rowsInserted = stmt.executeUpdate();
-                    return rowsInserted > 0;
+                int rowsInserted;
+                try {
+                    rowsInserted = stmt.executeUpdate();
+                } finally {
+                    cancellation.unregister(stmt);
                 }
+                return rowsInserted > 0;
+            }
+        }
+    }
+
+    /**
+     * Check if a value read from P6 equals a value about to be written. Numbers
+     * compare by value and dates by instant; a date compares with text as the
+     * timestamp the text is stored as. When in doubt the values count as different,
+     * so the column is written.
+     */
+    private static boolean sameValue(Object current, Object value) {
+        if (current == null) {
+            return false;
+        }
+        if (current instanceof Date && value instanceof Date) {
+            return ((Date) current).getTime() == ((Date) value).getTime();
+        }
+        if (current instanceof Date && value instanceof String) {
+            // A date written as text is stored at midnight
+            String text = (String) value;
+            String timestamp = text.length() == 10 ? text + " 00:00:00" : text;
+            LocalDateTime stored = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(((Date) current).getTime()), ZoneId.systemDefault());
+            return TIMESTAMP_FORMAT.format(stored).equals(timestamp);
+        }
+        if (current instanceof Number || value instanceof Number) {
+            try {
+                return new BigDecimal(current.toString()).compareTo(new BigDecimal(value.toString())) == 0;
+            } catch (NumberFormatException e) {
+                return false;
             }
-        } catch (SQLException e) {
-            throw e;
         }
+        return current.toString().equals(value.toString());
     }
 }
\ No newline at end of file
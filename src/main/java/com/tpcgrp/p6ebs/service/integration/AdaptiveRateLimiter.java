@@ -0,0 +1,136 @@
+/**
+ * Load-aware pacing of writes to a target database
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Paces the writes to one target database, adapting to how well the database
+ * keeps up. Writes are spaced to a rate in rows per second and made one at a
+ * time by the run's writer loop; no run writes in parallel, so there is no
+ * concurrency to adapt. Writes are judged in batches: when a batch's average
+ * write latency stays within the target and few of its writes fail, the rate
+ * goes up by a fixed step; otherwise it is halved (additive increase,
+ * multiplicative decrease). The rate stays within its bounds.
+ */
+@Slf4j
+public class AdaptiveRateLimiter {
+
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final int INCREASE_STEPS = 20; // Additive steps from the minimum to the maximum rate
+    private static final long CANCEL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String target;
+    private final double minRowsPerSecond;
+    private final double maxRowsPerSecond;
+    private final long targetLatencyNanos;
+    private final double maxErrorRate;
+    private final int batchSize;
+
+    private double rowsPerSecond;
+    private long nextSlotNanos = System.nanoTime();
+
+    // Writes completed in the current batch
+    private int batchWrites;
+    private int batchErrors;
+    private long batchLatencyNanos;
+
+    public AdaptiveRateLimiter(String target, ConfigurationManager configManager) {
+        this.target = target;
+        this.minRowsPerSecond = configManager.getLoadMinRowsPerSecond();
+        this.maxRowsPerSecond = Math.max(minRowsPerSecond, configManager.getLoadMaxRowsPerSecond());
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(configManager.getLoadTargetLatencyMs());
+        this.maxErrorRate = configManager.getLoadMaxErrorRate();
+        this.batchSize = Math.max(1, configManager.getBatchSize());
+        this.rowsPerSecond = minRowsPerSecond;
+    }
+
+    /**
+     * Perform a write at its turn at the current rate, and count its latency
+     * and outcome towards the current batch
+     *
+     * @param write Write returning whether it succeeded; an exception counts as a failure
+     * @param cancellation Token of the run; the write is not made if the run is cancelled while waiting
+     * @return Result of the write
+     * @throws CancellationException If the run was cancelled before the write's turn
+     * @throws InterruptedException If interrupted while waiting to write
+     */
+    public boolean run(BooleanSupplier write, CancellationToken cancellation) throws InterruptedException {
+        acquire(cancellation);
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            success = write.getAsBoolean();
+            return success;
+        } finally {
+            release(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Wait for the write's turn at the current rate, checking for cancellation
+     * while waiting
+     */
+    private void acquire(CancellationToken cancellation) throws InterruptedException {
+        long slot;
+        synchronized (this) {
+            slot = Math.max(System.nanoTime(), nextSlotNanos);
+            nextSlotNanos = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rowsPerSecond);
+        }
+
+        long waitNanos;
+        while ((waitNanos = slot - System.nanoTime()) > 0) {
+            if (cancellation.isCancelled()) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, CANCEL_CHECK_NANOS));
+        }
+        if (cancellation.isCancelled()) {
+            throw new CancellationException("Write to " + target + " cancelled");
+        }
+    }
+
+    private synchronized void release(long latencyNanos, boolean success) {
+        batchWrites++;
+        batchLatencyNanos += latencyNanos;
+        if (!success) {
+            batchErrors++;
+        }
+
+        if (batchWrites >= batchSize) {
+            adjust();
+        }
+    }
+
+    /**
+     * Raise or cut the rate according to the batch just completed
+     */
+    private void adjust() {
+        long averageLatencyNanos = batchLatencyNanos / batchWrites;
+        double errorRate = (double) batchErrors / batchWrites;
+
+        if (averageLatencyNanos > targetLatencyNanos || errorRate > maxErrorRate) {
+            rowsPerSecond = Math.max(minRowsPerSecond, rowsPerSecond * DECREASE_FACTOR);
+            log.info("Backing off writes to {}: {} ms average latency, {}% errors; now {} rows/s",
+                    target, TimeUnit.NANOSECONDS.toMillis(averageLatencyNanos), Math.round(errorRate * 100),
+                    Math.round(rowsPerSecond));
+        } else {
+            rowsPerSecond = Math.min(maxRowsPerSecond,
+                    rowsPerSecond + (maxRowsPerSecond - minRowsPerSecond) / INCREASE_STEPS);
+        }
+
+        batchWrites = 0;
+        batchErrors = 0;
+        batchLatencyNanos = 0;
+    }
+
+    // Getters
+    public String getTarget() { return target; }
+    public synchronized double getRowsPerSecond() { return rowsPerSecond; }
+}
\ No newline at end of file
@@ -6,8 +6,19 @@ package com.tpcgrp.p6ebs.service.integration;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @Slf4j
@@ -16,13 +27,42 @@ public class CacheManager {
     // Maps to store cached data
     private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
 
+    // Named cache regions (e.g. "ebs.project", "p6.activity")
+    private final Map<String, CacheRegion> regions = new ConcurrentHashMap<>();
+
+    // Loads currently running on a caller thread, so concurrent misses share one load
+    private final Map<String, CompletableFuture<Object>> loadsInFlight = new ConcurrentHashMap<>();
+
     // Default TTL for cache entries (in milliseconds)
     private final long DEFAULT_TTL = 30 * 60 * 1000; // 30 minutes
 
+    // Default soft age after which loaded entries are refreshed in the background
+    private final long DEFAULT_REFRESH_AFTER = 10 * 60 * 1000; // 10 minutes
+
+    // Delay before retrying a background refresh that failed
+    private final long REFRESH_RETRY_DELAY = 30 * 1000; // 30 seconds
+
     // Timer for cache cleanup
     private final Timer cleanupTimer;
 
+    // Worker threads for background refreshes
+    private final ExecutorService refreshExecutor;
+
+    // Size of each memory-mapped file of the disk tier
+    private final int DISK_CACHE_FILE_SIZE = 64 * 1024 * 1024; // 64 MB
+
+    // Second-level tier for persistent regions; null if the cache directory is unusable
+    private final DiskCacheStore diskStore;
+
     public CacheManager() {
+        diskStore = openDiskStore();
+
+        refreshExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "CacheRefreshWorker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
         cleanupTimer = new Timer("CacheCleanupTimer", true);
         cleanupTimer.scheduleAtFixedRate(new TimerTask() {
             @Override
@@ -32,6 +72,19 @@ public class CacheManager {
         }, 60000, 60000); // Run every minute
     }
 
+    /**
+     * Open the disk tier under ~/.p6ebs/cache
+     */
+    private DiskCacheStore openDiskStore() {
+        try {
+            return new DiskCacheStore(Paths.get(System.getProperty("user.home"), ".p6ebs", "cache"),
+                    DISK_CACHE_FILE_SIZE);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Disk cache unavailable, persistent regions will be memory-only: {}", e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Put an item in the cache with default TTL
      */
@@ -47,11 +100,35 @@ public class CacheManager {
             return;
         }
 
-        CacheEntry entry = new CacheEntry();
-        entry.setValue(value);
-        entry.setExpirationTime(System.currentTimeMillis() + ttlMillis);
+        storeEntry(cacheKey, createEntry(value, null, ttlMillis, ttlMillis, null, 0));
+    }
+
+    /**
+     * Get an item from the cache, loading it with the given loader on a miss.
+     * Uses the default refresh-after and TTL settings.
+     */
+    public <T> T get(String cacheKey, CacheLoader<T> loader) {
+        return get(cacheKey, loader, DEFAULT_REFRESH_AFTER, DEFAULT_TTL);
+    }
+
+    /**
+     * Get an item from the cache, loading it with the given loader on a miss.
+     * Once an entry is older than refreshAfterMillis the current value is still
+     * returned while a background reload runs; only an entry older than
+     * ttlMillis is loaded synchronously on the caller thread.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String cacheKey, CacheLoader<T> loader, long refreshAfterMillis, long ttlMillis) {
+        if (cacheKey == null || loader == null) {
+            return null;
+        }
+
+        CacheEntry entry = lookup(cacheKey);
+        if (entry != null) {
+            return (T) entry.getValue();
+        }
 
-        cache.put(cacheKey, entry);
+        return (T) loadNow(cacheKey, loader, refreshAfterMillis, ttlMillis, null, 0);
     }
 
     /**
@@ -63,27 +140,80 @@ public class CacheManager {
             return null;
         }
 
-        CacheEntry entry = cache.get(cacheKey);
+        CacheEntry entry = lookup(cacheKey);
+        return entry != null ? (T) entry.getValue() : null;
+    }
 
-        if (entry == null) {
+    /**
+     * Remove an item from the cache
+     */
+    public void remove(String cacheKey) {
+        if (cacheKey != null) {
+            CacheEntry entry = cache.get(cacheKey);
+            if (entry != null) {
+                removeEntry(cacheKey, entry, RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    /**
+     * Remove a region item from memory and from the disk tier
+     */
+    private void removeFromRegion(CacheRegion region, String cacheKey) {
+        remove(cacheKey);
+        if (region.isPersistent() && diskStore != null) {
+            diskStore.remove(cacheKey);
+        }
+    }
+
+    /**
+     * Promote an entry of a persistent region from the disk tier into memory.
+     * The entry keeps its original write and expiration times, so a value that is
+     * past its refresh age is served immediately and reloaded in the background.
+     */
+    private CacheEntry loadFromDisk(String cacheKey, CacheRegion region, long generation, CacheLoader<?> loader) {
+        if (!region.isPersistent() || diskStore == null) {
             return null;
         }
 
-        // Check if entry is expired
-        if (System.currentTimeMillis() > entry.getExpirationTime()) {
-            cache.remove(cacheKey);
+        DiskCacheStore.StoredValue stored = diskStore.get(cacheKey);
+        if (stored == null || stored.getValue() == null) {
             return null;
         }
 
-        return (T) entry.getValue();
+        CacheEntry entry = createEntry(stored.getValue(), loader, region.getRefreshAfterMillis(),
+                region.getTtlMillis(), region, generation);
+        entry.setExpirationTime(stored.getExpirationTime());
+        if (loader != null) {
+            entry.setRefreshTime(stored.getWriteTime() + region.getRefreshAfterMillis());
+        }
+
+        CacheEntry existing = cache.putIfAbsent(cacheKey, entry);
+        if (existing != null) {
+            return existing;
+        }
+        region.onStored(cacheKey, entry, true);
+        region.diskHits.increment();
+
+        if (loader != null && System.currentTimeMillis() >= entry.getRefreshTime()) {
+            scheduleRefresh(cacheKey, entry);
+        }
+        return entry;
     }
 
     /**
-     * Remove an item from the cache
+     * Give an entry that was stored without a loader, such as one promoted from
+     * disk by a plain read, the loader of a later read, so it is refreshed ahead
+     * of expiry like any loaded entry
      */
-    public void remove(String cacheKey) {
-        if (cacheKey != null) {
-            cache.remove(cacheKey);
+    private void adoptLoader(String cacheKey, CacheEntry entry, CacheLoader<?> loader, long refreshAfterMillis) {
+        long writeTime = entry.getExpirationTime() - entry.getTtlMillis();
+        entry.setRefreshAfterMillis(refreshAfterMillis);
+        entry.setRefreshTime(writeTime + refreshAfterMillis);
+        entry.setLoader(loader);
+
+        if (System.currentTimeMillis() >= entry.getRefreshTime()) {
+            scheduleRefresh(cacheKey, entry);
         }
     }
 
@@ -92,49 +222,279 @@ public class CacheManager {
      */
     public void clear() {
         cache.clear();
+        for (CacheRegion region : regions.values()) {
+            region.invalidateAll();
+        }
     }
 
     /**
-     * Clear cache for a specific prefix
+     * Clear cache for a specific prefix.
+     * This scans every key; prefer a {@link CacheRegion} for data that is invalidated as a group.
      */
     public void clearPrefix(String prefix) {
         if (prefix == null) {
             return;
         }
 
-        List<String> keysToRemove = new ArrayList<>();
+        for (Map.Entry<String, CacheEntry> entry : cache.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                removeEntry(entry.getKey(), entry.getValue(), RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    /**
+     * Define a cache region with its own TTL, refresh age and weight budget.
+     * Redefining an existing region updates its settings and keeps its entries.
+     */
+    public CacheRegion defineRegion(String name, long ttlMillis, long refreshAfterMillis, long maxWeight) {
+        CacheRegion region = getRegion(name);
+        region.setTtlMillis(ttlMillis);
+        region.setRefreshAfterMillis(refreshAfterMillis);
+        region.setMaxWeight(maxWeight);
+        return region;
+    }
+
+    /**
+     * Get a cache region, creating it with default settings if needed
+     */
+    public CacheRegion getRegion(String name) {
+        return regions.computeIfAbsent(name, CacheRegion::new);
+    }
+
+    /**
+     * Invalidate every entry of a region in constant time
+     */
+    public void invalidateRegion(String name) {
+        CacheRegion region = regions.get(name);
+        if (region != null) {
+            region.invalidateAll();
+        }
+    }
+
+    /**
+     * Find a live entry, dropping it if it has expired or belongs to an
+     * invalidated region generation, and triggering a background refresh
+     * once it has passed its soft age.
+     */
+    private CacheEntry lookup(String cacheKey) {
+        CacheEntry entry = cache.get(cacheKey);
+
+        if (entry == null) {
+            return null;
+        }
+
+        // Check if entry is expired
+        long now = System.currentTimeMillis();
+        if (now > entry.getExpirationTime() || entry.isStale()) {
+            removeEntry(cacheKey, entry, entry.isStale() ? RemovalCause.INVALIDATED : RemovalCause.EXPIRED);
+            return null;
+        }
 
-        for (String key : cache.keySet()) {
-            if (key.startsWith(prefix)) {
-                keysToRemove.add(key);
+        // Entries that were loaded through a loader keep themselves fresh
+        if (now >= entry.getRefreshTime()) {
+            scheduleRefresh(cacheKey, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Load a value on the caller thread and store it. Concurrent callers
+     * missing on the same key wait for the first load instead of repeating it.
+     */
+    private Object loadNow(String cacheKey, CacheLoader<?> loader, long refreshAfterMillis, long ttlMillis,
+                           CacheRegion region, long generation) {
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loadsInFlight.putIfAbsent(cacheKey, pending);
+
+        if (existing != null) {
+            return awaitLoad(cacheKey, existing);
+        }
+
+        long start = System.nanoTime();
+        try {
+            Object value = loader.load();
+            recordLoad(region, start, true);
+            if (value != null) {
+                storeEntry(cacheKey, createEntry(value, loader, refreshAfterMillis, ttlMillis, region, generation));
             }
+            pending.complete(value);
+            return value;
+        } catch (Exception e) {
+            recordLoad(region, start, false);
+            pending.completeExceptionally(e);
+            throw new CacheLoadException("Failed to load cache entry " + cacheKey, e);
+        } finally {
+            loadsInFlight.remove(cacheKey, pending);
+        }
+    }
+
+    /**
+     * Wait for a load started by another thread
+     */
+    private Object awaitLoad(String cacheKey, CompletableFuture<Object> pending) {
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            throw new CacheLoadException("Failed to load cache entry " + cacheKey, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheLoadException("Interrupted while loading cache entry " + cacheKey, e);
+        }
+    }
+
+    /**
+     * Reload an entry in the background while readers keep seeing the current value.
+     * At most one refresh runs per entry; a failed refresh is retried after a short delay.
+     */
+    private void scheduleRefresh(String cacheKey, CacheEntry entry) {
+        CacheLoader<?> loader = entry.getLoader();
+        if (loader == null || !entry.getRefreshing().compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    Object value = loader.load();
+                    recordLoad(entry.getRegion(), start, true);
+                    if (value != null) {
+                        replaceEntry(cacheKey, entry, createEntry(value, loader,
+                                entry.getRefreshAfterMillis(), entry.getTtlMillis(),
+                                entry.getRegion(), entry.getGeneration()));
+                    }
+                } catch (Exception e) {
+                    recordLoad(entry.getRegion(), start, false);
+                    log.warn("Background refresh failed for cache entry {}: {}", cacheKey, e.getMessage());
+                    entry.setRefreshTime(System.currentTimeMillis() + REFRESH_RETRY_DELAY);
+                } finally {
+                    entry.getRefreshing().set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.getRefreshing().set(false);
+        }
+    }
+
+    /**
+     * Record the outcome and duration of a load for the owning region
+     */
+    private void recordLoad(CacheRegion region, long startNanos, boolean success) {
+        if (region != null) {
+            region.loadTimeNanos.add(System.nanoTime() - startNanos);
+            (success ? region.loads : region.loadFailures).increment();
+        }
+    }
+
+    /**
+     * Create a cache entry stamped with the current time and the region generation
+     * its key was qualified with
+     */
+    private CacheEntry createEntry(Object value, CacheLoader<?> loader, long refreshAfterMillis, long ttlMillis,
+                                  CacheRegion region, long generation) {
+        long now = System.currentTimeMillis();
+
+        CacheEntry entry = new CacheEntry();
+        entry.setValue(value);
+        entry.setLoader(loader);
+        entry.setRefreshAfterMillis(refreshAfterMillis);
+        entry.setTtlMillis(ttlMillis);
+        entry.setRefreshTime(loader != null ? now + refreshAfterMillis : Long.MAX_VALUE);
+        entry.setExpirationTime(now + ttlMillis);
+
+        if (region != null) {
+            entry.setRegion(region);
+            entry.setGeneration(generation);
+            entry.setWeight(weigh(value));
+        }
+
+        return entry;
+    }
+
+    /**
+     * Store an entry, keeping the owning region's weight up to date
+     */
+    private void storeEntry(String cacheKey, CacheEntry entry) {
+        CacheEntry previous = cache.put(cacheKey, entry);
+        writeToDisk(cacheKey, entry);
+
+        if (previous != null && previous.getRegion() != null) {
+            previous.getRegion().onRemoved(previous);
+        }
+        if (entry.getRegion() != null) {
+            entry.getRegion().onStored(cacheKey, entry, previous == null);
         }
+    }
+
+    /**
+     * Replace an entry only if it is still the current mapping for the key
+     */
+    private void replaceEntry(String cacheKey, CacheEntry current, CacheEntry replacement) {
+        if (cache.replace(cacheKey, current, replacement) && current.getRegion() != null) {
+            writeToDisk(cacheKey, replacement);
+            current.getRegion().onRemoved(current);
+            current.getRegion().onStored(cacheKey, replacement, false);
+        }
+    }
 
-        for (String key : keysToRemove) {
-            cache.remove(key);
+    /**
+     * Write an entry of a persistent region through to the disk tier
+     */
+    private void writeToDisk(String cacheKey, CacheEntry entry) {
+        CacheRegion region = entry.getRegion();
+        if (region != null && region.isPersistent() && diskStore != null) {
+            diskStore.put(cacheKey, entry.getValue(),
+                    entry.getExpirationTime() - entry.getTtlMillis(), entry.getExpirationTime());
         }
     }
 
     /**
-     * Clean up expired entries
+     * Remove an entry only if it is still the current mapping for the key,
+     * counting the removal against the owning region under the given cause
+     */
+    private void removeEntry(String cacheKey, CacheEntry entry, RemovalCause cause) {
+        if (cache.remove(cacheKey, entry) && entry.getRegion() != null) {
+            entry.getRegion().onRemoved(entry);
+            entry.getRegion().evictions.get(cause).increment();
+        }
+    }
+
+    /**
+     * Estimate the weight of a cached value: collections weigh one unit per element
+     */
+    private static long weigh(Object value) {
+        if (value instanceof Collection) {
+            return Math.max(1, ((Collection<?>) value).size());
+        }
+        if (value instanceof Map) {
+            return Math.max(1, ((Map<?, ?>) value).size());
+        }
+        return 1;
+    }
+
+    /**
+     * Clean up expired entries and entries of invalidated region generations
      */
     private void cleanupExpiredEntries() {
         long now = System.currentTimeMillis();
-        List<String> keysToRemove = new ArrayList<>();
 
         for (Map.Entry<String, CacheEntry> entry : cache.entrySet()) {
-            if (now > entry.getValue().getExpirationTime()) {
-                keysToRemove.add(entry.getKey());
+            CacheEntry cacheEntry = entry.getValue();
+            if (now > cacheEntry.getExpirationTime() || cacheEntry.isStale()) {
+                removeEntry(entry.getKey(), cacheEntry,
+                        cacheEntry.isStale() ? RemovalCause.INVALIDATED : RemovalCause.EXPIRED);
             }
         }
 
-        for (String key : keysToRemove) {
-            cache.remove(key);
+        for (CacheRegion region : regions.values()) {
+            region.purgeEvictionQueue();
         }
     }
 
     /**
-     * Get cache statistics
+     * Get cache statistics, including a snapshot of every region's counters
      */
     public CacheStats getStats() {
         CacheStats stats = new CacheStats();
@@ -142,15 +502,23 @@ public class CacheManager {
 
         long now = System.currentTimeMillis();
         int expiredEntries = 0;
+        Map<CacheRegion, Integer> regionEntries = new HashMap<>();
 
         for (CacheEntry entry : cache.values()) {
-            if (now > entry.getExpirationTime()) {
+            if (now > entry.getExpirationTime() || entry.isStale()) {
                 expiredEntries++;
+            } else if (entry.getRegion() != null) {
+                regionEntries.merge(entry.getRegion(), 1, Integer::sum);
             }
         }
 
         stats.setExpiredEntries(expiredEntries);
 
+        for (CacheRegion region : regions.values()) {
+            stats.getRegions().add(region.snapshot(regionEntries.getOrDefault(region, 0)));
+        }
+        stats.getRegions().sort(Comparator.comparing(RegionStats::getName));
+
         return stats;
     }
 
@@ -159,6 +527,254 @@ public class CacheManager {
      */
     public void shutdown() {
         cleanupTimer.cancel();
+        refreshExecutor.shutdownNow();
+        if (diskStore != null) {
+            diskStore.close();
+        }
+    }
+
+    /**
+     * A named group of cache entries with its own TTL, weight budget and statistics.
+     * Keys are qualified with the region's generation, so invalidating the region is
+     * a single counter increment; entries of older generations become unreachable
+     * and are reclaimed by the cleanup timer. Persistent regions also write entries
+     * through to the disk tier and keep their generation there across restarts.
+     */
+    public class CacheRegion {
+        private final String name;
+        private final AtomicLong generation = new AtomicLong();
+        private final AtomicLong weight = new AtomicLong();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder diskHits = new LongAdder();
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder loadFailures = new LongAdder();
+        private final LongAdder loadTimeNanos = new LongAdder();
+        private final Map<RemovalCause, LongAdder> evictions = new EnumMap<>(RemovalCause.class);
+        private volatile long ttlMillis = DEFAULT_TTL;
+        private volatile long refreshAfterMillis = DEFAULT_REFRESH_AFTER;
+        private volatile long maxWeight = Long.MAX_VALUE;
+        private volatile boolean persistent;
+
+        // Keys of the current generation in write order, oldest first, for weight-based eviction
+        private volatile Queue<String> evictionQueue = new ConcurrentLinkedQueue<>();
+
+        private CacheRegion(String name) {
+            this.name = name;
+            for (RemovalCause cause : RemovalCause.values()) {
+                evictions.put(cause, new LongAdder());
+            }
+            if (diskStore != null) {
+                generation.set(diskStore.getRegionEpoch(name));
+            }
+        }
+
+        /**
+         * Put an item in the region with the region's TTL
+         */
+        public void put(String key, Object value) {
+            if (key == null || value == null) {
+                return;
+            }
+
+            long currentGeneration = generation.get();
+            storeEntry(qualify(key, currentGeneration),
+                    createEntry(value, null, ttlMillis, ttlMillis, this, currentGeneration));
+        }
+
+        /**
+         * Get an item from the region
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key) {
+            if (key == null) {
+                return null;
+            }
+
+            long currentGeneration = generation.get();
+            String cacheKey = qualify(key, currentGeneration);
+            CacheEntry entry = lookup(cacheKey);
+            if (entry == null) {
+                entry = loadFromDisk(cacheKey, this, currentGeneration, null);
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+
+            hits.increment();
+            return (T) entry.getValue();
+        }
+
+        /**
+         * Get an item from the region, loading it on a miss and refreshing it
+         * in the background once it passes the region's refresh age
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key, CacheLoader<T> loader) {
+            if (key == null || loader == null) {
+                return null;
+            }
+
+            long currentGeneration = generation.get();
+            String cacheKey = qualify(key, currentGeneration);
+            CacheEntry entry = lookup(cacheKey);
+            if (entry == null) {
+                entry = loadFromDisk(cacheKey, this, currentGeneration, loader);
+            } else if (entry.getLoader() == null) {
+                adoptLoader(cacheKey, entry, loader, refreshAfterMillis);
+            }
+            if (entry != null) {
+                hits.increment();
+                return (T) entry.getValue();
+            }
+
+            misses.increment();
+            return (T) loadNow(cacheKey, loader, refreshAfterMillis, ttlMillis, this, currentGeneration);
+        }
+
+        /**
+         * Remove an item from the region
+         */
+        public void remove(String key) {
+            if (key != null) {
+                removeFromRegion(this, qualify(key, generation.get()));
+            }
+        }
+
+        /**
+         * Invalidate every entry in the region without scanning keys
+         */
+        public void invalidateAll() {
+            long newGeneration = generation.incrementAndGet();
+            weight.set(0);
+            evictionQueue = new ConcurrentLinkedQueue<>();
+
+            if (persistent && diskStore != null) {
+                diskStore.setRegionEpoch(name, newGeneration);
+            }
+        }
+
+        /**
+         * Qualify a key with the region name and generation
+         */
+        private String qualify(String key, long keyGeneration) {
+            return name + "#" + keyGeneration + ":" + key;
+        }
+
+        /**
+         * Account for a stored entry and evict the oldest entries while over budget
+         */
+        private void onStored(String cacheKey, CacheEntry entry, boolean newKey) {
+            if (entry.getGeneration() != generation.get()) {
+                return;
+            }
+
+            if (newKey) {
+                evictionQueue.add(cacheKey);
+            }
+
+            if (weight.addAndGet(entry.getWeight()) > maxWeight) {
+                evictOverBudget();
+            }
+        }
+
+        /**
+         * Account for a removed entry of the current generation
+         */
+        private void onRemoved(CacheEntry entry) {
+            if (entry.getGeneration() == generation.get()) {
+                weight.addAndGet(-entry.getWeight());
+            }
+        }
+
+        private void evictOverBudget() {
+            Queue<String> queue = evictionQueue;
+            String cacheKey;
+
+            while (weight.get() > maxWeight && (cacheKey = queue.poll()) != null) {
+                CacheEntry victim = cache.get(cacheKey);
+                if (victim != null && victim.getRegion() == this) {
+                    removeEntry(cacheKey, victim, RemovalCause.SIZE);
+                }
+            }
+        }
+
+        /**
+         * Drop queued keys whose entries have already been removed
+         */
+        private void purgeEvictionQueue() {
+            evictionQueue.removeIf(cacheKey -> !cache.containsKey(cacheKey));
+        }
+
+        /**
+         * Take a point-in-time copy of the region's counters
+         */
+        private RegionStats snapshot(int entries) {
+            RegionStats stats = new RegionStats();
+            stats.setName(name);
+            stats.setEntries(entries);
+            stats.setWeight(weight.get());
+            stats.setMaxWeight(maxWeight);
+            stats.setHits(hits.sum());
+            stats.setMisses(misses.sum());
+            stats.setDiskHits(diskHits.sum());
+            stats.setLoads(loads.sum());
+            stats.setLoadFailures(loadFailures.sum());
+            stats.setTotalLoadTimeMillis(loadTimeNanos.sum() / 1_000_000);
+            stats.setSizeEvictions(evictions.get(RemovalCause.SIZE).sum());
+            stats.setExpiredEvictions(evictions.get(RemovalCause.EXPIRED).sum());
+            stats.setInvalidatedEvictions(evictions.get(RemovalCause.INVALIDATED).sum());
+            stats.setExplicitEvictions(evictions.get(RemovalCause.EXPLICIT).sum());
+            return stats;
+        }
+
+        // Getters and setters
+        public String getName() { return name; }
+        public long getGeneration() { return generation.get(); }
+        public long getWeight() { return weight.get(); }
+        public long getHits() { return hits.sum(); }
+        public long getMisses() { return misses.sum(); }
+        public long getDiskHits() { return diskHits.sum(); }
+        public long getLoads() { return loads.sum(); }
+        public long getLoadFailures() { return loadFailures.sum(); }
+        public long getEvictions() { return evictions.values().stream().mapToLong(LongAdder::sum).sum(); }
+        public long getEvictions(RemovalCause cause) { return evictions.get(cause).sum(); }
+        public long getTtlMillis() { return ttlMillis; }
+        public void setTtlMillis(long ttlMillis) { this.ttlMillis = ttlMillis; }
+        public long getRefreshAfterMillis() { return refreshAfterMillis; }
+        public void setRefreshAfterMillis(long refreshAfterMillis) { this.refreshAfterMillis = refreshAfterMillis; }
+        public long getMaxWeight() { return maxWeight; }
+        public void setMaxWeight(long maxWeight) { this.maxWeight = maxWeight; }
+        public boolean isPersistent() { return persistent; }
+        public void setPersistent(boolean persistent) { this.persistent = persistent; }
+    }
+
+    /**
+     * Loads a value for the cache on a miss or refresh
+     */
+    @FunctionalInterface
+    public interface CacheLoader<T> {
+        T load() throws Exception;
+    }
+
+    /**
+     * Why an entry left the cache
+     */
+    public enum RemovalCause {
+        EXPLICIT,    // Removed by key or prefix
+        EXPIRED,     // Past its TTL
+        INVALIDATED, // Its region generation was invalidated
+        SIZE         // Evicted to keep the region within its weight budget
+    }
+
+    /**
+     * Thrown when a synchronous cache load fails
+     */
+    public static class CacheLoadException extends RuntimeException {
+        public CacheLoadException(String message, Throwable cause) {
+            super(message, cause);
+        }
     }
 
     /**
@@ -166,12 +782,42 @@ public class CacheManager {
      */
     private static class CacheEntry {
         private Object value;
+        private volatile CacheLoader<?> loader;
+        private CacheRegion region;
+        private long generation;
+        private long weight;
+        private long refreshAfterMillis;
+        private long ttlMillis;
+        private volatile long refreshTime;
         private long expirationTime;
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        /**
+         * Whether the entry belongs to a region generation that has been invalidated
+         */
+        public boolean isStale() {
+            return region != null && generation != region.getGeneration();
+        }
 
         public Object getValue() { return value; }
         public void setValue(Object value) { this.value = value; }
+        public CacheLoader<?> getLoader() { return loader; }
+        public void setLoader(CacheLoader<?> loader) { this.loader = loader; }
+        public CacheRegion getRegion() { return region; }
+        public void setRegion(CacheRegion region) { this.region = region; }
+        public long getGeneration() { return generation; }
+        public void setGeneration(long generation) { this.generation = generation; }
+        public long getWeight() { return weight; }
+        public void setWeight(long weight) { this.weight = weight; }
+        public long getRefreshAfterMillis() { return refreshAfterMillis; }
+        public void setRefreshAfterMillis(long refreshAfterMillis) { this.refreshAfterMillis = refreshAfterMillis; }
+        public long getTtlMillis() { return ttlMillis; }
+        public void setTtlMillis(long ttlMillis) { this.ttlMillis = ttlMillis; }
+        public long getRefreshTime() { return refreshTime; }
+        public void setRefreshTime(long refreshTime) { this.refreshTime = refreshTime; }
         public long getExpirationTime() { return expirationTime; }
         public void setExpirationTime(long expirationTime) { this.expirationTime = expirationTime; }
+        public AtomicBoolean getRefreshing() { return refreshing; }
     }
 
     /**
@@ -180,10 +826,84 @@ public class CacheManager {
     public static class CacheStats {
         private int totalEntries;
         private int expiredEntries;
+        private final List<RegionStats> regions = new ArrayList<>();
+
+        public long getHits() { return regions.stream().mapToLong(RegionStats::getHits).sum(); }
+        public long getMisses() { return regions.stream().mapToLong(RegionStats::getMisses).sum(); }
+        public long getEvictions() { return regions.stream().mapToLong(RegionStats::getEvictions).sum(); }
+
+        public double getHitRate() {
+            long requests = getHits() + getMisses();
+            return requests > 0 ? (double) getHits() / requests : 0;
+        }
 
         public int getTotalEntries() { return totalEntries; }
         public void setTotalEntries(int totalEntries) { this.totalEntries = totalEntries; }
         public int getExpiredEntries() { return expiredEntries; }
         public void setExpiredEntries(int expiredEntries) { this.expiredEntries = expiredEntries; }
+        public List<RegionStats> getRegions() { return regions; }
+    }
+
+    /**
+     * Counters of a single cache region
+     */
+    public static class RegionStats {
+        private String name;
+        private int entries;
+        private long weight;
+        private long maxWeight;
+        private long hits;
+        private long misses;
+        private long diskHits;
+        private long loads;
+        private long loadFailures;
+        private long totalLoadTimeMillis;
+        private long sizeEvictions;
+        private long expiredEvictions;
+        private long invalidatedEvictions;
+        private long explicitEvictions;
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests > 0 ? (double) hits / requests : 0;
+        }
+
+        public double getAverageLoadMillis() {
+            long attempts = loads + loadFailures;
+            return attempts > 0 ? (double) totalLoadTimeMillis / attempts : 0;
+        }
+
+        public long getEvictions() {
+            return sizeEvictions + expiredEvictions + invalidatedEvictions + explicitEvictions;
+        }
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public int getEntries() { return entries; }
+        public void setEntries(int entries) { this.entries = entries; }
+        public long getWeight() { return weight; }
+        public void setWeight(long weight) { this.weight = weight; }
+        public long getMaxWeight() { return maxWeight; }
+        public void setMaxWeight(long maxWeight) { this.maxWeight = maxWeight; }
+        public long getHits() { return hits; }
+        public void setHits(long hits) { this.hits = hits; }
+        public long getMisses() { return misses; }
+        public void setMisses(long misses) { this.misses = misses; }
+        public long getDiskHits() { return diskHits; }
+        public void setDiskHits(long diskHits) { this.diskHits = diskHits; }
+        public long getLoads() { return loads; }
+        public void setLoads(long loads) { this.loads = loads; }
+        public long getLoadFailures() { return loadFailures; }
+        public void setLoadFailures(long loadFailures) { this.loadFailures = loadFailures; }
+        public long getTotalLoadTimeMillis() { return totalLoadTimeMillis; }
+        public void setTotalLoadTimeMillis(long totalLoadTimeMillis) { this.totalLoadTimeMillis = totalLoadTimeMillis; }
+        public long getSizeEvictions() { return sizeEvictions; }
+        public void setSizeEvictions(long sizeEvictions) { this.sizeEvictions = sizeEvictions; }
+        public long getExpiredEvictions() { return expiredEvictions; }
+        public void setExpiredEvictions(long expiredEvictions) { this.expiredEvictions = expiredEvictions; }
+        public long getInvalidatedEvictions() { return invalidatedEvictions; }
+        public void setInvalidatedEvictions(long invalidatedEvictions) { this.invalidatedEvictions = invalidatedEvictions; }
+        public long getExplicitEvictions() { return explicitEvictions; }
+        public void setExplicitEvictions(long explicitEvictions) { this.explicitEvictions = explicitEvictions; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+/**
+ * Cooperative cancellation of an integration run
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Passed through the stages of a run so that it can be stopped from another
+ * thread. Loops check {@link #isCancelled()} at each record or batch boundary
+ * and stop there; statements registered while they execute are cancelled on
+ * the database, so a run blocked in a long query stops within seconds too.
+ */
+@Slf4j
+public class CancellationToken {
+
+    /**
+     * Token for work that cannot be cancelled
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    /**
+     * Request cancellation and cancel every registered statement
+     */
+    public void cancel() {
+        if (this == NONE) {
+            return;
+        }
+
+        cancelled = true;
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                log.warn("Failed to cancel statement: {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Register a statement to be cancelled with the run; if the run is already
+     * cancelled the statement is cancelled at once
+     */
+    public <T extends Statement> T register(T statement) throws SQLException {
+        if (this == NONE) {
+            return statement;
+        }
+
+        statements.add(statement);
+        if (cancelled) {
+            statement.cancel();
+        }
+        return statement;
+    }
+
+    /**
+     * Stop tracking a statement once it has finished
+     */
+    public void unregister(Statement statement) {
+        statements.remove(statement);
+    }
+}
\ No newline at end of file
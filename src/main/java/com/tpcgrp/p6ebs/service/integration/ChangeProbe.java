@@ -0,0 +1,225 @@
+/**
+ * Detection of source changes that warrant a synchronization run
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Polls the latest update timestamp of the source tables of each integration
+ * type, and reports the types whose tables moved. Only MAX of the timestamp
+ * column is read, which an index on that column answers without touching the
+ * table; row counts are not taken, since counting a large table is a full scan.
+ * Deletes do not move the timestamp and are picked up by the next scheduled
+ * run. A type is reported once its tables have stopped moving for the debounce
+ * period (or have kept moving for the minimum gap, so a steady stream of
+ * changes is not postponed forever), and no sooner than the minimum gap after
+ * its last run.
+ * Probes are configured per type as SYSTEM:table.timestamp_column, where SYSTEM
+ * is P6 or EBS; the column should be indexed, and a small table that is updated
+ * along with a large one (a project header rather than its transactions) makes
+ * the cheaper probe. Each poll opens one connection per system.
+ */
+@Slf4j
+public class ChangeProbe {
+
+    private static final Pattern PROBE_SPEC =
+            Pattern.compile("(P6|EBS):([A-Za-z][A-Za-z0-9_$.]*)\\.([A-Za-z][A-Za-z0-9_$]*)");
+
+    private final ConfigurationManager configManager;
+    private final SynchronizationManager syncManager;
+
+    // Integration type -> change state; only used from the probe job, which never runs concurrently
+    private final Map<String, TypeState> typeStates = new HashMap<>();
+
+    public ChangeProbe(ConfigurationManager configManager, SynchronizationManager syncManager) {
+        this.configManager = configManager;
+        this.syncManager = syncManager;
+    }
+
+    /**
+     * Probe the source tables of every configured type
+     *
+     * @param p6ConnectionParams Connection parameters for P6
+     * @param ebsConnectionParams Connection parameters for EBS
+     * @return Types whose changes are due to be synchronized now
+     */
+    public List<String> poll(Map<String, String> p6ConnectionParams, Map<String, String> ebsConnectionParams) {
+        Map<String, List<String>> probes = configManager.getChangeProbes();
+        Map<String, Observation> p6Observations = observe("P6", probes, p6ConnectionParams);
+        Map<String, Observation> ebsObservations = observe("EBS", probes, ebsConnectionParams);
+
+        long now = System.currentTimeMillis();
+        List<String> dueTypes = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> entry : probes.entrySet()) {
+            String integrationType = entry.getKey();
+
+            Map<String, Observation> observations = new HashMap<>();
+            boolean complete = true;
+            for (String spec : entry.getValue()) {
+                Observation observation = spec.startsWith("P6:") ? p6Observations.get(spec) : ebsObservations.get(spec);
+                if (observation == null) {
+                    complete = false;
+                    break;
+                }
+                observations.put(spec, observation);
+            }
+            if (!complete || observations.isEmpty()) {
+                continue; // Not every table could be probed; try again next time
+            }
+
+            if (update(integrationType, observations, now)) {
+                dueTypes.add(integrationType);
+            }
+        }
+
+        return dueTypes;
+    }
+
+    /**
+     * Record a type's latest observations and decide whether its changes are due
+     */
+    private boolean update(String integrationType, Map<String, Observation> observations, long now) {
+        TypeState state = typeStates.get(integrationType);
+        Date lastRunTime = syncManager.getLastRunTime(integrationType);
+
+        if (state == null) {
+            state = new TypeState();
+            typeStates.put(integrationType, state);
+
+            // First look: anything updated since the last run counts as a change
+            for (Observation observation : observations.values()) {
+                if (lastRunTime == null || observation.latestUpdate > lastRunTime.getTime()) {
+                    state.pendingSince = now;
+                    state.lastMovement = now;
+                    break;
+                }
+            }
+        } else if (!observations.equals(state.observations)) {
+            if (state.pendingSince == 0) {
+                state.pendingSince = now;
+            }
+            state.lastMovement = now;
+        }
+        state.observations = observations;
+
+        if (state.pendingSince == 0) {
+            return false;
+        }
+
+        long minGapMillis = TimeUnit.MINUTES.toMillis(configManager.getChangeMinGapMinutes());
+        long lastRun = Math.max(state.lastTriggered, lastRunTime != null ? lastRunTime.getTime() : 0);
+        if (now - lastRun < minGapMillis) {
+            return false;
+        }
+
+        boolean settled = now - state.lastMovement >= TimeUnit.SECONDS.toMillis(configManager.getChangeDebounceSeconds());
+        boolean overdue = now - state.pendingSince >= minGapMillis;
+        if (!settled && !overdue) {
+            return false;
+        }
+
+        log.info("Source changes detected for {}", integrationType);
+        state.pendingSince = 0;
+        state.lastTriggered = now;
+        return true;
+    }
+
+    /**
+     * Run the aggregate query of every probe on one system
+     *
+     * @return Observation per probe spec; probes that failed are missing
+     */
+    private Map<String, Observation> observe(String system, Map<String, List<String>> probes,
+                                             Map<String, String> connectionParams) {
+        Set<String> specs = new LinkedHashSet<>();
+        for (List<String> typeSpecs : probes.values()) {
+            for (String spec : typeSpecs) {
+                if (spec.startsWith(system + ":")) {
+                    specs.add(spec);
+                }
+            }
+        }
+
+        Map<String, Observation> observations = new HashMap<>();
+        if (specs.isEmpty()) {
+            return observations;
+        }
+
+        String url = String.format("jdbc:oracle:thin:@%s:1521:%s", connectionParams.get("server"),
+                "P6".equals(system) ? connectionParams.get("database") : connectionParams.get("sid"));
+
+        try (Connection conn = DriverManager.getConnection(url,
+                connectionParams.get("username"), connectionParams.get("password"))) {
+            for (String spec : specs) {
+                Matcher matcher = PROBE_SPEC.matcher(spec);
+                if (!matcher.matches()) {
+                    log.warn("Ignoring malformed change probe {}", spec);
+                    continue;
+                }
+
+                String sql = "SELECT MAX(" + matcher.group(3) + ") FROM " + matcher.group(2);
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(sql)) {
+                    if (rs.next()) {
+                        Timestamp latest = rs.getTimestamp(1);
+                        observations.put(spec, new Observation(latest != null ? latest.getTime() : 0));
+                    }
+                } catch (SQLException e) {
+                    log.warn("Change probe {} failed: {}", spec, e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Change probe could not connect to {}: {}", system, e.getMessage());
+        }
+
+        return observations;
+    }
+
+    /**
+     * Latest update timestamp of a table
+     */
+    private static class Observation {
+        private final long latestUpdate;
+
+        private Observation(long latestUpdate) {
+            this.latestUpdate = latestUpdate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Observation)) {
+                return false;
+            }
+            Observation other = (Observation) o;
+            return latestUpdate == other.latestUpdate;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(latestUpdate);
+        }
+    }
+
+    /**
+     * What was last seen of a type's tables, and whether a change is waiting
+     */
+    private static class TypeState {
+        private Map<String, Observation> observations;
+        private long pendingSince;  // 0 when no change is waiting
+        private long lastMovement;
+        private long lastTriggered;
+    }
+}
\ No newline at end of file
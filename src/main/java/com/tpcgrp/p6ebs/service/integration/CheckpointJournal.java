@@ -0,0 +1,298 @@
+/**
+ * Durable checkpoints of integration runs in progress
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * One small journal per run and integration type, recording how far the run
+ * got after each committed batch, so a run that dies can be resumed instead of
+ * started over. Checkpoints are appended as checksummed "crc32 json" lines and
+ * forced to disk; the last intact line is the run's checkpoint. Every so many
+ * checkpoints the journal is rewritten to hold only the latest one. A journal
+ * is deleted when its run finishes, together with the journals of earlier runs
+ * of the same type that never finished, since the finished run covered their work.
+ */
+@Slf4j
+public class CheckpointJournal {
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final int COMPACTION_INTERVAL = 100; // Checkpoints between rewrites
+
+    private final Path directory;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // Journal file -> checkpoints appended since it was last rewritten; counted from the file on first use
+    private final Map<Path, Integer> appendCounts = new HashMap<>();
+
+    public CheckpointJournal(Path directory) {
+        this.directory = directory;
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            log.error("Failed to create checkpoint directory {}", directory, e);
+        }
+    }
+
+    /**
+     * Get the latest checkpoint of a run's integration type; null if there is none.
+     * A torn or corrupt tail is cut off, so checkpoints of the resumed run follow
+     * the last intact one.
+     */
+    public synchronized Checkpoint load(String runId, String integrationType) {
+        return readLatest(journalFile(runId, integrationType), true);
+    }
+
+    /**
+     * Durably record a checkpoint; it is on disk when this returns
+     *
+     * @throws IOException If the journal could not be written
+     */
+    public synchronized void record(Checkpoint checkpoint) throws IOException {
+        Path file = journalFile(checkpoint.getRunId(), checkpoint.getIntegrationType());
+        byte[] line = toLine(checkpoint);
+
+        int appended = appendCounts.computeIfAbsent(file, this::countCheckpoints);
+        if (appended >= COMPACTION_INTERVAL) {
+            // Replace the journal with just this checkpoint
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            write(temp, line, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            appendCounts.put(file, 1);
+        } else {
+            write(file, line, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            appendCounts.put(file, appended + 1);
+        }
+    }
+
+    /**
+     * Delete the journal of a finished run's integration type, and the journals
+     * of other runs of that type that did not finish
+     */
+    public synchronized void complete(String runId, String integrationType) {
+        delete(journalFile(runId, integrationType));
+
+        for (Path file : journalFiles(integrationType)) {
+            Checkpoint checkpoint = readLatest(file, false);
+            if (checkpoint == null || integrationType.equals(checkpoint.getIntegrationType())) {
+                log.info("Deleting checkpoint journal {}, superseded by finished run {}", file.getFileName(), runId);
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * Get the latest checkpoint of every run of an integration type that has not
+     * finished, oldest first; only that type's journals are read
+     */
+    public synchronized List<Checkpoint> getUnfinished(String integrationType) {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        for (Path file : journalFiles(integrationType)) {
+            Checkpoint checkpoint = readLatest(file, false);
+            if (checkpoint != null && integrationType.equals(checkpoint.getIntegrationType())) {
+                checkpoints.add(checkpoint);
+            }
+        }
+
+        checkpoints.sort(Comparator.comparingLong(Checkpoint::getTimestamp));
+        return checkpoints;
+    }
+
+    private Path journalFile(String runId, String integrationType) {
+        return directory.resolve(sanitize(runId + "_" + integrationType) + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Journals whose names end in an integration type; a run ID may itself end in
+     * something like a type, so callers check the type in the checkpoint
+     */
+    private List<Path> journalFiles(String integrationType) {
+        List<Path> journals = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "*_" + sanitize(integrationType) + JOURNAL_SUFFIX)) {
+            for (Path file : files) {
+                journals.add(file);
+            }
+        } catch (IOException e) {
+            log.error("Failed to list checkpoint journals of {}", integrationType, e);
+        }
+        return journals;
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    private void delete(Path file) {
+        appendCounts.remove(file);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete checkpoint journal {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Count the checkpoints of a journal written before this process first used it
+     */
+    private int countCheckpoints(Path file) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        int lines = 0;
+        try {
+            for (byte b : Files.readAllBytes(file)) {
+                if (b == '\n') {
+                    lines++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read checkpoint journal {}: {}", file, e.getMessage());
+        }
+        return lines;
+    }
+
+    private byte[] toLine(Checkpoint checkpoint) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(checkpoint);
+        CRC32 crc = new CRC32();
+        crc.update(json);
+
+        byte[] prefix = (Long.toHexString(crc.getValue()) + " ").getBytes(StandardCharsets.US_ASCII);
+        byte[] line = new byte[prefix.length + json.length + 1];
+        System.arraycopy(prefix, 0, line, 0, prefix.length);
+        System.arraycopy(json, 0, line, prefix.length, json.length);
+        line[line.length - 1] = '\n';
+        return line;
+    }
+
+    private static void write(Path file, byte[] bytes, StandardOpenOption... options) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Read the last intact checkpoint of a journal, ignoring or, if asked,
+     * cutting off a torn or corrupt tail
+     */
+    private Checkpoint readLatest(Path file, boolean truncateTail) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        Checkpoint latest = null;
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            int position = 0;
+            while (position < bytes.length) {
+                int end = position;
+                while (end < bytes.length && bytes[end] != '\n') {
+                    end++;
+                }
+                if (end == bytes.length) {
+                    break; // No line end: the last write did not finish
+                }
+
+                Checkpoint checkpoint = parseLine(bytes, position, end);
+                if (checkpoint == null) {
+                    break;
+                }
+                latest = checkpoint;
+                position = end + 1;
+            }
+
+            if (truncateTail && position < bytes.length) {
+                log.warn("Discarding {} bytes of incomplete checkpoint journal {}", bytes.length - position, file);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(position);
+                    channel.force(true);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read checkpoint journal {}: {}", file, e.getMessage());
+        }
+        return latest;
+    }
+
+    /**
+     * Parse a "crc32 json" line; null if it is malformed or fails its checksum
+     */
+    private Checkpoint parseLine(byte[] bytes, int start, int end) {
+        int space = start;
+        while (space < end && bytes[space] != ' ') {
+            space++;
+        }
+        if (space == start || space == end) {
+            return null;
+        }
+
+        try {
+            long expected = Long.parseLong(new String(bytes, start, space - start, StandardCharsets.US_ASCII), 16);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, space + 1, end - space - 1);
+            if (crc.getValue() != expected) {
+                return null;
+            }
+            return objectMapper.readValue(bytes, space + 1, end - space - 1, Checkpoint.class);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Progress of one run of an integration type after a committed batch
+     */
+    public static class Checkpoint {
+        private String runId;
+        private String integrationType;
+        private long timestamp;
+        private String lastKey;
+        private String currentPartition;
+        private List<String> completedPartitions = new ArrayList<>();
+        private List<String> failedPartitions = new ArrayList<>();
+        private Map<String, Long> partitionHighs = new HashMap<>();
+        private Map<String, Integer> counters = new HashMap<>();
+
+        // Getters and setters
+        public String getRunId() { return runId; }
+        public void setRunId(String runId) { this.runId = runId; }
+        public String getIntegrationType() { return integrationType; }
+        public void setIntegrationType(String integrationType) { this.integrationType = integrationType; }
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+        public String getLastKey() { return lastKey; }
+        public void setLastKey(String lastKey) { this.lastKey = lastKey; }
+        public String getCurrentPartition() { return currentPartition; }
+        public void setCurrentPartition(String currentPartition) { this.currentPartition = currentPartition; }
+        public List<String> getCompletedPartitions() { return completedPartitions; }
+        public void setCompletedPartitions(List<String> completedPartitions) { this.completedPartitions = completedPartitions; }
+        public List<String> getFailedPartitions() { return failedPartitions; }
+        public void setFailedPartitions(List<String> failedPartitions) { this.failedPartitions = failedPartitions; }
+        public Map<String, Long> getPartitionHighs() { return partitionHighs; }
+        public void setPartitionHighs(Map<String, Long> partitionHighs) { this.partitionHighs = partitionHighs; }
+        public Map<String, Integer> getCounters() { return counters; }
+        public void setCounters(Map<String, Integer> counters) { this.counters = counters; }
+    }
+}
\ No newline at end of file
@@ -86,6 +86,12 @@ public class ConfigurationManager {
         defaultConfig.setRetryDelayMs(5000);
         defaultConfig.setLogLevel("INFO");
 
+        // Default write pacing for the load stage
+        defaultConfig.setLoadMinRowsPerSecond(20);
+        defaultConfig.setLoadMaxRowsPerSecond(1000);
+        defaultConfig.setLoadTargetLatencyMs(200);
+        defaultConfig.setLoadMaxErrorRate(0.05);
+
         // Default sync directions
         syncDirections = new HashMap<>();
         syncDirections.put("projectFinancials", "P6_TO_EBS");
@@ -104,6 +110,31 @@ public class ConfigurationManager {
         syncIntervals.put("projectWbs", 24);
         defaultConfig.setSyncIntervals(syncIntervals);
 
+        // Default scheduling: short, frequent jobs go first
+        defaultConfig.setSchedulerWorkers(3);
+        defaultConfig.setScheduleJitterSeconds(300);
+        Map<String, Integer> schedulePriorities = new HashMap<>();
+        schedulePriorities.put("timesheet", 10);
+        schedulePriorities.put("procurement", 5);
+        defaultConfig.setSchedulePriorities(schedulePriorities);
+
+        // Default change probes: the source tables each type reads, as SYSTEM:table.timestamp_column.
+        // Financials probe the project and budget headers rather than the expenditure items
+        defaultConfig.setChangeProbeEnabled(false);
+        defaultConfig.setChangeProbeIntervalMinutes(5);
+        defaultConfig.setChangeDebounceSeconds(120);
+        defaultConfig.setChangeMinGapMinutes(30);
+        Map<String, List<String>> changeProbes = new HashMap<>();
+        changeProbes.put("ebsTasksToP6", Arrays.asList("EBS:pa_tasks.last_update_date"));
+        changeProbes.put("projectFinancials", Arrays.asList("P6:PROJECTS.update_date",
+                "EBS:pa_projects_all.last_update_date", "EBS:pa_budget_versions.last_update_date"));
+        changeProbes.put("resourceManagement", Arrays.asList("P6:RSRC.update_date",
+                "EBS:per_all_people_f.last_update_date"));
+        changeProbes.put("procurement", Arrays.asList("EBS:po_headers_all.last_update_date"));
+        changeProbes.put("timesheet", Arrays.asList("P6:TASKRSRC.update_date"));
+        changeProbes.put("projectWbs", Arrays.asList("P6:PROJWBS.update_date"));
+        defaultConfig.setChangeProbes(changeProbes);
+
         // Default field mappings
         defaultConfig.setFieldMappings(createDefaultFieldMappings());
 
@@ -178,6 +209,112 @@ public class ConfigurationManager {
         return config.getRetryDelayMs();
     }
 
+    /**
+     * Get the write rate the load stage starts at and never drops below (rows per second)
+     */
+    public double getLoadMinRowsPerSecond() {
+        return config.getLoadMinRowsPerSecond() > 0 ? config.getLoadMinRowsPerSecond() : 20;
+    }
+
+    /**
+     * Get the write rate the load stage never exceeds (rows per second)
+     */
+    public double getLoadMaxRowsPerSecond() {
+        return config.getLoadMaxRowsPerSecond() > 0 ? config.getLoadMaxRowsPerSecond() : 1000;
+    }
+
+    /**
+     * Get the average write latency above which the load stage slows down (in milliseconds)
+     */
+    public long getLoadTargetLatencyMs() {
+        return config.getLoadTargetLatencyMs() > 0 ? config.getLoadTargetLatencyMs() : 200;
+    }
+
+    /**
+     * Get the share of failed writes in a batch above which the load stage slows down
+     */
+    public double getLoadMaxErrorRate() {
+        return config.getLoadMaxErrorRate() > 0 ? config.getLoadMaxErrorRate() : 0.05;
+    }
+
+    /**
+     * Get the cron schedule of an integration type; null if it runs at a fixed interval
+     */
+    public String getCronSchedule(String integrationType) {
+        return config.getCronSchedules().get(integrationType);
+    }
+
+    /**
+     * Get the cron patterns of the minutes during which no scheduled job may start
+     */
+    public List<String> getBlackoutWindows() {
+        return config.getBlackoutWindows();
+    }
+
+    /**
+     * Get the maximum random delay added to scheduled runs (in seconds)
+     */
+    public int getScheduleJitterSeconds() {
+        return config.getScheduleJitterSeconds();
+    }
+
+    /**
+     * Get the number of worker threads that run scheduled jobs
+     */
+    public int getSchedulerWorkers() {
+        return config.getSchedulerWorkers() > 0 ? config.getSchedulerWorkers() : 3;
+    }
+
+    /**
+     * Get the priority of a scheduled job; higher priorities are started first
+     */
+    public int getSchedulePriority(String jobKey) {
+        Integer priority = config.getSchedulePriorities().get(jobKey);
+        return priority != null ? priority : 0;
+    }
+
+    /**
+     * Check if integrations are triggered by detected source changes
+     */
+    public boolean isChangeProbeEnabled() {
+        return config.isChangeProbeEnabled();
+    }
+
+    /**
+     * Get the minutes between change probes
+     */
+    public int getChangeProbeIntervalMinutes() {
+        return config.getChangeProbeIntervalMinutes() > 0 ? config.getChangeProbeIntervalMinutes() : 5;
+    }
+
+    /**
+     * Get how long source tables must stay unchanged before a change triggers a run (in seconds)
+     */
+    public int getChangeDebounceSeconds() {
+        return config.getChangeDebounceSeconds();
+    }
+
+    /**
+     * Get the minimum time between change-triggered runs of a type (in minutes)
+     */
+    public int getChangeMinGapMinutes() {
+        return config.getChangeMinGapMinutes();
+    }
+
+    /**
+     * Get the change probes of every integration type, as SYSTEM:table.timestamp_column
+     */
+    public Map<String, List<String>> getChangeProbes() {
+        return config.getChangeProbes();
+    }
+
+    /**
+     * Get the minimum level for integration log entries
+     */
+    public String getLogLevel() {
+        return config.getLogLevel() != null ? config.getLogLevel() : "INFO";
+    }
+
     /**
      * Get field mappings for an entity type
      */
@@ -220,8 +357,22 @@ public class ConfigurationManager {
         private int retryCount;
         private long retryDelayMs;
         private String logLevel;
+        private double loadMinRowsPerSecond;
+        private double loadMaxRowsPerSecond;
+        private long loadTargetLatencyMs;
+        private double loadMaxErrorRate;
         private Map<String, String> syncDirections = new HashMap<>();
         private Map<String, Integer> syncIntervals = new HashMap<>();
         private Map<String, Map<String, String>> fieldMappings = new HashMap<>();
+        private Map<String, String> cronSchedules = new HashMap<>();
+        private List<String> blackoutWindows = new ArrayList<>();
+        private int scheduleJitterSeconds;
+        private int schedulerWorkers;
+        private Map<String, Integer> schedulePriorities = new HashMap<>();
+        private boolean changeProbeEnabled;
+        private int changeProbeIntervalMinutes;
+        private int changeDebounceSeconds;
+        private int changeMinGapMinutes;
+        private Map<String, List<String>> changeProbes = new HashMap<>();
     }
 }
\ No newline at end of file
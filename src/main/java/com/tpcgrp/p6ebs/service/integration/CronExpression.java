@@ -0,0 +1,184 @@
+/**
+ * Cron expressions for calendar-based schedules
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A five-field cron expression: minute, hour, day of month, month and day of
+ * week (0 or 7 is Sunday). Each field is "*", a value, a range "a-b", or a list
+ * of these, each optionally with a step "/n". The day of month also accepts "L"
+ * for the last day and "L-n" for n days before it, so "* * L-2,L-1,L,1,2 * *"
+ * covers the last three and first two days of every month.
+ * As in standard cron, when both day fields are restricted a day matching
+ * either one matches.
+ */
+public class CronExpression {
+
+    private static final int SEARCH_YEARS = 5;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final List<Integer> daysBeforeMonthEnd = new ArrayList<>(); // 0 is the last day
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean dayOfMonthRestricted;
+    private final boolean dayOfWeekRestricted;
+
+    private CronExpression(String expression) {
+        this.expression = expression;
+
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression needs 5 fields: " + expression);
+        }
+
+        minutes = parseField(fields[0], 0, 59);
+        hours = parseField(fields[1], 0, 23);
+        daysOfMonth = parseDaysOfMonth(fields[2]);
+        months = parseField(fields[3], 1, 12);
+        daysOfWeek = parseField(fields[4], 0, 7);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+
+        dayOfMonthRestricted = !fields[2].equals("*");
+        dayOfWeekRestricted = !fields[4].equals("*");
+    }
+
+    /**
+     * Parse a cron expression
+     *
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public static CronExpression parse(String expression) {
+        return new CronExpression(expression);
+    }
+
+    /**
+     * Check if a time falls within a matching minute
+     */
+    public boolean matches(ZonedDateTime time) {
+        return months.get(time.getMonthValue())
+                && matchesDay(time)
+                && hours.get(time.getHour())
+                && minutes.get(time.getMinute());
+    }
+
+    /**
+     * Get the first matching minute strictly after a time
+     *
+     * @return Start of that minute, or null if none falls within the next few years
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = after.plusYears(SEARCH_YEARS);
+
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+        return null;
+    }
+
+    private boolean matchesDay(ZonedDateTime time) {
+        boolean dayOfMonth = matchesDayOfMonth(time);
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    private boolean matchesDayOfMonth(ZonedDateTime time) {
+        if (daysOfMonth.get(time.getDayOfMonth())) {
+            return true;
+        }
+        int daysBeforeEnd = time.toLocalDate().lengthOfMonth() - time.getDayOfMonth();
+        return daysBeforeMonthEnd.contains(daysBeforeEnd);
+    }
+
+    private BitSet parseDaysOfMonth(String field) {
+        List<String> regular = new ArrayList<>();
+        for (String part : field.split(",")) {
+            if (part.equals("L")) {
+                daysBeforeMonthEnd.add(0);
+            } else if (part.startsWith("L-")) {
+                daysBeforeMonthEnd.add(parseValue(part.substring(2), 0, 30));
+            } else {
+                regular.add(part);
+            }
+        }
+        return regular.isEmpty() ? new BitSet() : parseField(String.join(",", regular), 1, 31);
+    }
+
+    private static BitSet parseField(String field, int min, int max) {
+        BitSet values = new BitSet(max + 1);
+
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseValue(part.substring(slash + 1), 1, max);
+                part = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else if (part.indexOf('-') > 0) {
+                int dash = part.indexOf('-');
+                from = parseValue(part.substring(0, dash), min, max);
+                to = parseValue(part.substring(dash + 1), min, max);
+                if (from > to) {
+                    throw new IllegalArgumentException("Invalid cron range: " + part);
+                }
+            } else {
+                from = parseValue(part, min, max);
+                to = slash >= 0 ? max : from;
+            }
+
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+
+        return values;
+    }
+
+    private static int parseValue(String text, int min, int max) {
+        try {
+            int value = Integer.parseInt(text);
+            if (value < min || value > max) {
+                throw new IllegalArgumentException("Cron value " + value + " is outside " + min + "-" + max);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cron value: " + text);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
\ No newline at end of file
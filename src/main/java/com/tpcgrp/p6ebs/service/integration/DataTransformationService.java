@@ -208,7 +208,7 @@ public class DataTransformationService {
 
             return new SimpleDateFormat(pattern).format(date);
         } catch (Exception e) {
-            logService.logWarning("Failed to format date: " + dateValue, e);
+            logService.logWarning("Failed to format date: {}", dateValue, e);
             return dateValue.toString();
         }
     }
@@ -297,7 +297,7 @@ public class DataTransformationService {
      * Transform task data from EBS to P6
      */
     public Map<String, Object> transformTaskDataEbsToP6(Map<String, Object> ebsTask) {
-        logService.logInfo("Transforming EBS task data to P6 format");
+        logService.logDebug("Transforming EBS task data to P6 format");
 
         // Apply field mappings
         Map<String, Object> p6ActivityData = mappingUtility.mapEbsToP6("task", ebsTask);
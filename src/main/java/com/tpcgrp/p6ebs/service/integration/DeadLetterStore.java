@@ -0,0 +1,216 @@
+/**
+ * Durable storage of records that failed to integrate
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Keeps each record that failed to integrate, with its error, the source row
+ * and the transformed payload, so it can be replayed on its own instead of
+ * re-running the whole integration. There is one entry per integration type
+ * and record key; a record that fails again replaces its entry.
+ * Entries are appended to a JSON-lines file and forced to disk; on load the
+ * last line for a key wins. Removing entries rewrites the file.
+ */
+@Slf4j
+public class DeadLetterStore {
+
+    private static final String DEAD_LETTER_FILE = "dead_letters.jsonl";
+
+    private final Path deadLetterFile;
+    // Dates are kept as local date-time text, which the transformation parses back like the originals
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+
+    // Entry id -> entry, in order of first failure
+    private final Map<String, DeadLetter> entries = new LinkedHashMap<>();
+
+    public DeadLetterStore(Path directory) {
+        this.deadLetterFile = directory.resolve(DEAD_LETTER_FILE);
+
+        try {
+            Files.createDirectories(directory);
+            load();
+        } catch (IOException e) {
+            log.error("Failed to load dead letters, starting empty", e);
+        }
+    }
+
+    /**
+     * Record a failed record, or a further failure of one already recorded
+     */
+    public synchronized void add(DeadLetter deadLetter) {
+        DeadLetter previous = entries.get(deadLetter.getId());
+        if (previous != null) {
+            deadLetter.setAttempts(previous.getAttempts() + deadLetter.getAttempts());
+            deadLetter.setFirstFailedAt(previous.getFirstFailedAt());
+        }
+        entries.put(deadLetter.getId(), deadLetter);
+
+        try (FileChannel channel = FileChannel.open(deadLetterFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(deadLetter) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Failed to persist dead letter {}", deadLetter.getId(), e);
+        }
+    }
+
+    /**
+     * Get the entries of a type, oldest first; all entries if the type is null
+     */
+    public synchronized List<DeadLetter> getEntries(String integrationType) {
+        List<DeadLetter> result = new ArrayList<>();
+        for (DeadLetter deadLetter : entries.values()) {
+            if (integrationType == null || integrationType.equals(deadLetter.getIntegrationType())) {
+                result.add(deadLetter);
+            }
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove the entries of records that have since been written
+     *
+     * @param integrationType Type of the records
+     * @param recordKeys Keys of the records
+     * @return Number of entries removed
+     */
+    public synchronized int remove(String integrationType, Collection<String> recordKeys) {
+        int removed = 0;
+        for (String recordKey : recordKeys) {
+            if (entries.remove(DeadLetter.idOf(integrationType, recordKey)) != null) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            rewrite();
+        }
+        return removed;
+    }
+
+    /**
+     * Replay the file into memory; later lines replace earlier ones with the same id
+     */
+    private void load() throws IOException {
+        if (!Files.exists(deadLetterFile)) {
+            return;
+        }
+
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(deadLetterFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    DeadLetter deadLetter = objectMapper.readValue(line, DeadLetter.class);
+                    entries.put(deadLetter.getId(), deadLetter);
+                } catch (IOException e) {
+                    skipped++;
+                }
+            }
+        }
+
+        if (skipped > 0) {
+            log.warn("Skipped {} unreadable dead letters", skipped);
+        }
+        log.info("Loaded {} dead letters", entries.size());
+    }
+
+    /**
+     * Write the current entries to a new file and swap it in
+     */
+    private void rewrite() {
+        Path temp = deadLetterFile.resolveSibling(DEAD_LETTER_FILE + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (DeadLetter deadLetter : entries.values()) {
+                    writer.write(objectMapper.writeValueAsString(deadLetter));
+                    writer.newLine();
+                }
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, deadLetterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The removed entries stay in the file and come back on the next load
+            log.error("Failed to rewrite dead letter file", e);
+        }
+    }
+
+    /**
+     * A record that failed to integrate
+     */
+    public static class DeadLetter {
+        private String id;
+        private String integrationType;
+        private String recordKey;
+        private String partition;
+        private String runId;
+        private String stage;
+        private String errorMessage;
+        private Map<String, Object> source;
+        private Map<String, Object> payload;
+        private int attempts;
+        private long firstFailedAt;
+        private long lastFailedAt;
+
+        public static String idOf(String integrationType, String recordKey) {
+            return integrationType + ":" + recordKey;
+        }
+
+        // Getters and setters
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        public String getIntegrationType() { return integrationType; }
+        public void setIntegrationType(String integrationType) { this.integrationType = integrationType; }
+        public String getRecordKey() { return recordKey; }
+        public void setRecordKey(String recordKey) { this.recordKey = recordKey; }
+        public String getPartition() { return partition; }
+        public void setPartition(String partition) { this.partition = partition; }
+        public String getRunId() { return runId; }
+        public void setRunId(String runId) { this.runId = runId; }
+        public String getStage() { return stage; }
+        public void setStage(String stage) { this.stage = stage; }
+        public String getErrorMessage() { return errorMessage; }
+        public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+        public Map<String, Object> getSource() { return source; }
+        public void setSource(Map<String, Object> source) { this.source = source; }
+        public Map<String, Object> getPayload() { return payload; }
+        public void setPayload(Map<String, Object> payload) { this.payload = payload; }
+        public int getAttempts() { return attempts; }
+        public void setAttempts(int attempts) { this.attempts = attempts; }
+        public long getFirstFailedAt() { return firstFailedAt; }
+        public void setFirstFailedAt(long firstFailedAt) { this.firstFailedAt = firstFailedAt; }
+        public long getLastFailedAt() { return lastFailedAt; }
+        public void setLastFailedAt(long lastFailedAt) { this.lastFailedAt = lastFailedAt; }
+    }
+}
\ No newline at end of file
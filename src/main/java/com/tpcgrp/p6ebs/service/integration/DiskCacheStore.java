@@ -0,0 +1,655 @@
+/**
+ * Second-level cache tier kept in memory-mapped files so cached data survives restarts
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record log in two fixed-size memory-mapped files. One file is active at a
+ * time; compaction copies the live records into the other file in least-recently-used
+ * order, dropping the least recently used ones when space is short, and then makes it
+ * active by writing a higher sequence number into its header. Neither file is ever
+ * renamed or truncated while mapped.
+ *
+ * Record layout: int bodyLength, int crc32(body), body. The body holds a record type,
+ * write time, expiration time, the key and the encoded value. A zero length marks the
+ * end of the log. Replay stops at the first record whose checksum does not match.
+ *
+ * The files are only safe for one process at a time, so the store holds an exclusive
+ * lock on a lock file in its directory until it is closed.
+ */
+@Slf4j
+public class DiskCacheStore {
+
+    private static final int MAGIC = 0x50364543; // "P6EC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16; // magic, version, sequence
+
+    private static final byte RECORD_ENTRY = 1;
+    private static final byte RECORD_TOMBSTONE = 2;
+    private static final byte RECORD_REGION_EPOCH = 3;
+
+    // Share of the file kept free after a compaction, so compactions don't run back to back
+    private static final double COMPACTION_HEADROOM = 0.25;
+
+    private final int capacity;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final MappedByteBuffer[] files = new MappedByteBuffer[2];
+    private int activeFile;
+    private long sequence;
+    private int writePosition;
+
+    // Live records in access order, least recently used first
+    private final LinkedHashMap<String, Slot> index = new LinkedHashMap<>(256, 0.75f, true);
+
+    // Current generation of every region that has been invalidated at least once
+    private final Map<String, Long> regionEpochs = new HashMap<>();
+
+    public DiskCacheStore(Path directory, int capacity) throws IOException {
+        this.capacity = capacity;
+
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve("cache.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IOException("Disk cache in " + directory + " is in use by another process");
+        }
+        lock = acquired;
+
+        try {
+            for (int i = 0; i < files.length; i++) {
+                try (FileChannel channel = FileChannel.open(directory.resolve("cache-" + i + ".dat"),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    // The mapping stays valid after the channel is closed
+                    files[i] = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                }
+            }
+
+            recover();
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close(); // Releases the lock
+            throw e;
+        }
+    }
+
+    /**
+     * Read a value. Returns null if the key is absent, expired or fails its checksum.
+     */
+    public synchronized StoredValue get(String key) {
+        Slot slot = index.get(key);
+        if (slot == null) {
+            return null;
+        }
+
+        if (System.currentTimeMillis() > slot.expirationTime) {
+            index.remove(key);
+            return null;
+        }
+
+        MappedByteBuffer buffer = files[activeFile];
+        try {
+            Record record = readRecord(buffer, slot.offset);
+            if (record == null || !key.equals(record.key)) {
+                log.warn("Disk cache record for {} failed its checksum, dropping it", key);
+                index.remove(key);
+                return null;
+            }
+            return new StoredValue(decode(record.value), record.writeTime, record.expirationTime);
+        } catch (IOException e) {
+            log.warn("Failed to decode disk cache record for {}: {}", key, e.getMessage());
+            index.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Write a value. Values the codec cannot represent are skipped and false is returned;
+     * an older value of the key is then removed, so it is not served in place of the new one.
+     */
+    public boolean put(String key, Object value, long writeTime, long expirationTime) {
+        byte[] encoded;
+        try {
+            encoded = encode(value);
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Skipping disk cache write for {}: {}", key, e.getMessage());
+            remove(key);
+            return false;
+        }
+
+        synchronized (this) {
+            if (append(RECORD_ENTRY, key, writeTime, expirationTime, encoded)) {
+                return true;
+            }
+            remove(key);
+            return false;
+        }
+    }
+
+    /**
+     * Remove a value
+     */
+    public synchronized void remove(String key) {
+        if (index.remove(key) != null) {
+            append(RECORD_TOMBSTONE, key, System.currentTimeMillis(), Long.MAX_VALUE, new byte[0]);
+        }
+    }
+
+    /**
+     * Get the persisted generation of a region, or 0 if it was never invalidated
+     */
+    public synchronized long getRegionEpoch(String regionName) {
+        return regionEpochs.getOrDefault(regionName, 0L);
+    }
+
+    /**
+     * Persist a region's new generation; records of older generations are dropped at the next compaction
+     */
+    public synchronized void setRegionEpoch(String regionName, long epoch) {
+        regionEpochs.put(regionName, epoch);
+        append(RECORD_REGION_EPOCH, regionName, System.currentTimeMillis(), Long.MAX_VALUE, toBytes(epoch));
+    }
+
+    /**
+     * Get the number of live records
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Flush the active file to disk and release the directory lock
+     */
+    public synchronized void close() {
+        files[activeFile].force();
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("Failed to release disk cache lock: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Append a record to the active file, compacting first if it does not fit
+     */
+    private boolean append(byte type, String key, long writeTime, long expirationTime, byte[] value) {
+        byte[] body = encodeBody(type, key, writeTime, expirationTime, value);
+        int recordLength = 8 + body.length;
+
+        // Keep room for the zero-length end marker after the record
+        if (recordLength + 4 > capacity - HEADER_SIZE) {
+            log.debug("Skipping disk cache write for {}: {} bytes exceeds the store size", key, recordLength);
+            return false;
+        }
+        if (writePosition + recordLength + 4 > capacity) {
+            compact(recordLength + 4);
+            if (writePosition + recordLength + 4 > capacity) {
+                return false;
+            }
+        }
+
+        int offset = writePosition;
+        writeRecord(files[activeFile], offset, body);
+        writePosition += recordLength;
+        files[activeFile].putInt(writePosition, 0);
+
+        if (type == RECORD_ENTRY) {
+            index.put(key, new Slot(offset, recordLength, expirationTime));
+        }
+        return true;
+    }
+
+    /**
+     * Copy live records into the inactive file and make it active
+     */
+    private void compact(int needed) {
+        MappedByteBuffer source = files[activeFile];
+        int targetFile = 1 - activeFile;
+        MappedByteBuffer target = files[targetFile];
+
+        long now = System.currentTimeMillis();
+        int budget = (int) ((capacity - HEADER_SIZE) * (1 - COMPACTION_HEADROOM)) - needed;
+
+        // Region epochs are always kept
+        List<byte[]> epochBodies = new ArrayList<>();
+        for (Map.Entry<String, Long> epoch : regionEpochs.entrySet()) {
+            byte[] body = encodeBody(RECORD_REGION_EPOCH, epoch.getKey(), now, Long.MAX_VALUE,
+                    toBytes(epoch.getValue()));
+            epochBodies.add(body);
+            budget -= 8 + body.length;
+        }
+
+        // Drop expired and invalidated records, then the least recently used until the rest fits
+        List<Map.Entry<String, Slot>> live = new ArrayList<>();
+        long liveBytes = 0;
+        for (Map.Entry<String, Slot> entry : index.entrySet()) {
+            if (entry.getValue().expirationTime >= now && isCurrentGeneration(entry.getKey())) {
+                live.add(entry);
+                liveBytes += entry.getValue().length;
+            }
+        }
+        int first = 0;
+        while (liveBytes > budget && first < live.size()) {
+            liveBytes -= live.get(first++).getValue().length;
+        }
+
+        // Invalidate the target header before overwriting it, so a crash mid-copy leaves the source active
+        target.putInt(0, 0);
+        target.force();
+
+        int position = HEADER_SIZE;
+        for (byte[] body : epochBodies) {
+            writeRecord(target, position, body);
+            position += 8 + body.length;
+        }
+
+        LinkedHashMap<String, Slot> compacted = new LinkedHashMap<>(256, 0.75f, true);
+        for (int i = first; i < live.size(); i++) {
+            Slot slot = live.get(i).getValue();
+            ByteBuffer record = source.duplicate();
+            record.position(slot.offset).limit(slot.offset + slot.length);
+            ByteBuffer destination = target.duplicate();
+            destination.position(position);
+            destination.put(record);
+            compacted.put(live.get(i).getKey(), new Slot(position, slot.length, slot.expirationTime));
+            position += slot.length;
+        }
+        target.putInt(position, 0);
+        target.force();
+
+        target.putLong(8, sequence + 1);
+        target.putInt(4, FORMAT_VERSION);
+        target.putInt(0, MAGIC);
+        target.force();
+
+        log.info("Compacted disk cache: kept {} of {} records", compacted.size(), index.size());
+
+        sequence++;
+        activeFile = targetFile;
+        writePosition = position;
+        index.clear();
+        index.putAll(compacted);
+    }
+
+    /**
+     * Whether a region-qualified key ("name#generation:key") belongs to its region's current generation
+     */
+    private boolean isCurrentGeneration(String key) {
+        int separator = key.indexOf(':');
+        int hash = separator > 0 ? key.lastIndexOf('#', separator) : -1;
+        if (hash < 0) {
+            return true;
+        }
+
+        try {
+            long generation = Long.parseLong(key.substring(hash + 1, separator));
+            return generation == regionEpochs.getOrDefault(key.substring(0, hash), 0L);
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Pick the newest valid file and rebuild the index by replaying its records
+     */
+    private void recover() {
+        activeFile = -1;
+        for (int i = 0; i < files.length; i++) {
+            MappedByteBuffer buffer = files[i];
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT_VERSION
+                    && (activeFile < 0 || buffer.getLong(8) > sequence)) {
+                activeFile = i;
+                sequence = buffer.getLong(8);
+            }
+        }
+
+        if (activeFile < 0) {
+            activeFile = 0;
+            sequence = 1;
+            MappedByteBuffer buffer = files[0];
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.putLong(8, sequence);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putInt(0, MAGIC);
+            writePosition = HEADER_SIZE;
+            return;
+        }
+
+        MappedByteBuffer buffer = files[activeFile];
+        int position = HEADER_SIZE;
+        while (position + 8 <= capacity) {
+            int bodyLength = buffer.getInt(position);
+            if (bodyLength <= 0 || position + 8 + bodyLength > capacity) {
+                break;
+            }
+
+            Record record = readRecord(buffer, position);
+            if (record == null) {
+                log.warn("Disk cache checksum mismatch at offset {}, discarding the rest of the log", position);
+                break;
+            }
+
+            switch (record.type) {
+                case RECORD_ENTRY:
+                    index.put(record.key, new Slot(position, 8 + bodyLength, record.expirationTime));
+                    break;
+                case RECORD_TOMBSTONE:
+                    index.remove(record.key);
+                    break;
+                case RECORD_REGION_EPOCH:
+                    regionEpochs.put(record.key, ByteBuffer.wrap(record.value).getLong());
+                    break;
+                default:
+                    break;
+            }
+            position += 8 + bodyLength;
+        }
+
+        writePosition = position;
+        if (writePosition + 4 <= capacity) {
+            buffer.putInt(writePosition, 0);
+        }
+
+        log.info("Recovered {} disk cache records", index.size());
+    }
+
+    private static byte[] encodeBody(byte type, String key, long writeTime, long expirationTime, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 + 16 + 4 + keyBytes.length + 4 + value.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeLong(writeTime);
+            out.writeLong(expirationTime);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(value.length);
+            out.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] toBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private static void writeRecord(MappedByteBuffer buffer, int offset, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        // Body first, then checksum, then length, so a torn write never looks like a valid record
+        ByteBuffer destination = buffer.duplicate();
+        destination.position(offset + 8);
+        destination.put(body);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset, body.length);
+    }
+
+    /**
+     * Read and verify the record at an offset; returns null on a checksum mismatch
+     */
+    private static Record readRecord(MappedByteBuffer buffer, int offset) {
+        int bodyLength = buffer.getInt(offset);
+        int checksum = buffer.getInt(offset + 4);
+
+        byte[] body = new byte[bodyLength];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + 8);
+        source.get(body);
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            Record record = new Record();
+            record.type = in.readByte();
+            record.writeTime = in.readLong();
+            record.expirationTime = in.readLong();
+            byte[] keyBytes = new byte[in.readInt()];
+            in.readFully(keyBytes);
+            record.key = new String(keyBytes, StandardCharsets.UTF_8);
+            record.value = new byte[in.readInt()];
+            in.readFully(record.value);
+            return record;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Value codec tags
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INTEGER = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_BOOLEAN = 5;
+    private static final byte TAG_BIG_DECIMAL = 6;
+    private static final byte TAG_DATE = 7;
+    private static final byte TAG_TIMESTAMP = 8;
+    private static final byte TAG_SQL_DATE = 9;
+    private static final byte TAG_LIST = 10;
+    private static final byte TAG_MAP = 11;
+    private static final byte TAG_FLOAT = 12;
+    private static final byte TAG_BIG_INTEGER = 13;
+
+    /**
+     * Encode a value of the types returned by JDBC row maps and reference lookups
+     */
+    static byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeValue(out, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a value written by {@link #encode(Object)}
+     */
+    static Object decode(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return readValue(in);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            out.writeByte(TAG_BIG_DECIMAL);
+            out.writeInt(decimal.scale());
+            writeBytes(out, decimal.unscaledValue().toByteArray());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(TAG_BIG_INTEGER);
+            writeBytes(out, ((BigInteger) value).toByteArray());
+        } else if (value instanceof java.sql.Timestamp) {
+            java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(TAG_SQL_DATE);
+            out.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof Date) {
+            out.writeByte(TAG_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TAG_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TAG_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported cache value type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_INTEGER:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            case TAG_BIG_DECIMAL:
+                int scale = in.readInt();
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case TAG_BIG_INTEGER:
+                return new BigInteger(readBytes(in));
+            case TAG_TIMESTAMP:
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case TAG_SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case TAG_DATE:
+                return new Date(in.readLong());
+            case TAG_LIST:
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            case TAG_MAP:
+                int entries = in.readInt();
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < entries; i++) {
+                    map.put(readValue(in), readValue(in));
+                }
+                return map;
+            default:
+                throw new IOException("Unknown cache value tag: " + tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Location of a live record in the active file
+     */
+    private static class Slot {
+        private final int offset;
+        private final int length;
+        private final long expirationTime;
+
+        Slot(int offset, int length, long expirationTime) {
+            this.offset = offset;
+            this.length = length;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    /**
+     * Decoded record
+     */
+    private static class Record {
+        private byte type;
+        private long writeTime;
+        private long expirationTime;
+        private String key;
+        private byte[] value;
+    }
+
+    /**
+     * Value read back from disk with the times it was written with
+     */
+    public static class StoredValue {
+        private final Object value;
+        private final long writeTime;
+        private final long expirationTime;
+
+        public StoredValue(Object value, long writeTime, long expirationTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+            this.expirationTime = expirationTime;
+        }
+
+        public Object getValue() { return value; }
+        public long getWriteTime() { return writeTime; }
+        public long getExpirationTime() { return expirationTime; }
+    }
+}
\ No newline at end of file
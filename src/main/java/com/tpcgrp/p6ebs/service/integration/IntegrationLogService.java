@@ -4,47 +4,82 @@
 package com.tpcgrp.p6ebs.service.integration;
 
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
 public class IntegrationLogService {
 
     private final String LOG_DIRECTORY = System.getProperty("user.home") + "/.p6ebs/logs";
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
 
-    private final Queue<LogEntry> logQueue = new ConcurrentLinkedQueue<>();
-    private final List<LogEntry> inMemoryLogs = Collections.synchronizedList(new ArrayList<>());
-    private final int MAX_IN_MEMORY_LOGS = 1000;
+    private final int MAX_IN_MEMORY_LOGS = 1024;
 
-    private final Timer logFlushTimer;
+    // Oldest log segments are deleted once the log directory grows past this size
+    private final long LOG_RETENTION_BYTES = 1024L * 1024 * 1024; // 1 GB
+
+    // Recent entries for the log views; lock-free so parallel workers never contend on logging
+    private final RingBuffer<LogEntry> inMemoryLogs = new RingBuffer<>(MAX_IN_MEMORY_LOGS);
+
+    // Dedicated thread that group-commits entries to the log and index files
+    private final LogFileWriter logFileWriter;
+
+    // Compresses rolled log segments and enforces the size budget
+    private final LogArchiver logArchiver;
+
+    // Indexed queries over the log files
+    private final LogFileReader logFileReader;
+
+    // Synchronization session the current thread is logging for
+    private final ThreadLocal<String> currentSessionId = new ThreadLocal<>();
     private volatile boolean shuttingDown = false;
 
-    // Constructor - initialize the log directory and set up flush timer
-    public IntegrationLogService() {
+    // Entries below this level are discarded before any message is built
+    private volatile LogLevel minimumLevel;
+
+    // Repeats of a template beyond this many per window are counted instead of logged
+    private final int MAX_REPEATS_PER_WINDOW = 10;
+    private final long REPEAT_WINDOW_MILLIS = 60 * 1000; // 1 minute
+    private final int MAX_SUPPRESSED_SAMPLES = 5;
+
+    // Per-template repeat tracking for template-based log calls
+    private final Map<String, TemplateThrottle> templateThrottles = new ConcurrentHashMap<>();
+
+    // Emits summaries of suppressed repeats once their window has passed
+    private final ScheduledExecutorService summaryExecutor;
+
+    // Constructor - initialize the log directory and start the file writer
+    public IntegrationLogService(ConfigurationManager configManager) {
+        minimumLevel = LogLevel.fromName(configManager.getLogLevel());
+
         try {
             Files.createDirectories(Paths.get(LOG_DIRECTORY));
         } catch (IOException e) {
             log.error("Failed to create log directory", e);
         }
 
-        // Set up timer to flush logs periodically
-        logFlushTimer = new Timer("LogFlushTimer", true);
-        logFlushTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                flushLogs();
-            }
-        }, 5000, 5000); // Flush every 5 seconds
+        logArchiver = new LogArchiver(Paths.get(LOG_DIRECTORY), LOG_RETENTION_BYTES);
+        logFileWriter = new LogFileWriter(Paths.get(LOG_DIRECTORY), logArchiver);
+        logFileReader = new LogFileReader(Paths.get(LOG_DIRECTORY));
+
+        summaryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LogSummaryTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        summaryExecutor.scheduleAtFixedRate(() -> flushSuppressed(false),
+                REPEAT_WINDOW_MILLIS, REPEAT_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
 
         // Add shutdown hook to flush logs on application exit
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
@@ -57,6 +92,14 @@ public class IntegrationLogService {
         addLogEntry(LogLevel.INFO, message, null);
     }
 
+    /**
+     * Log an info message built from a template with {} placeholders.
+     * The message is only formatted if INFO is enabled.
+     */
+    public void logInfo(String template, Object... args) {
+        addFormattedEntry(LogLevel.INFO, template, args);
+    }
+
     /**
      * Log a warning message
      */
@@ -71,14 +114,29 @@ public class IntegrationLogService {
         addLogEntry(LogLevel.WARNING, message, exception);
     }
 
+    /**
+     * Log a warning message built from a template with {} placeholders.
+     * A trailing Throwable argument is logged as the exception.
+     */
+    public void logWarning(String template, Object... args) {
+        addFormattedEntry(LogLevel.WARNING, template, args);
+    }
+
     /**
      * Log an error message
      */
     public void logError(String message) {
-        Throwable exception = null;
         addLogEntry(LogLevel.ERROR, message, null);
     }
 
+    /**
+     * Log an error message built from a template with {} placeholders.
+     * A trailing Throwable argument is logged as the exception.
+     */
+    public void logError(String template, Object... args) {
+        addFormattedEntry(LogLevel.ERROR, template, args);
+    }
+
     /**
      * Log a debug message
      */
@@ -86,13 +144,114 @@ public class IntegrationLogService {
         addLogEntry(LogLevel.DEBUG, message, null);
     }
 
+    /**
+     * Log a debug message built from a template with {} placeholders.
+     * The message is only formatted if DEBUG is enabled.
+     */
+    public void logDebug(String template, Object... args) {
+        addFormattedEntry(LogLevel.DEBUG, template, args);
+    }
+
+    /**
+     * Whether entries of the given level are recorded
+     */
+    public boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= minimumLevel.ordinal();
+    }
+
+    /**
+     * Set the lowest level that is recorded
+     */
+    public void setMinimumLevel(LogLevel minimumLevel) {
+        this.minimumLevel = minimumLevel;
+    }
+
+    public LogLevel getMinimumLevel() {
+        return minimumLevel;
+    }
+
+    /**
+     * Tag entries logged by the current thread with a synchronization session
+     */
+    public void setSessionId(String sessionId) {
+        currentSessionId.set(sessionId);
+    }
+
+    /**
+     * Stop tagging entries logged by the current thread with a session
+     */
+    public void clearSessionId() {
+        currentSessionId.remove();
+    }
+
+    /**
+     * Get the session entries logged by the current thread are tagged with
+     */
+    public String getSessionId() {
+        return currentSessionId.get();
+    }
+
+    /**
+     * Emit summaries for every template with suppressed repeats, e.g. at the end of
+     * an integration run, and start counting afresh
+     */
+    public void flushSuppressed() {
+        flushSuppressed(true);
+    }
+
+    /**
+     * Emit summaries for templates with suppressed repeats
+     *
+     * @param all true to flush every template, false for only those whose window has passed
+     */
+    private void flushSuppressed(boolean all) {
+        long now = System.currentTimeMillis();
+
+        for (TemplateThrottle throttle : templateThrottles.values()) {
+            String summary = throttle.rollWindow(now, all);
+            if (summary != null) {
+                addLogEntry(throttle.level, summary, null);
+            }
+        }
+    }
+
+    /**
+     * Format a template entry if its level is enabled and the template has not
+     * passed its repeat limit for the current window
+     */
+    private void addFormattedEntry(LogLevel level, String template, Object[] args) {
+        if (!isEnabled(level)) {
+            return;
+        }
+
+        TemplateThrottle throttle = templateThrottles.computeIfAbsent(level + template,
+                key -> new TemplateThrottle(level, template));
+
+        long now = System.currentTimeMillis();
+        String summary = throttle.rollWindow(now, false);
+        if (summary != null) {
+            addLogEntry(level, summary, null);
+        }
+        if (!throttle.admit(args)) {
+            return;
+        }
+
+        FormattingTuple formatted = MessageFormatter.arrayFormat(template, args);
+        addLogEntry(level, formatted.getMessage(), formatted.getThrowable());
+    }
+
     /**
      * Add a log entry to the queue and in-memory store
      */
     private void addLogEntry(LogLevel level, String message, Throwable exception) {
+        if (!isEnabled(level)) {
+            return;
+        }
+
         LogEntry entry = new LogEntry();
         entry.setTimestamp(new Date());
         entry.setLevel(level);
+        entry.setSessionId(currentSessionId.get());
         entry.setMessage(message);
 
         if (exception != null) {
@@ -106,16 +265,11 @@ public class IntegrationLogService {
             entry.setStackTrace(stackTrace.toString());
         }
 
-        // Add to queue for file logging
-        logQueue.add(entry);
+        // Hand off to the writer thread for file logging
+        logFileWriter.write(entry);
 
-        // Add to in-memory log with size limit
-        synchronized (inMemoryLogs) {
-            inMemoryLogs.add(entry);
-            if (inMemoryLogs.size() > MAX_IN_MEMORY_LOGS) {
-                inMemoryLogs.remove(0);
-            }
-        }
+        // Add to in-memory log, overwriting the oldest entry once full
+        inMemoryLogs.add(entry);
 
         // Log to SLF4J as well
         switch (level) {
@@ -134,67 +288,67 @@ public class IntegrationLogService {
         }
     }
 
-    /**
-     * Flush queued logs to file
-     */
-    private void flushLogs() {
-        if (logQueue.isEmpty() || shuttingDown) {
-            return;
-        }
-
-        String logFile = LOG_DIRECTORY + "/integration_" +
-                new SimpleDateFormat("yyyyMMdd").format(new Date()) + ".log";
-
-        try (FileWriter writer = new FileWriter(logFile, true)) {
-            LogEntry entry;
-            while ((entry = logQueue.poll()) != null) {
-                writer.write(formatLogEntry(entry));
-                writer.write(System.lineSeparator());
-
-                // Write stack trace if present
-                if (entry.getStackTrace() != null) {
-                    writer.write(entry.getStackTrace());
-                    writer.write(System.lineSeparator());
-                }
-            }
-        } catch (IOException e) {
-            log.error("Failed to write to log file", e);
-            // Re-add entries to queue
-            // Not ideal but prevents log loss in temporary IO failure
-        }
-    }
-
-    /**
-     * Format a log entry for file output
-     */
-    private String formatLogEntry(LogEntry entry) {
-        return dateFormat.format(entry.getTimestamp()) + " [" + entry.getLevel() + "] " + entry.getMessage();
-    }
-
     /**
      * Get recent logs
      */
     public List<LogEntry> getRecentLogs() {
-        synchronized (inMemoryLogs) {
-            return new ArrayList<>(inMemoryLogs);
-        }
+        return inMemoryLogs.snapshot();
     }
 
     /**
      * Get recent logs filtered by level
      */
     public List<LogEntry> getRecentLogs(LogLevel minLevel) {
-        List<LogEntry> filteredLogs = new ArrayList<>();
+        try {
+            // Entries still queued for the writer come from memory, taken at the same commit
+            // boundary as the end of the log on disk; the files are read after the lock is released
+            List<LogEntry> pending = new ArrayList<>();
+            LogFileWriter.LogPosition committedEnd = logFileWriter.atCommitBoundary(() ->
+                    pending.addAll(inMemoryLogs.snapshot(entry -> !entry.isWritten()
+                            && entry.getLevel().ordinal() >= minLevel.ordinal())));
+
+            List<LogEntry> logs = logFileReader.recent(minLevel, null, MAX_IN_MEMORY_LOGS, committedEnd);
+            logs.addAll(pending);
+            return logs.size() > MAX_IN_MEMORY_LOGS
+                    ? new ArrayList<>(logs.subList(logs.size() - MAX_IN_MEMORY_LOGS, logs.size()))
+                    : logs;
+        } catch (IOException e) {
+            log.warn("Failed to read log index, returning in-memory logs only: {}", e.getMessage());
+            return inMemoryLogs.snapshot(entry -> entry.getLevel().ordinal() >= minLevel.ordinal());
+        }
+    }
 
-        synchronized (inMemoryLogs) {
-            for (LogEntry entry : inMemoryLogs) {
-                if (entry.getLevel().ordinal() >= minLevel.ordinal()) {
-                    filteredLogs.add(entry);
+    /**
+     * Get logs in a time range, answered by binary-searching the log index
+     *
+     * @param from Start of the range (inclusive)
+     * @param to End of the range (inclusive)
+     * @param minLevel Lowest level to include
+     * @param sessionId Session to restrict to, or null for all sessions
+     * @param limit Maximum number of entries to return
+     * @return Matching entries, oldest first
+     */
+    public List<LogEntry> getLogs(Date from, Date to, LogLevel minLevel, String sessionId, int limit) {
+        try {
+            List<LogEntry> pending = new ArrayList<>();
+            LogFileWriter.LogPosition committedEnd = logFileWriter.atCommitBoundary(() ->
+                    pending.addAll(inMemoryLogs.snapshot(entry -> !entry.isWritten()
+                            && entry.getLevel().ordinal() >= minLevel.ordinal()
+                            && !entry.getTimestamp().before(from) && !entry.getTimestamp().after(to)
+                            && (sessionId == null || sessionId.equals(entry.getSessionId())))));
+
+            List<LogEntry> logs = logFileReader.query(from, to, minLevel, sessionId, limit, committedEnd);
+            for (LogEntry entry : pending) {
+                if (logs.size() >= limit) {
+                    break;
                 }
+                logs.add(entry);
             }
+            return logs;
+        } catch (IOException e) {
+            log.error("Failed to query log index", e);
+            return Collections.emptyList();
         }
-
-        return filteredLogs;
     }
 
     /**
@@ -202,7 +356,8 @@ public class IntegrationLogService {
      */
     public List<File> getLogFiles() {
         File dir = new File(LOG_DIRECTORY);
-        File[] files = dir.listFiles((d, name) -> name.startsWith("integration_") && name.endsWith(".log"));
+        File[] files = dir.listFiles((d, name) -> name.startsWith("integration_")
+                && (name.endsWith(".jsonl") || name.endsWith(".jsonl.gz")));
 
         if (files == null) {
             return Collections.emptyList();
@@ -211,13 +366,93 @@ public class IntegrationLogService {
         return Arrays.asList(files);
     }
 
+    /**
+     * Get the total size of the log files, without scanning the log directory
+     */
+    public long getLogUsageBytes() {
+        return logArchiver.getUsageBytes();
+    }
+
+    /**
+     * Get the size the log files are kept within
+     */
+    public long getLogRetentionBytes() {
+        return logArchiver.getMaxTotalBytes();
+    }
+
     /**
      * Clean up and ensure all logs are flushed
      */
     public void shutdown() {
+        if (shuttingDown) {
+            return;
+        }
         shuttingDown = true;
-        flushLogs();
-        logFlushTimer.cancel();
+        summaryExecutor.shutdownNow();
+        flushSuppressed(true);
+        logFileWriter.close();
+        logArchiver.close();
+    }
+
+    /**
+     * Counts occurrences of one message template per window. The first repeats in a
+     * window are logged; the rest are counted, with a few sample arguments kept for
+     * the summary logged when the window ends.
+     */
+    private class TemplateThrottle {
+        private final LogLevel level;
+        private final String template;
+        private long windowStart = System.currentTimeMillis();
+        private int admitted;
+        private long suppressed;
+        private final List<Object> samples = new ArrayList<>();
+
+        private TemplateThrottle(LogLevel level, String template) {
+            this.level = level;
+            this.template = template;
+        }
+
+        /**
+         * Count an occurrence
+         *
+         * @return true if it should be logged
+         */
+        private synchronized boolean admit(Object[] args) {
+            if (admitted < MAX_REPEATS_PER_WINDOW) {
+                admitted++;
+                return true;
+            }
+
+            suppressed++;
+            if (samples.size() < MAX_SUPPRESSED_SAMPLES && args != null && args.length > 0
+                    && !(args[0] instanceof Throwable)) {
+                samples.add(args[0]);
+            }
+            return false;
+        }
+
+        /**
+         * Start a new window if the current one has passed (or unconditionally if forced)
+         *
+         * @return Summary of the repeats suppressed in the ended window, or null if there were none
+         */
+        private synchronized String rollWindow(long now, boolean force) {
+            if (!force && now - windowStart < REPEAT_WINDOW_MILLIS) {
+                return null;
+            }
+
+            String summary = null;
+            if (suppressed > 0) {
+                summary = String.format("Suppressed %d repeats in the last %d s of: %s (samples: %s)",
+                        suppressed, Math.max(1, (now - windowStart) / 1000), template, samples);
+            }
+
+            windowStart = now;
+            admitted = 0;
+            suppressed = 0;
+            samples.clear();
+            return summary;
+        }
     }
 
     /**
@@ -227,7 +462,28 @@ public class IntegrationLogService {
         DEBUG,
         INFO,
         WARNING,
-        ERROR
+        ERROR;
+
+        /**
+         * Parse a configured level name, accepting WARN for WARNING; defaults to INFO
+         */
+        public static LogLevel fromName(String name) {
+            if (name == null) {
+                return INFO;
+            }
+
+            String normalized = name.trim().toUpperCase();
+            if ("WARN".equals(normalized)) {
+                return WARNING;
+            }
+
+            for (LogLevel level : values()) {
+                if (level.name().equals(normalized)) {
+                    return level;
+                }
+            }
+            return INFO;
+        }
     }
 
     /**
@@ -236,20 +492,28 @@ public class IntegrationLogService {
     public static class LogEntry {
         private Date timestamp;
         private LogLevel level;
+        private String sessionId;
         private String message;
         private String exception;
         private String stackTrace;
 
+        // Set once the entry is committed to the log files
+        private volatile boolean written;
+
         // Getters and setters
         public Date getTimestamp() { return timestamp; }
         public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
         public LogLevel getLevel() { return level; }
         public void setLevel(LogLevel level) { this.level = level; }
+        public String getSessionId() { return sessionId; }
+        public void setSessionId(String sessionId) { this.sessionId = sessionId; }
         public String getMessage() { return message; }
         public void setMessage(String message) { this.message = message; }
         public String getException() { return exception; }
         public void setException(String exception) { this.exception = exception; }
         public String getStackTrace() { return stackTrace; }
         public void setStackTrace(String stackTrace) { this.stackTrace = stackTrace; }
+        boolean isWritten() { return written; }
+        void markWritten() { this.written = true; }
     }
 }
\ No newline at end of file
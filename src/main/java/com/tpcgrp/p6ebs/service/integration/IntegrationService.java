@@ -10,10 +10,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @Slf4j
@@ -27,10 +29,23 @@ public class IntegrationService {
     private final IntegrationLogService logService;
     private final P6ActivityService p6ActivityService;
     private final EbsProjectService ebsProjectService;
+    private final EbsReferenceDataService referenceDataService;
     private final DataTransformationService transformationService;
+    private final ConfigurationManager configManager;
 
-    private final AtomicBoolean integrationInProgress = new AtomicBoolean(false);
-    private final ConcurrentHashMap<String, Boolean> activeIntegrations = new ConcurrentHashMap<>();
+    // Progress of runs in progress, persisted under ~/.p6ebs/checkpoints so they can be resumed
+    private final CheckpointJournal checkpointJournal;
+
+    // Records that failed to integrate, persisted under ~/.p6ebs/deadletters until replayed
+    private final DeadLetterStore deadLetterStore;
+
+    // Pacing of writes to P6, shared by the load stage and replays
+    private final AdaptiveRateLimiter p6WriteLimiter;
+
+    // Cancellation tokens of the runs in progress, and of the run processing each type;
+    // different types may run concurrently, each type only once at a time
+    private final Set<CancellationToken> runningIntegrations = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, CancellationToken> activeIntegrations = new ConcurrentHashMap<>();
 
     @Autowired
     public IntegrationService(DatabaseService databaseService,
@@ -41,7 +56,9 @@ public class IntegrationService {
                               IntegrationLogService logService,
                               P6ActivityService p6ActivityService,
                               EbsProjectService ebsProjectService,
-                              DataTransformationService transformationService) {
+                              EbsReferenceDataService referenceDataService,
+                              DataTransformationService transformationService,
+                              ConfigurationManager configManager) {
         this.databaseService = databaseService;
         this.configService = configService;
         this.mappingUtility = mappingUtility;
@@ -50,7 +67,14 @@ public class IntegrationService {
         this.logService = logService;
         this.p6ActivityService = p6ActivityService;
         this.ebsProjectService = ebsProjectService;
+        this.referenceDataService = referenceDataService;
         this.transformationService = transformationService;
+        this.configManager = configManager;
+        this.checkpointJournal = new CheckpointJournal(
+                Paths.get(System.getProperty("user.home"), ".p6ebs", "checkpoints"));
+        this.deadLetterStore = new DeadLetterStore(
+                Paths.get(System.getProperty("user.home"), ".p6ebs", "deadletters"));
+        this.p6WriteLimiter = new AdaptiveRateLimiter("P6", configManager);
     }
 
     /**
@@ -67,27 +91,67 @@ public class IntegrationService {
                                                 Map<String, String> ebsConnectionParams,
                                                 List<String> integrationTypes,
                                                 ProgressCallback progressCallback) {
+        return startIntegration(p6ConnectionParams, ebsConnectionParams, integrationTypes, progressCallback, null);
+    }
+
+    /**
+     * Start or resume an integration run. A run that stopped before finishing a
+     * type resumes that type from its last checkpoint when started again with the
+     * same run ID.
+     *
+     * @param p6ConnectionParams Database connection parameters for P6
+     * @param ebsConnectionParams Database connection parameters for EBS
+     * @param integrationTypes List of integration types to process
+     * @param progressCallback Callback to report integration progress
+     * @param runId ID of the run to resume, or null to start a new run
+     * @return Status of the integration process, including its run ID
+     */
+    @Transactional
+    public Map<String, Object> startIntegration(Map<String, String> p6ConnectionParams,
+                                                Map<String, String> ebsConnectionParams,
+                                                List<String> integrationTypes,
+                                                ProgressCallback progressCallback,
+                                                String runId) {
+
+        if (integrationTypes == null || integrationTypes.isEmpty()) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", "error");
+            result.put("message", "No integration types selected");
+            return result;
+        }
 
-        if (integrationInProgress.get()) {
+        if (activeIntegrations.keySet().containsAll(integrationTypes)) {
             Map<String, Object> result = new HashMap<>();
             result.put("status", "error");
             result.put("message", "Integration already in progress");
             return result;
         }
 
-        integrationInProgress.set(true);
+        CancellationToken cancellation = new CancellationToken();
+        runningIntegrations.add(cancellation);
         Map<String, Object> result = new HashMap<>();
+        if (runId == null) {
+            runId = UUID.randomUUID().toString();
+        }
+        result.put("runId", runId);
+        Set<String> claimedTypes = new HashSet<>();
+        List<String> skippedTypes = new ArrayList<>();
 
         try {
-            logService.logInfo("Starting integration process with types: " + String.join(", ", integrationTypes));
+            logService.logInfo("Starting integration run {} with types: {}", runId, String.join(", ", integrationTypes));
 
             // Initialize progress tracking
             int totalSteps = integrationTypes.size() * 3; // Each type has validation, processing, and verification
             int currentStep = 0;
 
+            // Stage timings of the type being processed; the first type also covers the connection check
+            SyncStageTimer timer = new SyncStageTimer();
+
             // Validate connections
-            boolean p6Connected = validateP6Connection(p6ConnectionParams);
-            boolean ebsConnected = validateEbsConnection(ebsConnectionParams);
+            boolean p6Connected = timer.time(SyncStageTimer.Stage.CONNECT,
+                    () -> validateP6Connection(p6ConnectionParams));
+            boolean ebsConnected = timer.time(SyncStageTimer.Stage.CONNECT,
+                    () -> validateEbsConnection(ebsConnectionParams));
 
             if (!p6Connected || !ebsConnected) {
                 throw new IntegrationException("Failed to connect to one or both systems");
@@ -95,15 +159,26 @@ public class IntegrationService {
 
             // Process each integration type
             for (String integrationType : integrationTypes) {
-                if (!activeIntegrations.containsKey(integrationType)) {
-                    activeIntegrations.put(integrationType, true);
+                if (cancellation.isCancelled()) {
+                    break;
+                }
+
+                if (activeIntegrations.putIfAbsent(integrationType, cancellation) != null) {
+                    logService.logWarning("{} is already being integrated, skipping", integrationType);
+                    skippedTypes.add(integrationType);
+                } else {
+                    claimedTypes.add(integrationType);
+
+                    // Tag this type's log entries so they can be queried by session
+                    logService.setSessionId(UUID.randomUUID().toString());
 
                     // Data validation phase
                     progressCallback.updateProgress(++currentStep, totalSteps,
                             "Validating data for " + integrationType);
 
-                    List<ValidationService.ValidationIssue> validationIssues = validationService.validateForIntegration(
-                            p6ConnectionParams, ebsConnectionParams, integrationType);
+                    List<ValidationService.ValidationIssue> validationIssues = timer.time(
+                            SyncStageTimer.Stage.VALIDATE, () -> validationService.validateForIntegration(
+                                    p6ConnectionParams, ebsConnectionParams, integrationType));
 
                     if (!validationIssues.isEmpty()) {
                         logService.logWarning("Validation issues found for " + integrationType + ": "
@@ -111,6 +186,7 @@ public class IntegrationService {
                         // Decide whether to continue based on severity of issues
                         if (validationService.hasBlockingIssues(validationIssues)) {
                             logService.logError("Blocking validation issues found, skipping " + integrationType);
+                            timer = new SyncStageTimer();
                             continue;
                         }
                     }
@@ -120,40 +196,79 @@ public class IntegrationService {
                             "Processing " + integrationType);
 
                     Map<String, Object> integrationResult = processIntegrationType(
-                            p6ConnectionParams, ebsConnectionParams, integrationType);
+                            p6ConnectionParams, ebsConnectionParams, integrationType, timer, cancellation, runId);
 
-                    // Verify results
-                    progressCallback.updateProgress(++currentStep, totalSteps,
-                            "Verifying " + integrationType);
+                    if (cancellation.isCancelled()) {
+                        // Record what was committed before the cancellation, without verifying
+                        integrationResult.put("status", "cancelled");
+                        integrationResult.put("message", "Integration cancelled");
+                    } else {
+                        // Verify results
+                        progressCallback.updateProgress(++currentStep, totalSteps,
+                                "Verifying " + integrationType);
 
-                    boolean verificationSuccess = verifyIntegrationResults(
-                            p6ConnectionParams, ebsConnectionParams, integrationType, integrationResult);
+                        boolean verificationSuccess = timer.time(SyncStageTimer.Stage.VERIFY,
+                                () -> verifyIntegrationResults(
+                                        p6ConnectionParams, ebsConnectionParams, integrationType, integrationResult));
 
-                    if (!verificationSuccess) {
-                        logService.logWarning("Verification failed for " + integrationType);
+                        if (!verificationSuccess) {
+                            logService.logWarning("Verification failed for " + integrationType);
+                        }
                     }
 
                     // Store results
-                    syncManager.recordSynchronizationResult(integrationType, integrationResult);
+                    syncManager.recordSynchronizationResult(integrationType, integrationResult, timer);
+
+                    // The type went through to the end, so there is nothing left to resume
+                    if (!"cancelled".equals(integrationResult.get("status"))
+                            && !"error".equals(integrationResult.get("status"))) {
+                        checkpointJournal.complete(runId, integrationType);
+                    }
 
                     // Cleanup
                     activeIntegrations.remove(integrationType);
+                    claimedTypes.remove(integrationType);
+                    logService.clearSessionId();
+                    timer = new SyncStageTimer();
                 }
             }
 
             // Build final result
-            result.put("status", "success");
             result.put("completedIntegrations", syncManager.getCompletedIntegrations());
             result.put("syncTimestamp", new Date());
+            if (!skippedTypes.isEmpty()) {
+                result.put("skippedIntegrations", skippedTypes);
+            }
 
-            logService.logInfo("Integration process completed successfully");
+            if (cancellation.isCancelled()) {
+                result.put("status", "cancelled");
+                result.put("message", "Integration cancelled");
+                logService.logInfo("Integration process cancelled");
+            } else if (skippedTypes.size() == integrationTypes.size()) {
+                // Every type was claimed by another run after the check above
+                result.put("status", "error");
+                result.put("message", "Integration already in progress");
+            } else {
+                result.put("status", "success");
+                logService.logInfo("Integration process completed successfully");
+            }
 
         } catch (Exception e) {
-            logService.logError("Integration process failed: " + e.getMessage());
-            result.put("status", "error");
-            result.put("message", e.getMessage());
+            if (cancellation.isCancelled()) {
+                logService.logInfo("Integration process cancelled: " + e.getMessage());
+                result.put("status", "cancelled");
+                result.put("message", "Integration cancelled");
+            } else {
+                logService.logError("Integration process failed: " + e.getMessage());
+                result.put("status", "error");
+                result.put("message", e.getMessage());
+            }
         } finally {
-            integrationInProgress.set(false);
+            logService.clearSessionId();
+            for (String integrationType : claimedTypes) {
+                activeIntegrations.remove(integrationType);
+            }
+            runningIntegrations.remove(cancellation);
         }
 
         return result;
@@ -164,7 +279,10 @@ public class IntegrationService {
      */
     private Map<String, Object> processIntegrationType(Map<String, String> p6ConnectionParams,
                                                        Map<String, String> ebsConnectionParams,
-                                                       String integrationType) throws IntegrationException {
+                                                       String integrationType,
+                                                       SyncStageTimer timer,
+                                                       CancellationToken cancellation,
+                                                       String runId) throws IntegrationException {
 
         logService.logInfo("Processing integration type: " + integrationType);
         Map<String, Object> result = new HashMap<>();
@@ -172,7 +290,7 @@ public class IntegrationService {
         try {
             switch (integrationType) {
                 case "projectFinancials":
-                    result = integrateProjectFinancials(p6ConnectionParams, ebsConnectionParams);
+                    result = integrateProjectFinancials(p6ConnectionParams, ebsConnectionParams, timer, cancellation);
                     break;
                 case "resourceManagement":
                     result = integrateResourceManagement(p6ConnectionParams, ebsConnectionParams);
@@ -187,7 +305,7 @@ public class IntegrationService {
                     result = integrateProjectWbs(p6ConnectionParams, ebsConnectionParams);
                     break;
                 case "ebsTasksToP6":
-                    result = integrateEbsTasksToP6(p6ConnectionParams, ebsConnectionParams);
+                    result = integrateEbsTasksToP6(p6ConnectionParams, ebsConnectionParams, timer, cancellation, runId);
                     break;
                 default:
                     throw new IntegrationException("Unknown integration type: " + integrationType);
@@ -201,98 +319,522 @@ public class IntegrationService {
     }
 
     /**
-     * Integrate EBS tasks to P6 activities
+     * Integrate EBS tasks to P6 activities. Tasks are partitioned by EBS project;
+     * tasks not updated since their project's watermark are skipped, and a
+     * project's watermark only advances if all of its changed tasks were written.
+     * On cancellation the run stops before the next task; the projects finished
+     * by then keep their progress.
+     * A checkpoint is recorded after each finished project and each batch of
+     * written tasks; a resumed run skips the projects and tasks it already did.
+     * The writes of a batch share one P6 connection, so the rate limiter times
+     * only the statements.
      */
     private Map<String, Object> integrateEbsTasksToP6(Map<String, String> p6ConnectionParams,
-                                                      Map<String, String> ebsConnectionParams) throws SQLException {
+                                                      Map<String, String> ebsConnectionParams,
+                                                      SyncStageTimer timer,
+                                                      CancellationToken cancellation,
+                                                      String runId) throws SQLException {
 
         logService.logInfo("Integrating EBS tasks to P6 activities");
         Map<String, Object> result = new HashMap<>();
+        Connection p6Connection = null;
 
         try {
             // Get EBS tasks
-            EbsTaskService ebsTaskService = new EbsTaskService(databaseService);
-            List<Map<String, Object>> ebsTasks = ebsTaskService.getAllTasks(
-                    ebsConnectionParams.get("server"),
-                    ebsConnectionParams.get("sid"),
-                    ebsConnectionParams.get("username"),
-                    ebsConnectionParams.get("password"));
+            EbsTaskService ebsTaskService = new EbsTaskService(databaseService, referenceDataService);
+            List<Map<String, Object>> ebsTasks = timer.time(SyncStageTimer.Stage.EXTRACT,
+                    () -> ebsTaskService.getAllTasks(
+                            ebsConnectionParams.get("server"),
+                            ebsConnectionParams.get("sid"),
+                            ebsConnectionParams.get("username"),
+                            ebsConnectionParams.get("password"),
+                            cancellation));
+            timer.addRows(SyncStageTimer.Stage.EXTRACT, ebsTasks.size(), SyncStageTimer.estimateBytes(ebsTasks));
+
+            // Watermarks of the projects that committed in earlier runs
+            Map<String, Date> watermarks = syncManager.getPartitionWatermarks("ebsTasksToP6");
+            Map<String, Date> partitionHighs = new HashMap<>();
+            Set<String> failedPartitions = new HashSet<>();
+            Set<String> completedPartitions = new HashSet<>();
 
             // Process each task
             int totalTasks = ebsTasks.size();
             int updatedTasks = 0;
             int failedTasks = 0;
+            int skippedTasks = 0;
+            int unchangedTasks = 0; // Of the skipped tasks, those whose content was already written
             List<String> processedTaskIds = new ArrayList<>();
+            String currentPartition = null;
+            String lastKey = null;
+            int writesSinceCheckpoint = 0;
+
+            // Pick up where an interrupted attempt at this run left off
+            String resumePartition = null;
+            String resumeKey = null;
+            CheckpointJournal.Checkpoint resume = checkpointJournal.load(runId, "ebsTasksToP6");
+            if (resume != null) {
+                completedPartitions.addAll(resume.getCompletedPartitions());
+                failedPartitions.addAll(resume.getFailedPartitions());
+                for (Map.Entry<String, Long> high : resume.getPartitionHighs().entrySet()) {
+                    partitionHighs.put(high.getKey(), new Date(high.getValue()));
+                }
+
+                // Skip the current project's tasks up to the last one done, if it is still there
+                for (Map<String, Object> ebsTask : ebsTasks) {
+                    if (String.valueOf(ebsTask.get("task_id")).equals(resume.getLastKey())
+                            && String.valueOf(ebsTask.get("project_id")).equals(resume.getCurrentPartition())) {
+                        resumePartition = resume.getCurrentPartition();
+                        resumeKey = resume.getLastKey();
+                        break;
+                    }
+                }
+
+                // The counters include the current project's tasks done so far; when those are
+                // processed again they are counted again, so the earlier counts are dropped
+                if (resume.getCurrentPartition() == null || resumeKey != null) {
+                    updatedTasks = resume.getCounters().getOrDefault("updatedTasks", 0);
+                    failedTasks = resume.getCounters().getOrDefault("failedTasks", 0);
+                    skippedTasks = resume.getCounters().getOrDefault("skippedTasks", 0);
+                }
+                logService.logInfo("Resuming run {} after {} completed projects", runId, completedPartitions.size());
+            }
 
             for (Map<String, Object> ebsTask : ebsTasks) {
+                String partition = String.valueOf(ebsTask.get("project_id"));
+                String taskKey = String.valueOf(ebsTask.get("task_id"));
+
+                if (completedPartitions.contains(partition)) {
+                    continue; // Done by an earlier attempt at this run
+                }
+                if (resumeKey != null && partition.equals(resumePartition)) {
+                    if (taskKey.equals(resumeKey)) {
+                        resumeKey = null; // Continue after this task
+                    }
+                    currentPartition = partition;
+                    lastKey = taskKey;
+                    continue;
+                }
+
+                if (!partition.equals(currentPartition) && currentPartition != null) {
+                    // Tasks come ordered by project, so the previous project is finished
+                    completedPartitions.add(currentPartition);
+                    recordCheckpoint(runId, null, lastKey, completedPartitions, failedPartitions, partitionHighs,
+                            updatedTasks, failedTasks, skippedTasks);
+                    writesSinceCheckpoint = 0;
+                }
+
+                if (cancellation.isCancelled()) {
+                    recordCheckpoint(runId, currentPartition, lastKey, completedPartitions, failedPartitions,
+                            partitionHighs, updatedTasks, failedTasks, skippedTasks);
+                    // Only the current project is left unfinished
+                    if (partition.equals(currentPartition)) {
+                        failedPartitions.add(partition);
+                    }
+                    logService.logInfo("Stopping EBS task integration after {} tasks on cancellation",
+                            updatedTasks + failedTasks + skippedTasks);
+                    break;
+                }
+                currentPartition = partition;
+                lastKey = taskKey;
+                Date lastUpdate = ebsTask.get("last_update_date") instanceof Date
+                        ? (Date) ebsTask.get("last_update_date") : null;
+
+                Date watermark = watermarks.get(partition);
+                if (watermark != null && lastUpdate != null && !lastUpdate.after(watermark)) {
+                    skippedTasks++;
+                    continue;
+                }
+
+                Map<String, Object> transformed = null;
                 try {
                     // Transform EBS task to P6 activity format
-                    Map<String, Object> p6Activity = transformationService.transformTaskDataEbsToP6(ebsTask);
+                    Map<String, Object> p6Activity = timer.time(SyncStageTimer.Stage.TRANSFORM,
+                            () -> transformationService.transformTaskDataEbsToP6(ebsTask));
+                    timer.addRows(SyncStageTimer.Stage.TRANSFORM, 1, SyncStageTimer.estimateBytes(p6Activity));
+                    transformed = p6Activity;
 
                     // Get project ID mapping
                     String ebsProjectId = ebsTask.get("project_id").toString();
                     String p6ProjectId = mappingUtility.getP6IdForEbsEntity("project", ebsProjectId);
 
                     if (p6ProjectId == null) {
-                        logService.logWarning("Cannot find P6 project for EBS project ID: " + ebsProjectId);
+                        logService.logWarning("Cannot find P6 project for EBS project ID: {}", ebsProjectId);
                         failedTasks++;
+                        failedPartitions.add(partition);
+                        deadLetter("ebsTasksToP6", taskKey, partition, runId, "TRANSFORM",
+                                "Cannot find P6 project for EBS project ID: " + ebsProjectId, ebsTask, p6Activity, 1);
                         continue;
                     }
 
                     // Set project ID for P6 activity
                     p6Activity.put("proj_id", p6ProjectId);
 
+                    // Content already written by an earlier run is skipped without reading P6 back,
+                    // so an edit made directly in P6 is only overwritten once the EBS task changes
+                    String targetKey = activityKey(p6Activity);
+                    if (mappingUtility.isUnchangedSinceLastWrite("activity", targetKey, p6Activity)) {
+                        skippedTasks++;
+                        unchangedTasks++;
+                        processedTaskIds.add(taskKey);
+                        if (lastUpdate != null) {
+                            partitionHighs.merge(partition, lastUpdate, (a, b) -> a.after(b) ? a : b);
+                        }
+                        continue;
+                    }
+
                     // Create or update P6 activity
-                    boolean success = createOrUpdateP6Activity(p6ConnectionParams, p6Activity);
+                    if (p6Connection == null) {
+                        p6Connection = timer.time(SyncStageTimer.Stage.LOAD, () -> openP6Connection(p6ConnectionParams));
+                    }
+                    Connection connection = p6Connection;
+                    boolean success = timer.time(SyncStageTimer.Stage.LOAD,
+                            () -> p6WriteLimiter.run(() -> createOrUpdateP6Activity(connection, p6Activity, cancellation),
+                                    cancellation));
 
                     if (success) {
+                        timer.addRows(SyncStageTimer.Stage.LOAD, 1, SyncStageTimer.estimateBytes(p6Activity));
+                        mappingUtility.storeContentHash("activity", targetKey, p6Activity);
                         updatedTasks++;
-                        processedTaskIds.add(ebsTask.get("task_id").toString());
+                        processedTaskIds.add(taskKey);
+                        if (lastUpdate != null) {
+                            partitionHighs.merge(partition, lastUpdate, (a, b) -> a.after(b) ? a : b);
+                        }
                     } else {
                         failedTasks++;
+                        failedPartitions.add(partition);
+                        deadLetter("ebsTasksToP6", taskKey, partition, runId, "LOAD",
+                                "Failed to create/update P6 activity", ebsTask, p6Activity, 1);
+                        // The failure may have broken the connection; the next write opens a new one
+                        p6Connection = closeP6Connection(p6Connection);
                     }
 
                 } catch (Exception e) {
-                    logService.logError("Error processing EBS task: " + e.getMessage());
+                    logService.logError("Error processing EBS task {}: {}", ebsTask.get("task_id"), e.getMessage());
                     failedTasks++;
+                    failedPartitions.add(partition);
+                    deadLetter("ebsTasksToP6", taskKey, partition, runId, transformed == null ? "TRANSFORM" : "LOAD",
+                            e.getMessage(), ebsTask, transformed, 1);
                 }
+
+                if (++writesSinceCheckpoint >= configManager.getBatchSize()) {
+                    recordCheckpoint(runId, currentPartition, lastKey, completedPartitions, failedPartitions,
+                            partitionHighs, updatedTasks, failedTasks, skippedTasks);
+                    writesSinceCheckpoint = 0;
+                    p6Connection = closeP6Connection(p6Connection);
+                }
+            }
+
+
+            mappingUtility.saveContentHashes();
+            if (unchangedTasks > 0) {
+                logService.logInfo("Skipped writing {} EBS tasks whose content was already written", unchangedTasks);
+            }
+
+            // Tasks written this time no longer need replaying
+            int resolved = deadLetterStore.remove("ebsTasksToP6", processedTaskIds);
+            if (resolved > 0) {
+                logService.logInfo("{} previously failed EBS tasks were written", resolved);
             }
 
+            // Only projects whose changed tasks were all written move their watermark
+            Map<String, Date> committedPartitions = new HashMap<>(partitionHighs);
+            committedPartitions.keySet().removeAll(failedPartitions);
+
+            // Summarize per-task warnings that passed their repeat limit
+            logService.flushSuppressed();
+
             // Compile results
             result.put("totalTasks", totalTasks);
             result.put("updatedTasks", updatedTasks);
             result.put("failedTasks", failedTasks);
+            result.put("skippedTasks", skippedTasks);
+            result.put("unchangedTasks", unchangedTasks);
             result.put("processedTaskIds", processedTaskIds);
+            result.put("committedPartitions", committedPartitions);
+            result.put("failedPartitions", new ArrayList<>(failedPartitions));
 
             return result;
 
         } catch (Exception e) {
+            if (cancellation.isCancelled()) {
+                // The extract query was cancelled; nothing was written
+                result.put("status", "cancelled");
+                result.put("message", "Integration cancelled");
+                return result;
+            }
             logService.logError("Failed to integrate EBS tasks to P6: " + e.getMessage());
             result.put("status", "error");
             result.put("message", e.getMessage());
             return result;
+        } finally {
+            closeP6Connection(p6Connection);
+        }
+    }
+
+    /**
+     * Record how far an EBS task run got; if this fails the run goes on, and a
+     * resumed run merely repeats more of the work
+     */
+    private void recordCheckpoint(String runId, String currentPartition, String lastKey,
+                                  Set<String> completedPartitions, Set<String> failedPartitions,
+                                  Map<String, Date> partitionHighs,
+                                  int updatedTasks, int failedTasks, int skippedTasks) {
+        CheckpointJournal.Checkpoint checkpoint = new CheckpointJournal.Checkpoint();
+        checkpoint.setRunId(runId);
+        checkpoint.setIntegrationType("ebsTasksToP6");
+        checkpoint.setTimestamp(System.currentTimeMillis());
+        checkpoint.setCurrentPartition(currentPartition);
+        checkpoint.setLastKey(lastKey);
+        checkpoint.setCompletedPartitions(new ArrayList<>(completedPartitions));
+        checkpoint.setFailedPartitions(new ArrayList<>(failedPartitions));
+        for (Map.Entry<String, Date> high : partitionHighs.entrySet()) {
+            checkpoint.getPartitionHighs().put(high.getKey(), high.getValue().getTime());
+        }
+        checkpoint.getCounters().put("updatedTasks", updatedTasks);
+        checkpoint.getCounters().put("failedTasks", failedTasks);
+        checkpoint.getCounters().put("skippedTasks", skippedTasks);
+
+        try {
+            checkpointJournal.record(checkpoint);
+        } catch (IOException e) {
+            logService.logWarning("Failed to record checkpoint of run {}: {}", runId, e.getMessage());
         }
     }
 
+    /**
+     * Get the ID of the most recent unfinished run of an integration type; null if there is none
+     */
+    public String findUnfinishedRun(String integrationType) {
+        String runId = null;
+        for (CheckpointJournal.Checkpoint checkpoint : checkpointJournal.getUnfinished(integrationType)) {
+            runId = checkpoint.getRunId();
+        }
+        return runId;
+    }
+
+    /**
+     * Keep a record that failed to integrate so it can be replayed later
+     */
+    private void deadLetter(String integrationType, String recordKey, String partition, String runId,
+                            String stage, String errorMessage,
+                            Map<String, Object> source, Map<String, Object> payload, int attempts) {
+        long now = System.currentTimeMillis();
+        DeadLetterStore.DeadLetter deadLetter = new DeadLetterStore.DeadLetter();
+        deadLetter.setId(DeadLetterStore.DeadLetter.idOf(integrationType, recordKey));
+        deadLetter.setIntegrationType(integrationType);
+        deadLetter.setRecordKey(recordKey);
+        deadLetter.setPartition(partition);
+        deadLetter.setRunId(runId);
+        deadLetter.setStage(stage);
+        deadLetter.setErrorMessage(errorMessage);
+        deadLetter.setSource(source == null ? null : new HashMap<>(source));
+        deadLetter.setPayload(payload == null ? null : new HashMap<>(payload));
+        deadLetter.setAttempts(attempts);
+        deadLetter.setFirstFailedAt(now);
+        deadLetter.setLastFailedAt(now);
+        deadLetterStore.add(deadLetter);
+    }
+
+    /**
+     * Get the records of an integration type that failed and are waiting to be replayed
+     *
+     * @param integrationType Integration type, or null for all types
+     */
+    public List<DeadLetterStore.DeadLetter> getDeadLetters(String integrationType) {
+        return deadLetterStore.getEntries(integrationType);
+    }
+
+    /**
+     * Replay the failed records of an integration type in batches. Each record
+     * is written from its stored payload, or transformed again from its source
+     * row if the transformation was what failed, and retried up to the configured
+     * retry count with a doubling delay. Written records are removed from the
+     * store after each batch; the others stay with their latest error.
+     *
+     * @param p6ConnectionParams Database connection parameters for P6
+     * @param integrationType Integration type whose records to replay
+     * @param progressCallback Callback for progress updates
+     * @return Number of records replayed, failed and still waiting
+     */
+    public Map<String, Object> replayDeadLetters(Map<String, String> p6ConnectionParams,
+                                                 String integrationType,
+                                                 ProgressCallback progressCallback) {
+        Map<String, Object> result = new HashMap<>();
+
+        if (!"ebsTasksToP6".equals(integrationType)) {
+            result.put("status", "error");
+            result.put("message", "Replay is not supported for " + integrationType);
+            return result;
+        }
+
+        CancellationToken cancellation = new CancellationToken();
+        if (activeIntegrations.putIfAbsent(integrationType, cancellation) != null) {
+            result.put("status", "error");
+            result.put("message", integrationType + " is being integrated, replay it afterwards");
+            return result;
+        }
+        runningIntegrations.add(cancellation);
+
+        int replayed = 0;
+        int failed = 0;
+        try {
+            List<DeadLetterStore.DeadLetter> deadLetters = deadLetterStore.getEntries(integrationType);
+            int batchSize = Math.max(1, configManager.getBatchSize());
+            int totalBatches = (deadLetters.size() + batchSize - 1) / batchSize;
+            logService.logInfo("Replaying {} failed {} records", deadLetters.size(), integrationType);
+
+            for (int batch = 0; batch < totalBatches && !cancellation.isCancelled(); batch++) {
+                progressCallback.updateProgress(batch, totalBatches,
+                        "Replaying batch " + (batch + 1) + " of " + totalBatches);
+
+                List<String> written = new ArrayList<>();
+                int end = Math.min(deadLetters.size(), (batch + 1) * batchSize);
+                for (DeadLetterStore.DeadLetter deadLetter : deadLetters.subList(batch * batchSize, end)) {
+                    if (cancellation.isCancelled()) {
+                        break;
+                    }
+                    if (replayTaskToP6(p6ConnectionParams, deadLetter, cancellation)) {
+                        written.add(deadLetter.getRecordKey());
+                        replayed++;
+                    } else {
+                        failed++;
+                    }
+                }
+                deadLetterStore.remove(integrationType, written);
+            }
+
+            mappingUtility.saveContentHashes();
+            progressCallback.updateProgress(totalBatches, totalBatches, "Replay complete");
+            result.put("status", cancellation.isCancelled() ? "cancelled" : "success");
+            logService.logInfo("Replayed {} failed {} records, {} failed again", replayed, integrationType, failed);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.put("status", "cancelled");
+        } catch (Exception e) {
+            logService.logError("Replay of failed {} records stopped: {}", integrationType, e.getMessage());
+            result.put("status", "error");
+            result.put("message", e.getMessage());
+        } finally {
+            activeIntegrations.remove(integrationType, cancellation);
+            runningIntegrations.remove(cancellation);
+        }
+
+        result.put("replayed", replayed);
+        result.put("failed", failed);
+        result.put("remaining", deadLetterStore.getEntries(integrationType).size());
+        return result;
+    }
+
+    /**
+     * Write one failed EBS task to P6, retrying with backoff. On failure the
+     * dead letter is recorded again with the attempts made and the last error.
+     */
+    private boolean replayTaskToP6(Map<String, String> p6ConnectionParams,
+                                   DeadLetterStore.DeadLetter deadLetter,
+                                   CancellationToken cancellation) throws InterruptedException {
+        int attempts = Math.max(1, configManager.getRetryCount());
+        long delayMs = configManager.getRetryDelayMs();
+        String error = null;
+        Map<String, Object> p6Activity = deadLetter.getPayload();
+        int attempted = 0;
+
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            attempted++;
+            try {
+                p6Activity = deadLetter.getPayload() != null
+                        ? new HashMap<>(deadLetter.getPayload())
+                        : transformationService.transformTaskDataEbsToP6(deadLetter.getSource());
+
+                // The project may have been mapped since the record failed
+                if (p6Activity.get("proj_id") == null) {
+                    String p6ProjectId = mappingUtility.getP6IdForEbsEntity("project", deadLetter.getPartition());
+                    if (p6ProjectId == null) {
+                        error = "Cannot find P6 project for EBS project ID: " + deadLetter.getPartition();
+                        break; // Retrying will not map it
+                    }
+                    p6Activity.put("proj_id", p6ProjectId);
+                }
+
+                Map<String, Object> activity = p6Activity;
+                try (Connection connection = openP6Connection(p6ConnectionParams)) {
+                    if (p6WriteLimiter.run(() -> createOrUpdateP6Activity(connection, activity, cancellation),
+                            cancellation)) {
+                        mappingUtility.storeContentHash("activity", activityKey(activity), activity);
+                        return true;
+                    }
+                }
+                error = "Failed to create/update P6 activity";
+            } catch (SQLException | RuntimeException e) {
+                error = e.getMessage();
+            }
+
+            if (cancellation.isCancelled()) {
+                break; // Leave the record for the next replay
+            }
+            if (attempt < attempts) {
+                Thread.sleep(delayMs);
+                delayMs *= 2;
+            }
+        }
+
+        logService.logWarning("Replay of EBS task {} failed: {}", deadLetter.getRecordKey(), error);
+        deadLetter(deadLetter.getIntegrationType(), deadLetter.getRecordKey(), deadLetter.getPartition(),
+                deadLetter.getRunId(), "REPLAY", error, deadLetter.getSource(), p6Activity, attempted);
+        return false;
+    }
+
+    /**
+     * Key of the P6 activity a payload is written to
+     */
+    private static String activityKey(Map<String, Object> p6Activity) {
+        return p6Activity.get("proj_id") + "/" + p6Activity.get("activity_id");
+    }
+
+    /**
+     * Open a connection to P6 for writing activities
+     */
+    private Connection openP6Connection(Map<String, String> p6ConnectionParams) throws SQLException {
+        return p6ActivityService.openConnection(
+                p6ConnectionParams.get("server"),
+                p6ConnectionParams.get("database"),
+                p6ConnectionParams.get("username"),
+                p6ConnectionParams.get("password"));
+    }
+
+    /**
+     * Close a P6 connection if one is open
+     *
+     * @return null, to clear the caller's reference
+     */
+    private Connection closeP6Connection(Connection p6Connection) {
+        if (p6Connection != null) {
+            try {
+                p6Connection.close();
+            } catch (SQLException e) {
+                logService.logWarning("Failed to close P6 connection: {}", e.getMessage());
+            }
+        }
+        return null;
+    }
+
     /**
      * Create or update a P6 activity
      */
-    private boolean createOrUpdateP6Activity(Map<String, String> p6ConnectionParams,
-                                             Map<String, Object> p6Activity) {
+    private boolean createOrUpdateP6Activity(Connection p6Connection, Map<String, Object> p6Activity,
+                                             CancellationToken cancellation) {
         try {
-            // Check if activity exists in P6
+            // Writes only the columns that differ from the activity's current row
             String activityId = p6Activity.get("activity_id").toString();
-            String projectId = p6Activity.get("proj_id").toString();
-
-            // This would need to be implemented in P6ActivityService
-            // to check if activity exists and create/update accordingly
+            boolean success = p6ActivityService.createOrUpdateActivity(p6Connection, p6Activity, cancellation);
 
-            // For now, we'll assume a successful update
-            logService.logInfo("Successfully updated P6 activity: " + activityId);
-            return true;
+            if (success) {
+                logService.logDebug("Successfully updated P6 activity: {}", activityId);
+            }
+            return success;
 
         } catch (Exception e) {
-            logService.logError("Failed to create/update P6 activity: " + e.getMessage());
+            logService.logError("Failed to create/update P6 activity: {}", e.getMessage());
             return false;
         }
     }
@@ -301,59 +843,84 @@ public class IntegrationService {
      * Integrate project financials between P6 and EBS
      */
     private Map<String, Object> integrateProjectFinancials(Map<String, String> p6ConnectionParams,
-                                                           Map<String, String> ebsConnectionParams) throws SQLException {
+                                                           Map<String, String> ebsConnectionParams,
+                                                           SyncStageTimer timer,
+                                                           CancellationToken cancellation) throws SQLException, InterruptedException {
 
         logService.logInfo("Integrating project financials");
         Map<String, Object> result = new HashMap<>();
 
         // Get P6 project data
-        List<Map<String, Object>> p6Projects = p6ActivityService.getAllProjects(
-                p6ConnectionParams.get("server"),
-                p6ConnectionParams.get("database"),
-                p6ConnectionParams.get("username"),
-                p6ConnectionParams.get("password"));
+        List<Map<String, Object>> p6Projects = timer.time(SyncStageTimer.Stage.EXTRACT,
+                () -> p6ActivityService.getAllProjects(
+                        p6ConnectionParams.get("server"),
+                        p6ConnectionParams.get("database"),
+                        p6ConnectionParams.get("username"),
+                        p6ConnectionParams.get("password"),
+                        cancellation));
+        timer.addRows(SyncStageTimer.Stage.EXTRACT, p6Projects.size(), SyncStageTimer.estimateBytes(p6Projects));
 
         // Get EBS project data
-        List<Map<String, Object>> ebsProjects = ebsProjectService.getAllProjects(
-                ebsConnectionParams.get("server"),
-                ebsConnectionParams.get("sid"),
-                ebsConnectionParams.get("username"),
-                ebsConnectionParams.get("password"));
+        List<Map<String, Object>> ebsProjects = timer.time(SyncStageTimer.Stage.EXTRACT,
+                () -> ebsProjectService.getAllProjects(
+                        ebsConnectionParams.get("server"),
+                        ebsConnectionParams.get("sid"),
+                        ebsConnectionParams.get("username"),
+                        ebsConnectionParams.get("password"),
+                        cancellation));
+        timer.addRows(SyncStageTimer.Stage.EXTRACT, ebsProjects.size(), SyncStageTimer.estimateBytes(ebsProjects));
 
         // Match projects between systems
-        Map<String, String> projectMapping = mappingUtility.mapProjectIds(p6Projects, ebsProjects);
+        Map<String, String> projectMapping = timer.time(SyncStageTimer.Stage.TRANSFORM,
+                () -> mappingUtility.mapProjectIds(p6Projects, ebsProjects));
 
         // Process financial data for each matched project
         int updatedProjects = 0;
         List<String> processedProjects = new ArrayList<>();
+        List<String> failedProjects = new ArrayList<>();
 
         for (Map.Entry<String, String> entry : projectMapping.entrySet()) {
+            if (cancellation.isCancelled()) {
+                logService.logInfo("Stopping project financials integration after {} projects on cancellation",
+                        processedProjects.size() + failedProjects.size());
+                break;
+            }
+
             String p6ProjectId = entry.getKey();
             String ebsProjectId = entry.getValue();
 
             // Get P6 financial data
-            Map<String, Object> p6ProjectSummary = getP6ProjectFinancials(
-                    p6ConnectionParams, p6ProjectId);
+            Map<String, Object> p6ProjectSummary = timer.time(SyncStageTimer.Stage.EXTRACT,
+                    () -> getP6ProjectFinancials(p6ConnectionParams, p6ProjectId));
 
             // Get EBS financial data
-            Map<String, Object> ebsFinancialSummary = ebsProjectService.getProjectFinancialSummary(
-                    ebsConnectionParams.get("server"),
-                    ebsConnectionParams.get("sid"),
-                    ebsConnectionParams.get("username"),
-                    ebsConnectionParams.get("password"),
-                    ebsProjectId);
+            Map<String, Object> ebsFinancialSummary = timer.time(SyncStageTimer.Stage.EXTRACT,
+                    () -> ebsProjectService.getProjectFinancialSummary(
+                            ebsConnectionParams.get("server"),
+                            ebsConnectionParams.get("sid"),
+                            ebsConnectionParams.get("username"),
+                            ebsConnectionParams.get("password"),
+                            ebsProjectId,
+                            cancellation));
+            timer.addRows(SyncStageTimer.Stage.EXTRACT, 2, SyncStageTimer.estimateBytes(p6ProjectSummary)
+                    + SyncStageTimer.estimateBytes(ebsFinancialSummary));
 
             // Transform data based on integration direction (P6 to EBS or EBS to P6)
-            Map<String, Object> transformedData = transformationService.transformFinancialData(
-                    p6ProjectSummary, ebsFinancialSummary, "P6_TO_EBS");
+            Map<String, Object> transformedData = timer.time(SyncStageTimer.Stage.TRANSFORM,
+                    () -> transformationService.transformFinancialData(
+                            p6ProjectSummary, ebsFinancialSummary, "P6_TO_EBS"));
+            timer.addRows(SyncStageTimer.Stage.TRANSFORM, 1, SyncStageTimer.estimateBytes(transformedData));
 
             // Update target system
-            boolean updateSuccess = updateProjectFinancials(
-                    ebsConnectionParams, ebsProjectId, transformedData);
+            boolean updateSuccess = timer.time(SyncStageTimer.Stage.LOAD,
+                    () -> updateProjectFinancials(ebsConnectionParams, ebsProjectId, transformedData));
 
             if (updateSuccess) {
+                timer.addRows(SyncStageTimer.Stage.LOAD, 1, SyncStageTimer.estimateBytes(transformedData));
                 updatedProjects++;
                 processedProjects.add(p6ProjectId);
+            } else {
+                failedProjects.add(p6ProjectId);
             }
         }
 
@@ -361,6 +928,7 @@ public class IntegrationService {
         result.put("totalProjects", projectMapping.size());
         result.put("updatedProjects", updatedProjects);
         result.put("processedProjects", processedProjects);
+        result.put("failedPartitions", failedProjects);
 
         return result;
     }
@@ -468,23 +1036,41 @@ public class IntegrationService {
     }
 
     /**
-     * Cancel ongoing integration
+     * Cancel all ongoing integrations. Runs stop at their next record boundary,
+     * and queries they are blocked in are cancelled on the database; each run
+     * then records and returns what it committed so far.
      */
     public boolean cancelIntegration() {
-        if (integrationInProgress.get()) {
-            logService.logInfo("Cancelling integration process");
-            activeIntegrations.clear();
-            integrationInProgress.set(false);
-            return true;
+        if (runningIntegrations.isEmpty()) {
+            return false;
         }
-        return false;
+
+        logService.logInfo("Cancelling integration process");
+        for (CancellationToken cancellation : runningIntegrations) {
+            cancellation.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Cancel the ongoing run that is processing an integration type
+     */
+    public boolean cancelIntegration(String integrationType) {
+        CancellationToken cancellation = activeIntegrations.get(integrationType);
+        if (cancellation == null) {
+            return false;
+        }
+
+        logService.logInfo("Cancelling integration of " + integrationType);
+        cancellation.cancel();
+        return true;
     }
 
     /**
      * Check if integration is in progress
      */
     public boolean isIntegrationInProgress() {
-        return integrationInProgress.get();
+        return !runningIntegrations.isEmpty();
     }
 
     /**
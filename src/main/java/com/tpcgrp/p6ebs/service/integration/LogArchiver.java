@@ -0,0 +1,219 @@
+/**
+ * Background compression and retention of integration log files
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses rolled log segments and deletes the oldest segments once the log
+ * directory passes its size budget, all on a background thread.
+ * Rolled data files are compressed in fixed-size blocks, each written as its own
+ * gzip member, with a block table of compressed offsets next to it. The result is
+ * still a valid .gz file, and {@link LogFileReader} can inflate just the block an
+ * index record points into instead of the whole segment.
+ * The total size of the log files is kept in a counter, so callers can report
+ * usage without walking the directory.
+ */
+@Slf4j
+public class LogArchiver {
+
+    // Uncompressed bytes per gzip member of a compressed segment
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    private static final long SWEEP_INTERVAL_MINUTES = 60;
+
+    private final Path directory;
+    private final long maxTotalBytes;
+    private final AtomicLong usageBytes = new AtomicLong();
+    private final ScheduledExecutorService executor;
+
+    // Segment the writer is appending to; never compressed or deleted
+    private volatile LogSegment activeSegment;
+
+    public LogArchiver(Path directory, long maxTotalBytes) {
+        this.directory = directory;
+        this.maxTotalBytes = maxTotalBytes;
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LogArchiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sweep, 0, SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Record the segment the writer has switched to
+     */
+    public void setActiveSegment(LogSegment segment) {
+        this.activeSegment = segment;
+    }
+
+    /**
+     * Compress the segments the writer has moved past and enforce retention, in the background
+     */
+    public void segmentRolled() {
+        executor.execute(this::sweep);
+    }
+
+    /**
+     * Account for bytes appended to the active segment
+     */
+    public void addUsage(long bytes) {
+        usageBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Total size of the log files
+     */
+    public long getUsageBytes() {
+        return usageBytes.get();
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    /**
+     * Stop background work; a compression in progress is finished first
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Compress every rolled segment, then delete the oldest segments while over budget
+     */
+    private void sweep() {
+        try {
+            List<LogSegment> segments = LogSegment.list(directory);
+
+            // Only segments with a newer segment after them can no longer be appended to
+            for (int i = 0; i < segments.size() - 1; i++) {
+                LogSegment segment = segments.get(i);
+                if (!segment.equals(activeSegment) && Files.exists(segment.getDataFile())) {
+                    compress(segment);
+                }
+            }
+
+            enforceRetention(segments);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Log archiving failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Replace a segment's data file by a block-compressed copy. The block table is
+     * moved into place last, so a segment only counts as compressed once both
+     * files are complete. A data file that cannot be deleted yet (e.g. still
+     * mapped by a reader on Windows) is deleted by a later sweep.
+     */
+    private void compress(LogSegment segment) throws IOException {
+        Path dataFile = segment.getDataFile();
+
+        if (!segment.isCompressed()) {
+            Path compressedTemp = Paths.get(segment.getCompressedFile() + ".tmp");
+            Path blockIndexTemp = Paths.get(segment.getBlockIndexFile() + ".tmp");
+
+            try (FileChannel in = FileChannel.open(dataFile, StandardOpenOption.READ);
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(compressedTemp));
+                 DataOutputStream blocks = new DataOutputStream(
+                         new BufferedOutputStream(Files.newOutputStream(blockIndexTemp)))) {
+
+                ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+                long compressedOffset = 0;
+                boolean endOfFile = false;
+
+                while (!endOfFile) {
+                    block.clear();
+                    while (block.hasRemaining()) {
+                        if (in.read(block) < 0) {
+                            endOfFile = true;
+                            break;
+                        }
+                    }
+                    if (block.position() == 0) {
+                        break;
+                    }
+
+                    ByteArrayOutputStream member = new ByteArrayOutputStream(block.position() / 4);
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(member)) {
+                        gzip.write(block.array(), 0, block.position());
+                    }
+
+                    blocks.writeLong(compressedOffset);
+                    member.writeTo(out);
+                    compressedOffset += member.size();
+                }
+            }
+
+            Files.move(compressedTemp, segment.getCompressedFile(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(blockIndexTemp, segment.getBlockIndexFile(), StandardCopyOption.REPLACE_EXISTING);
+
+            long originalSize = Files.size(dataFile);
+            long compressedSize = Files.size(segment.getCompressedFile()) + Files.size(segment.getBlockIndexFile());
+            usageBytes.addAndGet(compressedSize);
+            log.info("Compressed log segment {}: {} KB to {} KB",
+                    segment, originalSize / 1024, compressedSize / 1024);
+        }
+
+        try {
+            long size = Files.size(dataFile);
+            Files.delete(dataFile);
+            usageBytes.addAndGet(-size);
+        } catch (IOException e) {
+            log.debug("Could not delete compressed log file {} yet: {}", dataFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Recount the log directory and delete the oldest segments while it is over budget
+     */
+    private void enforceRetention(List<LogSegment> segments) throws IOException {
+        long total = 0;
+        for (LogSegment segment : segments) {
+            total += size(segment);
+        }
+
+        for (int i = 0; i < segments.size() - 1 && total > maxTotalBytes; i++) {
+            LogSegment segment = segments.get(i);
+            if (segment.equals(activeSegment)) {
+                continue;
+            }
+
+            long size = size(segment);
+            for (Path file : segment.getFiles()) {
+                Files.deleteIfExists(file);
+            }
+            total -= size;
+            log.info("Deleted log segment {} ({} KB) to keep logs within {} MB",
+                    segment, size / 1024, maxTotalBytes / (1024 * 1024));
+        }
+
+        usageBytes.set(total);
+    }
+
+    private long size(LogSegment segment) throws IOException {
+        long size = 0;
+        for (Path file : segment.getFiles()) {
+            size += Files.size(file);
+        }
+        return size;
+    }
+}
\ No newline at end of file
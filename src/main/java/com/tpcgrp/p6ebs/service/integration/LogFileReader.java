@@ -0,0 +1,429 @@
+/**
+ * Query access to the indexed integration log files
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Answers log queries from the files written by {@link LogFileWriter}, up to
+ * the committed end of the log. A time range is found by binary-searching the
+ * index of each segment it may touch; recent entries are read newest first. Level
+ * and session are filtered on the index records, and only matching entries are
+ * read from the data file and parsed. Segments compressed by {@link LogArchiver} are
+ * read by inflating only the blocks that hold matching entries.
+ * Files are read through channels that are closed when a segment is done, so a
+ * query never keeps the archiver from compressing or deleting a segment.
+ */
+@Slf4j
+public class LogFileReader {
+
+    // Index records read per file access
+    private static final int INDEX_WINDOW_RECORDS = 1024;
+
+    // Days of segments a recent-entries query looks back through for a sparse level
+    private static final int RECENT_LOOKBACK_DAYS = 7;
+
+    private final Path directory;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public LogFileReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Find entries in a time range
+     *
+     * @param from Start of the range (inclusive)
+     * @param to End of the range (inclusive)
+     * @param minLevel Lowest level to include
+     * @param sessionId Session to restrict to, or null for all sessions
+     * @param limit Maximum number of entries to return
+     * @param end Committed end of the log; later entries are left out
+     * @return Matching entries, oldest first
+     */
+    public List<IntegrationLogService.LogEntry> query(Date from, Date to, IntegrationLogService.LogLevel minLevel,
+                                                      String sessionId, int limit,
+                                                      LogFileWriter.LogPosition end) throws IOException {
+        List<IntegrationLogService.LogEntry> entries = new ArrayList<>();
+        long fromTime = from.getTime();
+        long toTime = to.getTime();
+
+        // An entry made just before midnight may be written to the next day's segment, and
+        // one made just after midnight to the previous day's
+        LocalDate firstDay = from.toInstant().atZone(zone).toLocalDate().minusDays(1);
+        LocalDate lastDay = to.toInstant().atZone(zone).toLocalDate().plusDays(1);
+
+        for (LogSegment segment : LogSegment.list(directory)) {
+            if (entries.size() >= limit || segment.getDate().isAfter(lastDay)
+                    || segment.compareTo(end.getSegment()) > 0) {
+                break;
+            }
+            if (segment.getDate().isBefore(firstDay)) {
+                continue;
+            }
+
+            long maxRecords = segment.equals(end.getSegment()) ? end.getRecords() : Long.MAX_VALUE;
+            try (SegmentLog opened = open(segment, maxRecords)) {
+                if (opened == null) {
+                    continue;
+                }
+                for (int record = opened.firstAtOrAfter(fromTime);
+                     record < opened.records && entries.size() < limit; record++) {
+                    if (opened.time(record) > toTime) {
+                        break;
+                    }
+                    addIfMatches(opened, record, minLevel, sessionId, entries);
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Find the most recent entries, going back through earlier segments until enough
+     * are found or the look-back window is exhausted
+     *
+     * @param minLevel Lowest level to include
+     * @param sessionId Session to restrict to, or null for all sessions
+     * @param limit Maximum number of entries to return
+     * @param end Committed end of the log; later entries are left out
+     * @return Matching entries, oldest first
+     */
+    public List<IntegrationLogService.LogEntry> recent(IntegrationLogService.LogLevel minLevel, String sessionId,
+                                                       int limit, LogFileWriter.LogPosition end) throws IOException {
+        List<IntegrationLogService.LogEntry> entries = new ArrayList<>();
+        LocalDate oldestDay = end.getSegment().getDate().minusDays(RECENT_LOOKBACK_DAYS);
+
+        List<LogSegment> segments = LogSegment.list(directory);
+        Collections.reverse(segments);
+
+        for (LogSegment segment : segments) {
+            if (entries.size() >= limit || segment.getDate().isBefore(oldestDay)) {
+                break;
+            }
+            if (segment.compareTo(end.getSegment()) > 0) {
+                continue;
+            }
+
+            long maxRecords = segment.equals(end.getSegment()) ? end.getRecords() : Long.MAX_VALUE;
+            try (SegmentLog opened = open(segment, maxRecords)) {
+                if (opened == null) {
+                    continue;
+                }
+                for (int record = opened.records - 1; record >= 0 && entries.size() < limit; record--) {
+                    addIfMatches(opened, record, minLevel, sessionId, entries);
+                }
+            }
+        }
+
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    private void addIfMatches(SegmentLog opened, int record, IntegrationLogService.LogLevel minLevel,
+                              String sessionId, List<IntegrationLogService.LogEntry> entries) throws IOException {
+        if (opened.level(record) < minLevel.ordinal()) {
+            return;
+        }
+        if (sessionId != null && opened.sessionHash(record) != LogFileWriter.sessionHash(sessionId)) {
+            return;
+        }
+
+        IntegrationLogService.LogEntry entry = opened.read(record);
+        if (entry != null && (sessionId == null || sessionId.equals(entry.getSessionId()))) {
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Open the index and data of a segment; the index size is taken first so every
+     * record it covers points at data that is already in the file
+     */
+    private SegmentLog open(LogSegment segment, long maxRecords) throws IOException {
+        FileChannel index;
+        try {
+            index = FileChannel.open(segment.getIndexFile(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try {
+            int records = (int) Math.min(index.size() / LogFileWriter.INDEX_RECORD_SIZE, maxRecords);
+            if (records == 0) {
+                index.close();
+                return null;
+            }
+
+            // The archiver may replace the data file between the checks; the compressed copy is complete once it exists
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try {
+                    LogData data = segment.isCompressed()
+                            ? new CompressedData(segment)
+                            : new PlainData(FileChannel.open(segment.getDataFile(), StandardOpenOption.READ));
+                    return new SegmentLog(index, data, records);
+                } catch (NoSuchFileException e) {
+                    // Compressed and deleted since the check; try again as compressed
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw e;
+        }
+
+        index.close();
+        return null;
+    }
+
+    /**
+     * Parse a JSON line back into a log entry
+     */
+    @SuppressWarnings("unchecked")
+    private IntegrationLogService.LogEntry parse(byte[] json) {
+        try {
+            Map<String, Object> fields = objectMapper.readValue(json, Map.class);
+
+            IntegrationLogService.LogEntry entry = new IntegrationLogService.LogEntry();
+            entry.setTimestamp(Date.from(OffsetDateTime.parse((String) fields.get("timestamp")).toInstant()));
+            entry.setLevel(IntegrationLogService.LogLevel.valueOf((String) fields.get("level")));
+            entry.setSessionId((String) fields.get("sessionId"));
+            entry.setMessage((String) fields.get("message"));
+            entry.setException((String) fields.get("exception"));
+            entry.setStackTrace((String) fields.get("stackTrace"));
+            entry.markWritten();
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Skipping unreadable log entry: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Read bytes at a position of a channel, stopping early at the end of the file
+     */
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                break;
+            }
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * An open segment: its index, read a window of records at a time, and its data
+     */
+    private class SegmentLog implements Closeable {
+        private final FileChannel index;
+        private final LogData data;
+        private final int records;
+        private final ByteBuffer window = ByteBuffer.allocate(INDEX_WINDOW_RECORDS * LogFileWriter.INDEX_RECORD_SIZE);
+        private final ByteBuffer probe = ByteBuffer.allocate(Long.BYTES);
+        private int windowStart = Integer.MAX_VALUE; // Nothing loaded yet; the first read loads back from its record
+        private int windowRecords;
+
+        private SegmentLog(FileChannel index, LogData data, int records) {
+            this.index = index;
+            this.data = data;
+            this.records = records;
+        }
+
+        private int sessionHash(int record) throws IOException {
+            return window.getInt(base(record) + LogFileWriter.INDEX_SESSION);
+        }
+
+        private int level(int record) throws IOException {
+            return window.get(base(record) + LogFileWriter.INDEX_LEVEL);
+        }
+
+        private long time(int record) throws IOException {
+            return window.getLong(base(record) + LogFileWriter.INDEX_TIME);
+        }
+
+        /**
+         * Binary search for the first record at or after a time; index times never
+         * decrease within a segment. Probes read single times rather than windows.
+         */
+        private int firstAtOrAfter(long time) throws IOException {
+            int low = 0;
+            int high = records;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                probe.clear();
+                long position = (long) mid * LogFileWriter.INDEX_RECORD_SIZE + LogFileWriter.INDEX_TIME;
+                if (readFully(index, probe, position) < Long.BYTES) {
+                    throw new IOException("Log index ends before record " + mid);
+                }
+                if (probe.getLong(0) < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Offset of a record in the window, loading a new window if needed: the one
+         * starting at the record when reading forward past the window, the one ending
+         * at it when reading back before it
+         */
+        private int base(int record) throws IOException {
+            if (record < windowStart || record >= windowStart + windowRecords) {
+                windowStart = record < windowStart ? Math.max(0, record - INDEX_WINDOW_RECORDS + 1) : record;
+                window.clear();
+                window.limit(Math.min(INDEX_WINDOW_RECORDS, records - windowStart) * LogFileWriter.INDEX_RECORD_SIZE);
+                windowRecords = readFully(index, window, (long) windowStart * LogFileWriter.INDEX_RECORD_SIZE)
+                        / LogFileWriter.INDEX_RECORD_SIZE;
+                if (record >= windowStart + windowRecords) {
+                    throw new IOException("Log index ends before record " + record);
+                }
+            }
+            return (record - windowStart) * LogFileWriter.INDEX_RECORD_SIZE;
+        }
+
+        private IntegrationLogService.LogEntry read(int record) throws IOException {
+            int base = base(record);
+            long offset = window.getLong(base + LogFileWriter.INDEX_OFFSET);
+            int length = window.getInt(base + LogFileWriter.INDEX_LENGTH);
+
+            try {
+                byte[] json = data.read(offset, length);
+                return json != null ? parse(json) : null;
+            } catch (IOException e) {
+                log.warn("Skipping unreadable log entry: {}", e.getMessage());
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                data.close();
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Entry bytes of a segment's data, by offset and length in the uncompressed data
+     */
+    private interface LogData extends Closeable {
+        byte[] read(long offset, int length) throws IOException;
+    }
+
+    /**
+     * A plain data file
+     */
+    private static class PlainData implements LogData {
+        private final FileChannel data;
+
+        private PlainData(FileChannel data) {
+            this.data = data;
+        }
+
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            return readFully(data, bytes, offset) == length ? bytes.array() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+
+    /**
+     * A block-compressed data file; each block is a separate gzip member found
+     * through the block table, and the last inflated block is kept for the next
+     * read since matching entries tend to be close together
+     */
+    private static class CompressedData implements LogData {
+        private final FileChannel compressed;
+        private final long compressedSize;
+        private final long[] blockOffsets;
+        private int cachedBlock = -1;
+        private byte[] cachedBytes;
+
+        private CompressedData(LogSegment segment) throws IOException {
+            try (FileChannel blocks = FileChannel.open(segment.getBlockIndexFile(), StandardOpenOption.READ)) {
+                ByteBuffer table = ByteBuffer.allocate((int) blocks.size());
+                readFully(blocks, table, 0);
+                table.flip();
+
+                blockOffsets = new long[table.remaining() / Long.BYTES];
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    blockOffsets[i] = table.getLong();
+                }
+            }
+            compressed = FileChannel.open(segment.getCompressedFile(), StandardOpenOption.READ);
+            compressedSize = compressed.size();
+        }
+
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int filled = 0;
+
+            // An entry may continue into the following block
+            while (filled < length) {
+                long position = offset + filled;
+                byte[] block = block((int) (position / LogArchiver.BLOCK_SIZE));
+                int start = (int) (position % LogArchiver.BLOCK_SIZE);
+                if (block == null || start >= block.length) {
+                    return null;
+                }
+
+                int count = Math.min(length - filled, block.length - start);
+                System.arraycopy(block, start, bytes, filled, count);
+                filled += count;
+            }
+            return bytes;
+        }
+
+        private byte[] block(int block) throws IOException {
+            if (block >= blockOffsets.length) {
+                return null;
+            }
+            if (block != cachedBlock) {
+                long start = blockOffsets[block];
+                long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : compressedSize;
+
+                ByteBuffer member = ByteBuffer.allocate((int) (end - start));
+                readFully(compressed, member, start);
+
+                try (GZIPInputStream in = new GZIPInputStream(
+                        new ByteArrayInputStream(member.array(), 0, member.position()))) {
+                    cachedBytes = in.readAllBytes();
+                }
+                cachedBlock = block;
+            }
+            return cachedBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            compressed.close();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,494 @@
+/**
+ * Background writer for integration log files
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes log entries as JSON lines from a dedicated thread, together with a sidecar
+ * index of fixed-size records that {@link LogFileReader} searches by time, level and
+ * session. Files are split into {@link LogSegment}s per day, and a segment rolls to
+ * the next once its data passes a size limit; rolled segments are handed to the
+ * {@link LogArchiver} for compression and retention.
+ * The files stay open between writes; entries are encoded into reusable direct
+ * buffers and committed as a group once the data buffer passes a size threshold
+ * or the oldest buffered entry passes a time threshold. Data is forced to disk
+ * before the index records that point at it, and reopening a file truncates any
+ * data past the last indexed entry, so a group is either fully visible or absent.
+ * Entries of a group that fails to write are put back at the head of the queue
+ * and retried after a delay, so a temporary I/O failure does not lose logs.
+ */
+@Slf4j
+public class LogFileWriter {
+
+    // Index record layout: time, data offset, data length, session hash, level
+    static final int INDEX_RECORD_SIZE = 32;
+    static final int INDEX_TIME = 0;
+    static final int INDEX_OFFSET = 8;
+    static final int INDEX_LENGTH = 16;
+    static final int INDEX_SESSION = 20;
+    static final int INDEX_LEVEL = 24;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INDEX_BUFFER_SIZE = 1024 * INDEX_RECORD_SIZE;
+    private static final int COMMIT_BYTES = 32 * 1024;
+    private static final long COMMIT_INTERVAL_MILLIS = 1000;
+    private static final long RETRY_DELAY_MILLIS = 5000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+    private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+    private final Path directory;
+    private final LogArchiver archiver;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final BlockingDeque<IntegrationLogService.LogEntry> queue = new LinkedBlockingDeque<>();
+    private final Object commitLock = new Object();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    // Writer thread state
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect(INDEX_BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder(256);
+    private final List<IntegrationLogService.LogEntry> buffered = new ArrayList<>();
+    private long commitDeadline;
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private LogSegment segment;
+    private LocalDate segmentDate;
+    private long dataPosition;
+    private long lastIndexTime;
+
+    // End of the committed log, guarded by commitLock
+    private LogSegment committedSegment;
+    private long committedRecords;
+
+    public LogFileWriter(Path directory, LogArchiver archiver) {
+        this.directory = directory;
+        this.archiver = archiver;
+
+        writerThread = new Thread(this::run, "LogFileWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queue an entry for writing
+     */
+    public void write(IntegrationLogService.LogEntry entry) {
+        queue.add(entry);
+    }
+
+    /**
+     * Write all queued entries and close the files.
+     * The writer thread is not interrupted, since an interrupt during a
+     * channel write would close the channel and lose the group.
+     */
+    public void close() {
+        running = false;
+
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run a snapshot of the pending entries while no group is being committed, and
+     * return the end of the committed log at that moment. Reading the files up to
+     * that end and adding the snapshot gives every entry exactly once, without
+     * holding up commits while the files are read.
+     */
+    public LogPosition atCommitBoundary(Runnable snapshot) throws IOException {
+        synchronized (commitLock) {
+            snapshot.run();
+            if (committedSegment != null) {
+                return new LogPosition(committedSegment, committedRecords);
+            }
+
+            // Nothing opened yet: the first commit appends to the current segment of today
+            LogSegment current = LogSegment.current(directory, LocalDate.now(zone));
+            long indexSize = Files.exists(current.getIndexFile()) ? Files.size(current.getIndexFile()) : 0;
+            return new LogPosition(current, indexSize / INDEX_RECORD_SIZE);
+        }
+    }
+
+    static int sessionHash(String sessionId) {
+        return sessionId != null ? sessionId.hashCode() : 0;
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                long wait = buffered.isEmpty()
+                        ? COMMIT_INTERVAL_MILLIS
+                        : Math.max(0, commitDeadline - System.currentTimeMillis());
+
+                IntegrationLogService.LogEntry entry = queue.poll(wait, TimeUnit.MILLISECONDS);
+                while (entry != null) {
+                    try {
+                        append(entry);
+                    } catch (IOException e) {
+                        if (!buffered.contains(entry)) {
+                            queue.addFirst(entry);
+                        }
+                        throw e;
+                    }
+                    entry = buffer.position() < COMMIT_BYTES ? queue.poll() : null;
+                }
+
+                if (buffer.position() >= COMMIT_BYTES
+                        || (!buffered.isEmpty() && System.currentTimeMillis() >= commitDeadline)) {
+                    commit();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                log.error("Failed to write to log file, retrying in {} ms", RETRY_DELAY_MILLIS, e);
+                requeueBuffered();
+                closeChannels();
+                if (!running) {
+                    break;
+                }
+                pause(RETRY_DELAY_MILLIS);
+            }
+        }
+
+        try {
+            commit();
+        } catch (IOException e) {
+            log.error("Failed to write {} log entries on shutdown", buffered.size(), e);
+        }
+        closeChannels();
+
+        if (!queue.isEmpty()) {
+            log.error("Discarded {} unwritten log entries on shutdown", queue.size());
+        }
+    }
+
+    /**
+     * Encode an entry and its index record into the buffers, committing first
+     * if it belongs to a later day's file or does not fit. Entries dated before
+     * the current day stay in the current segment, since the segments before it
+     * may already be compressed.
+     */
+    private void append(IntegrationLogService.LogEntry entry) throws IOException {
+        Instant timestamp = entry.getTimestamp().toInstant();
+        LocalDate date = timestamp.atZone(zone).toLocalDate();
+
+        if (segmentDate == null || date.isAfter(segmentDate)) {
+            // Midnight rollover: finish the previous day's group and switch files
+            commit();
+            open(LogSegment.current(directory, date));
+            segmentDate = date;
+        } else if (dataChannel == null) {
+            // Reopen after a failed write
+            open(LogSegment.current(directory, segmentDate));
+        }
+
+        line.setLength(0);
+        formatLogEntry(entry, timestamp);
+
+        if (indexBuffer.remaining() < INDEX_RECORD_SIZE) {
+            commit();
+        }
+
+        int start = buffer.position();
+        if (!encode(line)) {
+            commit();
+            start = 0;
+            if (!encode(line)) {
+                // Larger than the whole buffer: write it on its own
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                buffered.add(entry);
+                putIndexRecord(entry, timestamp, dataPosition, bytes.length);
+                commit(ByteBuffer.wrap(bytes));
+                return;
+            }
+        }
+
+        if (buffered.isEmpty()) {
+            commitDeadline = System.currentTimeMillis() + COMMIT_INTERVAL_MILLIS;
+        }
+        putIndexRecord(entry, timestamp, dataPosition + start, buffer.position() - start);
+        buffered.add(entry);
+    }
+
+    /**
+     * Format a log entry as a single JSON line
+     */
+    private void formatLogEntry(IntegrationLogService.LogEntry entry, Instant timestamp) {
+        line.append("{\"timestamp\":\"").append(TIMESTAMP_FORMAT.format(timestamp.atZone(zone))).append('"');
+        line.append(",\"level\":\"").append(entry.getLevel()).append('"');
+        appendField("sessionId", entry.getSessionId());
+        appendField("message", entry.getMessage());
+        appendField("exception", entry.getException());
+        appendField("stackTrace", entry.getStackTrace());
+        line.append("}\n");
+    }
+
+    private void appendField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Add an index record; times are kept non-decreasing within a file so the
+     * index can be binary-searched even when entries arrive slightly out of order
+     */
+    private void putIndexRecord(IntegrationLogService.LogEntry entry, Instant timestamp, long offset, int length) {
+        lastIndexTime = Math.max(lastIndexTime, timestamp.toEpochMilli());
+
+        int start = indexBuffer.position();
+        indexBuffer.putLong(lastIndexTime);
+        indexBuffer.putLong(offset);
+        indexBuffer.putInt(length);
+        indexBuffer.putInt(sessionHash(entry.getSessionId()));
+        indexBuffer.put((byte) entry.getLevel().ordinal());
+        indexBuffer.position(start + INDEX_RECORD_SIZE);
+    }
+
+    /**
+     * Encode characters into the buffer; leaves the buffer untouched if they do not fit
+     */
+    private boolean encode(CharSequence chars) {
+        int start = buffer.position();
+
+        encoder.reset();
+        CharBuffer in = CharBuffer.wrap(chars);
+        CoderResult result = encoder.encode(in, buffer, true);
+        if (!result.isOverflow()) {
+            result = encoder.flush(buffer);
+        }
+
+        if (result.isOverflow()) {
+            buffer.position(start);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Commit the buffered group
+     */
+    private void commit() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+
+        buffer.flip();
+        commit(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Write a group's data and then its index records, forcing each to disk,
+     * and roll to the next segment once the data passes the size limit
+     */
+    private void commit(ByteBuffer data) throws IOException {
+        long length = data.remaining();
+        long indexLength = indexBuffer.position();
+
+        synchronized (commitLock) {
+            while (data.hasRemaining()) {
+                dataChannel.write(data);
+            }
+            dataChannel.force(false);
+
+            indexBuffer.flip();
+            while (indexBuffer.hasRemaining()) {
+                indexChannel.write(indexBuffer);
+            }
+            indexChannel.force(false);
+            indexBuffer.clear();
+
+            dataPosition += length;
+            committedRecords += indexLength / INDEX_RECORD_SIZE;
+            for (IntegrationLogService.LogEntry entry : buffered) {
+                entry.markWritten();
+            }
+            buffered.clear();
+        }
+
+        archiver.addUsage(length + indexLength);
+        if (dataPosition >= MAX_SEGMENT_BYTES) {
+            open(segment.next());
+        }
+    }
+
+    /**
+     * Open the data and index files of a segment for appending. Index records that point
+     * past the end of the data are dropped, and data past the last indexed entry
+     * (a group whose index never made it to disk) is truncated.
+     */
+    private void open(LogSegment next) throws IOException {
+        closeChannels();
+
+        // Mark the segment active before creating its files, so it is never archived
+        boolean rolled = segment != null && !segment.equals(next);
+        segment = next;
+        archiver.setActiveSegment(next);
+
+        FileChannel data = FileChannel.open(next.getDataFile(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel index = null;
+
+        try {
+            index = FileChannel.open(next.getIndexFile(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            long records = index.size() / INDEX_RECORD_SIZE;
+            long dataEnd = 0;
+            long indexTime = 0;
+
+            ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+            while (records > 0) {
+                record.clear();
+                long position = (records - 1) * INDEX_RECORD_SIZE;
+                while (record.hasRemaining() && index.read(record, position + record.position()) >= 0) {
+                    // Read the whole record
+                }
+
+                long end = record.getLong(INDEX_OFFSET) + record.getInt(INDEX_LENGTH);
+                if (end <= data.size()) {
+                    dataEnd = end;
+                    indexTime = record.getLong(INDEX_TIME);
+                    break;
+                }
+                records--;
+            }
+
+            index.truncate(records * INDEX_RECORD_SIZE);
+            index.position(records * INDEX_RECORD_SIZE);
+            data.truncate(dataEnd);
+            data.position(dataEnd);
+
+            dataChannel = data;
+            indexChannel = index;
+            dataPosition = dataEnd;
+            lastIndexTime = indexTime;
+            synchronized (commitLock) {
+                committedSegment = next;
+                committedRecords = records;
+            }
+        } catch (IOException e) {
+            data.close();
+            if (index != null) {
+                index.close();
+            }
+            throw e;
+        }
+
+        if (rolled) {
+            archiver.segmentRolled();
+        }
+    }
+
+    /**
+     * Put the entries of a failed group back at the head of the queue, in order
+     */
+    private void requeueBuffered() {
+        for (int i = buffered.size() - 1; i >= 0; i--) {
+            queue.addFirst(buffered.get(i));
+        }
+        buffered.clear();
+        buffer.clear();
+        indexBuffer.clear();
+    }
+
+    private void closeChannels() {
+        for (FileChannel channel : new FileChannel[] {dataChannel, indexChannel}) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close log file: {}", e.getMessage());
+                }
+            }
+        }
+        dataChannel = null;
+        indexChannel = null;
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * End of the committed log: a segment and the number of index records committed to it
+     */
+    public static class LogPosition {
+        private final LogSegment segment;
+        private final long records;
+
+        public LogPosition(LogSegment segment, long records) {
+            this.segment = segment;
+            this.records = records;
+        }
+
+        public LogSegment getSegment() { return segment; }
+        public long getRecords() { return records; }
+    }
+}
\ No newline at end of file
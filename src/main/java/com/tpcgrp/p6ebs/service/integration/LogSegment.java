@@ -0,0 +1,185 @@
+/**
+ * Naming of the integration log files
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * One segment of a day's log. A day starts with segment 0 and rolls to the next
+ * number once the data file passes its size limit. Each segment has a JSON-lines
+ * data file and an index file; once rolled, the data file is replaced by a
+ * block-compressed copy and its block table.
+ * <pre>
+ * integration_20240101.jsonl      data of segment 0
+ * integration_20240101.idx        index of segment 0
+ * integration_20240101.1.jsonl.gz compressed data of segment 1
+ * integration_20240101.1.gzi      block table of segment 1
+ * integration_20240101.log        plain-text log written by earlier versions
+ * </pre>
+ */
+public class LogSegment implements Comparable<LogSegment> {
+
+    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String FILE_PREFIX = "integration_";
+
+    private final Path directory;
+    private final LocalDate date;
+    private final int number;
+
+    public LogSegment(Path directory, LocalDate date, int number) {
+        this.directory = directory;
+        this.date = date;
+        this.number = number;
+    }
+
+    /**
+     * Parse the segment a log file belongs to; null if it is not a log file
+     */
+    public static LogSegment parse(Path directory, String fileName) {
+        if (!fileName.startsWith(FILE_PREFIX) || fileName.length() < FILE_PREFIX.length() + 9
+                || fileName.charAt(FILE_PREFIX.length() + 8) != '.') {
+            return null;
+        }
+
+        LocalDate date;
+        try {
+            date = LocalDate.parse(fileName.substring(FILE_PREFIX.length(), FILE_PREFIX.length() + 8),
+                    FILE_DATE_FORMAT);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        // Either ".<extension>" for segment 0 or ".<number>.<extension>"
+        String rest = fileName.substring(FILE_PREFIX.length() + 9);
+        int dot = rest.indexOf('.');
+        int number = 0;
+        if (dot > 0) {
+            try {
+                number = Integer.parseInt(rest.substring(0, dot));
+            } catch (NumberFormatException e) {
+                number = 0;
+            }
+        }
+        return new LogSegment(directory, date, number);
+    }
+
+    /**
+     * List every segment in a directory, oldest first
+     */
+    public static List<LogSegment> list(Path directory) throws IOException {
+        Set<LogSegment> segments = new TreeSet<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> parse(directory, file.getFileName().toString()))
+                    .filter(Objects::nonNull)
+                    .forEach(segments::add);
+        }
+
+        return new ArrayList<>(segments);
+    }
+
+    /**
+     * Get the segment new entries of a day are appended to: the newest segment of
+     * the day unless it has already been compressed
+     */
+    public static LogSegment current(Path directory, LocalDate date) throws IOException {
+        LogSegment latest = new LogSegment(directory, date, 0);
+
+        for (LogSegment segment : list(directory)) {
+            if (segment.getDate().equals(date) && segment.getNumber() > latest.getNumber()) {
+                latest = segment;
+            }
+        }
+
+        return latest.isCompressed() ? latest.next() : latest;
+    }
+
+    /**
+     * The segment that follows this one on the same day
+     */
+    public LogSegment next() {
+        return new LogSegment(directory, date, number + 1);
+    }
+
+    public Path getDataFile() {
+        return file(".jsonl");
+    }
+
+    public Path getIndexFile() {
+        return file(".idx");
+    }
+
+    public Path getCompressedFile() {
+        return file(".jsonl.gz");
+    }
+
+    public Path getBlockIndexFile() {
+        return file(".gzi");
+    }
+
+    /**
+     * Whether the data file has been replaced by its compressed copy
+     */
+    public boolean isCompressed() {
+        return Files.exists(getBlockIndexFile()) && Files.exists(getCompressedFile());
+    }
+
+    /**
+     * Every file of this segment that exists, including a plain-text log of an earlier version
+     */
+    public List<Path> getFiles() {
+        List<Path> files = new ArrayList<>();
+        for (Path file : new Path[] {getDataFile(), getIndexFile(), getCompressedFile(), getBlockIndexFile(),
+                number == 0 ? file(".log") : null}) {
+            if (file != null && Files.exists(file)) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private Path file(String extension) {
+        return directory.resolve(FILE_PREFIX + FILE_DATE_FORMAT.format(date)
+                + (number > 0 ? "." + number : "") + extension);
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    @Override
+    public int compareTo(LogSegment other) {
+        int byDate = date.compareTo(other.date);
+        return byDate != 0 ? byDate : Integer.compare(number, other.number);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof LogSegment)) {
+            return false;
+        }
+        LogSegment segment = (LogSegment) other;
+        return date.equals(segment.date) && number == segment.number && directory.equals(segment.directory);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(directory, date, number);
+    }
+
+    @Override
+    public String toString() {
+        return FILE_PREFIX + FILE_DATE_FORMAT.format(date) + (number > 0 ? "." + number : "");
+    }
+}
\ No newline at end of file
@@ -3,14 +3,22 @@
  */
 package com.tpcgrp.p6ebs.service.integration;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 @Component
 @Slf4j
@@ -22,10 +30,16 @@ public class MappingUtility {
     // Store correlations between P6 and EBS IDs
     private final Map<String, Map<String, String>> idCorrelationStore = new ConcurrentHashMap<>();
 
+    // Hashes of the content last written to each target entity, by entity type and target key
+    private final Map<String, Map<String, String>> contentHashStore = new ConcurrentHashMap<>();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     // Constructor with initialization of field mappings
     public MappingUtility() {
         initializeFieldMappings();
         loadIdCorrelations();
+        loadContentHashes();
     }
 
     /**
@@ -112,6 +126,43 @@ public class MappingUtility {
         }
     }
 
+    /**
+     * Load the hashes of last-written content from storage
+     */
+    private void loadContentHashes() {
+        try {
+            Path hashFile = Paths.get(System.getProperty("user.home"), ".p6ebs", "content_hashes.json");
+            if (Files.exists(hashFile)) {
+                Map<String, Map<String, String>> stored = objectMapper.readValue(hashFile.toFile(),
+                        new TypeReference<Map<String, Map<String, String>>>() {});
+                for (Map.Entry<String, Map<String, String>> entry : stored.entrySet()) {
+                    contentHashStore.put(entry.getKey(), new ConcurrentHashMap<>(entry.getValue()));
+                }
+                log.info("Loaded content hashes from file");
+            }
+        } catch (Exception e) {
+            // Without hashes every record is written once more, which is safe
+            log.error("Failed to load content hashes", e);
+        }
+    }
+
+    /**
+     * Save the hashes of last-written content to storage
+     */
+    public synchronized void saveContentHashes() {
+        try {
+            Path directory = Paths.get(System.getProperty("user.home"), ".p6ebs");
+            Files.createDirectories(directory);
+
+            Path hashFile = directory.resolve("content_hashes.json");
+            Path temp = directory.resolve("content_hashes.json.tmp");
+            objectMapper.writeValue(temp.toFile(), contentHashStore);
+            Files.move(temp, hashFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to save content hashes", e);
+        }
+    }
+
     /**
      * Map field values from P6 to EBS based on entity type
      */
@@ -301,4 +352,69 @@ public class MappingUtility {
     public void clearCorrelations() {
         idCorrelationStore.clear();
     }
+
+    /**
+     * Check if a payload is what was last written to a target entity, so
+     * writing it again would change nothing. The target itself is not read:
+     * an edit made to it directly since the last write goes unnoticed.
+     */
+    public boolean isUnchangedSinceLastWrite(String entityType, String targetKey, Map<String, Object> payload) {
+        Map<String, String> hashes = contentHashStore.get(entityType);
+        String lastHash = hashes != null ? hashes.get(targetKey) : null;
+        return lastHash != null && lastHash.equals(contentHash(payload));
+    }
+
+    /**
+     * Store the hash of a payload once it has been written to a target entity
+     */
+    public void storeContentHash(String entityType, String targetKey, Map<String, Object> payload) {
+        contentHashStore.computeIfAbsent(entityType, k -> new ConcurrentHashMap<>())
+                .put(targetKey, contentHash(payload));
+    }
+
+    /**
+     * Clear all stored content hashes, so that every record is written again
+     */
+    public void clearContentHashes() {
+        contentHashStore.clear();
+    }
+
+    /**
+     * Compact hash of a payload: the first 64 bits of a SHA-256 digest over its
+     * fields in name order. Dates hash by instant and numbers by value, so the
+     * same content read back with other types hashes the same.
+     */
+    static String contentHash(Map<String, Object> payload) {
+        StringBuilder canonical = new StringBuilder();
+        for (Map.Entry<String, Object> field : new TreeMap<>(payload).entrySet()) {
+            canonical.append(field.getKey()).append('=');
+            Object value = field.getValue();
+            if (value == null) {
+                canonical.append('\0');
+            } else if (value instanceof Date) {
+                canonical.append(((Date) value).getTime());
+            } else if (value instanceof Number) {
+                try {
+                    canonical.append(new BigDecimal(value.toString()).stripTrailingZeros().toPlainString());
+                } catch (NumberFormatException e) {
+                    canonical.append(value); // NaN or infinite
+                }
+            } else {
+                canonical.append(value);
+            }
+            canonical.append('\u001f');
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hash.append(String.format("%02x", digest[i]));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
 }
\ No newline at end of file
@@ -166,6 +166,10 @@ public class ReportGenerator {
                         writer.write("  Entities updated: " + record.getEntitiesUpdated() + "\n");
                         writer.write("  Entities failed: " + record.getEntitiesFailed() + "\n");
 
+                        if (record.getStageTimings() != null && !record.getStageTimings().isEmpty()) {
+                            writer.write("  Stages: " + SyncStageTimer.describe(record.getStageTimings()) + "\n");
+                        }
+
                         if (record.getErrorMessage() != null) {
                             writer.write("  Error: " + record.getErrorMessage() + "\n");
                         }
@@ -181,6 +185,7 @@ public class ReportGenerator {
                 int totalRuns = history.size();
                 int successfulRuns = 0;
                 int failedRuns = 0;
+                int cancelledRuns = 0;
                 int totalEntitiesProcessed = 0;
                 int totalEntitiesUpdated = 0;
                 long totalDuration = 0;
@@ -188,6 +193,8 @@ public class ReportGenerator {
                 for (SynchronizationManager.SyncRecord record : history) {
                     if ("COMPLETED".equals(record.getStatus())) {
                         successfulRuns++;
+                    } else if ("CANCELLED".equals(record.getStatus())) {
+                        cancelledRuns++;
                     } else {
                         failedRuns++;
                     }
@@ -200,6 +207,7 @@ public class ReportGenerator {
                 writer.write("Total runs: " + totalRuns + "\n");
                 writer.write("Successful runs: " + successfulRuns + "\n");
                 writer.write("Failed runs: " + failedRuns + "\n");
+                writer.write("Cancelled runs: " + cancelledRuns + "\n");
                 writer.write("Success rate: " + (totalRuns > 0 ? (successfulRuns * 100 / totalRuns) : 0) + "%\n");
                 writer.write("Total entities processed: " + totalEntitiesProcessed + "\n");
                 writer.write("Total entities updated: " + totalEntitiesUpdated + "\n");
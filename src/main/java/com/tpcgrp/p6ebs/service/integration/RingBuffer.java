@@ -0,0 +1,106 @@
+/**
+ * Fixed-capacity lock-free buffer of the most recent items
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the last {@code capacity} items added by any number of threads.
+ * Writers claim a sequence number with a single atomic increment and publish
+ * into their slot, overwriting the oldest item; no writer ever waits on another.
+ * Readers take a consistent snapshot by skipping slots that were not yet
+ * published or were overwritten while the snapshot was being taken.
+ */
+public class RingBuffer<T> {
+
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final int mask;
+
+    /**
+     * @param capacity Maximum number of items kept, rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Add an item, overwriting the oldest one once the buffer is full
+     */
+    public void add(T item) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.lazySet((int) (sequence & mask), new Slot<>(sequence, item));
+    }
+
+    /**
+     * Get the buffered items, oldest first
+     */
+    public List<T> snapshot() {
+        return snapshot(item -> true);
+    }
+
+    /**
+     * Get the buffered items matching a filter, oldest first
+     */
+    public List<T> snapshot(Predicate<? super T> filter) {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - slots.length());
+
+        List<T> items = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Slot<T> slot = slots.get((int) (sequence & mask));
+            if (slot != null && slot.sequence == sequence && filter.test(slot.item)) {
+                items.add(slot.item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Get the buffered items, newest first
+     */
+    public List<T> newestFirst(int limit) {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - Math.min(limit, slots.length()));
+
+        List<T> items = new ArrayList<>((int) (end - start));
+        for (long sequence = end - 1; sequence >= start; sequence--) {
+            Slot<T> slot = slots.get((int) (sequence & mask));
+            if (slot != null && slot.sequence == sequence) {
+                items.add(slot.item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Total number of items ever added
+     */
+    public long getAddedCount() {
+        return nextSequence.get();
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * An item tagged with the sequence number it was written under
+     */
+    private static class Slot<T> {
+        private final long sequence;
+        private final T item;
+
+        private Slot(long sequence, T item) {
+            this.sequence = sequence;
+            this.item = item;
+        }
+    }
+}
\ No newline at end of file
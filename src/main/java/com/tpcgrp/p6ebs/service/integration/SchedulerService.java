@@ -8,20 +8,51 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Schedules are kept by a single trigger thread, which only hands due jobs to a
+ * pool of worker threads, so a long run never delays another job's trigger.
+ * Queued jobs start in priority order, then in the order they were triggered.
+ * Each job (an integration type, or an entity type's reconciliation) runs at most
+ * once at a time, since a second run of an integration type would find the type
+ * already claimed. A trigger that arrives while the job is already queued is
+ * absorbed by the queued run; one that arrives while the job is running is
+ * coalesced into a single follow-up run after the current one.
+ * In change-probe mode, a probe job also runs every few minutes and triggers the
+ * integration types whose source tables changed.
+ * Jobs run either at a fixed interval or on a cron schedule. No scheduled run
+ * starts within a blackout window, and each is delayed by a random jitter so
+ * jobs due at the same moment do not all start at once. A cron job whose runs
+ * were missed while the application was down is run once on startup.
+ */
 @Service
 @Slf4j
 public class SchedulerService {
 
+    private static final String CHANGE_PROBE_JOB = "changeProbe";
+
     private final IntegrationService integrationService;
     private final ConfigurationManager configManager;
     private final IntegrationLogService logService;
     private final SynchronizationManager syncManager;
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SchedulerTrigger");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ThreadPoolExecutor workers;
     private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
+    private final Map<String, CronTask> cronTasks = new ConcurrentHashMap<>();
+    private final Map<String, JobState> jobStates = new ConcurrentHashMap<>();
+    private final AtomicLong triggerSequence = new AtomicLong();
+    private final ChangeProbe changeProbe;
 
     @Autowired
     public SchedulerService(IntegrationService integrationService,
@@ -33,20 +64,92 @@ public class SchedulerService {
         this.logService = logService;
         this.syncManager = syncManager;
 
+        AtomicInteger workerNumber = new AtomicInteger();
+        int workerCount = configManager.getSchedulerWorkers();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "SchedulerWorker-" + workerNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.changeProbe = new ChangeProbe(configManager, syncManager);
+
         // Initialize scheduled tasks
         initializeScheduledTasks();
+        initializeChangeProbe();
     }
 
     /**
      * Initialize scheduled tasks based on configuration
      */
     private void initializeScheduledTasks() {
-        // Schedule tasks for each integration type
-        for (Map.Entry<String, Integer> entry : configManager.getConfig().getSyncIntervals().entrySet()) {
-            String integrationType = entry.getKey();
-            int intervalHours = entry.getValue();
+        Set<String> integrationTypes = new TreeSet<>(configManager.getConfig().getSyncIntervals().keySet());
+        integrationTypes.addAll(configManager.getConfig().getCronSchedules().keySet());
+
+        // Schedule tasks for each integration type; a cron schedule takes precedence over an interval
+        for (String integrationType : integrationTypes) {
+            String cronSchedule = configManager.getCronSchedule(integrationType);
+            if (cronSchedule != null) {
+                try {
+                    scheduleIntegration(integrationType, CronExpression.parse(cronSchedule));
+                    continue;
+                } catch (IllegalArgumentException e) {
+                    logService.logError("Invalid cron schedule for {}: {}", integrationType, e.getMessage());
+                }
+            }
 
-            scheduleIntegration(integrationType, intervalHours);
+            Integer intervalHours = configManager.getConfig().getSyncIntervals().get(integrationType);
+            if (intervalHours != null) {
+                scheduleIntegration(integrationType, intervalHours);
+            }
+        }
+    }
+
+    /**
+     * Start probing for source changes if change-probe mode is enabled
+     */
+    private void initializeChangeProbe() {
+        if (!configManager.isChangeProbeEnabled()) {
+            return;
+        }
+
+        int intervalMinutes = configManager.getChangeProbeIntervalMinutes();
+        ScheduledFuture<?> task = scheduler.scheduleWithFixedDelay(
+                () -> triggerScheduled(CHANGE_PROBE_JOB, this::probeForChanges),
+                intervalMinutes,
+                intervalMinutes,
+                TimeUnit.MINUTES
+        );
+
+        scheduledTasks.put(CHANGE_PROBE_JOB, task);
+        logService.logInfo("Probing for source changes every {} minutes", intervalMinutes);
+    }
+
+    /**
+     * Probe the source tables and trigger the integration types that changed
+     */
+    private void probeForChanges() {
+        ConfigurationService.Configuration config = loadConnectionConfig();
+        if (config == null) {
+            return;
+        }
+
+        Map<String, String> p6Params = new HashMap<>();
+        p6Params.put("server", config.getP6Server());
+        p6Params.put("database", config.getP6Database());
+        p6Params.put("username", config.getP6Username());
+        p6Params.put("password", config.getP6Password());
+
+        Map<String, String> ebsParams = new HashMap<>();
+        ebsParams.put("server", config.getEbsServer());
+        ebsParams.put("sid", config.getEbsSid());
+        ebsParams.put("username", config.getEbsUsername());
+        ebsParams.put("password", config.getEbsPassword());
+
+        for (String integrationType : changeProbe.poll(p6Params, ebsParams)) {
+            logService.logInfo("Triggering {} after source changes", integrationType);
+            triggerScheduled(integrationType, () -> executeScheduledIntegration(integrationType));
         }
     }
 
@@ -59,10 +162,10 @@ public class SchedulerService {
 
         // Create new schedule
         ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(
-                () -> executeScheduledIntegration(integrationType),
-                calculateInitialDelay(integrationType, intervalHours),
-                intervalHours,
-                TimeUnit.HOURS
+                () -> triggerScheduled(integrationType, () -> executeScheduledIntegration(integrationType)),
+                calculateInitialDelay(integrationType, intervalHours) + randomJitterMs(),
+                TimeUnit.HOURS.toMillis(intervalHours),
+                TimeUnit.MILLISECONDS
         );
 
         scheduledTasks.put(integrationType, task);
@@ -70,27 +173,96 @@ public class SchedulerService {
     }
 
     /**
-     * Calculate initial delay for the next schedule
+     * Schedule an integration job on a cron schedule, first catching up on any
+     * runs missed since the last run
+     */
+    public void scheduleIntegration(String integrationType, CronExpression cron) {
+        // Cancel existing schedule if any
+        cancelScheduledIntegration(integrationType);
+
+        Date lastRun = syncManager.getLastRunTime(integrationType);
+        if (lastRun != null) {
+            ZonedDateTime missed = cron.next(ZonedDateTime.ofInstant(lastRun.toInstant(), ZoneId.systemDefault()));
+            if (missed != null && missed.isBefore(ZonedDateTime.now())) {
+                // However many runs were missed, one run brings the type up to date
+                logService.logInfo("Catching up on missed runs of {} since {}", integrationType, lastRun);
+                scheduler.schedule(
+                        () -> triggerScheduled(integrationType, () -> executeScheduledIntegration(integrationType)),
+                        randomJitterMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        CronTask task = new CronTask(integrationType, cron,
+                () -> executeScheduledIntegration(integrationType));
+        cronTasks.put(integrationType, task);
+        task.scheduleNext(ZonedDateTime.now());
+        logService.logInfo("Scheduled integration for {} on cron schedule {}", integrationType, cron);
+    }
+
+    /**
+     * Calculate initial delay for the next schedule (in milliseconds)
      */
     private long calculateInitialDelay(String integrationType, int intervalHours) {
-        Date lastSync = syncManager.getLastSyncTime(integrationType);
+        Date lastRun = syncManager.getLastRunTime(integrationType);
 
-        if (lastSync == null) {
-            // If never synced, start in 1 minute
-            return 1;
+        if (lastRun == null) {
+            // If never run, start in 1 minute
+            return TimeUnit.MINUTES.toMillis(1);
         }
 
-        // Calculate time since last sync
-        long timeSinceLastSync = System.currentTimeMillis() - lastSync.getTime();
-        long intervalMs = intervalHours * 60 * 60 * 1000;
+        // Calculate time since last run
+        long timeSinceLastRun = System.currentTimeMillis() - lastRun.getTime();
+        long intervalMs = TimeUnit.HOURS.toMillis(intervalHours);
 
-        if (timeSinceLastSync >= intervalMs) {
+        if (timeSinceLastRun >= intervalMs) {
             // If interval has already passed, start soon
-            return 1;
+            return TimeUnit.MINUTES.toMillis(1);
         }
 
         // Calculate remaining time until next scheduled sync
-        return (intervalMs - timeSinceLastSync) / (60 * 1000); // Convert to minutes
+        return intervalMs - timeSinceLastRun;
+    }
+
+    /**
+     * Get a random delay of up to the configured jitter
+     */
+    private long randomJitterMs() {
+        long jitterMs = TimeUnit.SECONDS.toMillis(configManager.getScheduleJitterSeconds());
+        return jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs) : 0;
+    }
+
+    /**
+     * Check if scheduled jobs are currently kept from starting
+     */
+    private boolean isInBlackout() {
+        return isInBlackout(configManager.getBlackoutWindows(), ZonedDateTime.now());
+    }
+
+    /**
+     * Check if a time falls within any of the given blackout windows; invalid windows are ignored
+     */
+    static boolean isInBlackout(List<String> windows, ZonedDateTime time) {
+        for (String window : windows) {
+            try {
+                if (CronExpression.parse(window).matches(time)) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring invalid blackout window {}: {}", window, e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Trigger a job on behalf of a schedule, unless a blackout window is in effect
+     */
+    private void triggerScheduled(String jobKey, Runnable job) {
+        if (isInBlackout()) {
+            logService.logInfo("Skipping scheduled run of {} during blackout window", jobKey);
+            return;
+        }
+        trigger(jobKey, job);
     }
 
     /**
@@ -103,6 +275,12 @@ public class SchedulerService {
             scheduledTasks.remove(integrationType);
             logService.logInfo("Cancelled scheduled integration for " + integrationType);
         }
+
+        CronTask cronTask = cronTasks.remove(integrationType);
+        if (cronTask != null) {
+            cronTask.cancel();
+            logService.logInfo("Cancelled scheduled integration for " + integrationType);
+        }
     }
 
     /**
@@ -118,14 +296,51 @@ public class SchedulerService {
         cancelScheduledReconciliation(entityType);
 
         // Create new schedule for reconciliation
+        String reconciliationKey = entityType + "_reconciliation";
         ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(
-                () -> executeScheduledReconciliation(entityType),
-                calculateInitialDelay(entityType, intervalHours),
-                intervalHours,
-                TimeUnit.HOURS
+                () -> triggerScheduled(reconciliationKey, () -> executeScheduledReconciliation(entityType)),
+                calculateInitialDelay(entityType, intervalHours) + randomJitterMs(),
+                TimeUnit.HOURS.toMillis(intervalHours),
+                TimeUnit.MILLISECONDS
         );
 
-        scheduledTasks.put(entityType + "_reconciliation", task);
+        scheduledTasks.put(reconciliationKey, task);
+    }
+
+    /**
+     * Queue a run of a job on the worker pool, unless a queued or running one
+     * already covers it
+     *
+     * @param jobKey Integration type, or entity type + "_reconciliation"
+     * @param job Work of one run
+     */
+    private void trigger(String jobKey, Runnable job) {
+        JobState state = jobStates.computeIfAbsent(jobKey, key -> new JobState());
+
+        synchronized (state) {
+            if (state.queued) {
+                state.coalescedRuns++;
+                logService.logInfo("{} is already queued, coalescing trigger", jobKey);
+                return;
+            }
+            if (state.running > 0) {
+                state.coalescedRuns++;
+                state.rerunPending = true;
+                logService.logInfo("{} is still running, it will run again when finished", jobKey);
+                return;
+            }
+            state.queued = true;
+        }
+
+        try {
+            workers.execute(new JobRun(jobKey, job, configManager.getSchedulePriority(jobKey),
+                    triggerSequence.incrementAndGet()));
+        } catch (RejectedExecutionException e) {
+            synchronized (state) {
+                state.queued = false;
+            }
+            log.warn("Scheduler is shut down, dropping run of {}", jobKey);
+        }
     }
 
     /**
@@ -210,14 +425,26 @@ public class SchedulerService {
             ebsParams.put("username", config.getEbsUsername());
             ebsParams.put("password", config.getEbsPassword());
 
+            // Resume a run of this type that did not finish, e.g. because the application stopped
+            String runId = integrationService.findUnfinishedRun(integrationType);
+            if (runId != null) {
+                logService.logInfo("Resuming unfinished run {} of {}", runId, integrationType);
+            }
+
             // Execute integration with progress tracking
-            integrationService.startIntegration(
+            Map<String, Object> result = integrationService.startIntegration(
                     p6Params,
                     ebsParams,
                     Collections.singletonList(integrationType),
-                    (current, total, message) -> logService.logInfo(message)
+                    (current, total, message) -> logService.logInfo(message),
+                    runId
             );
 
+            if ("error".equals(result.get("status"))) {
+                logService.logWarning("Scheduled integration of {} did not run: {}",
+                        integrationType, result.get("message"));
+            }
+
         } catch (Exception e) {
             logService.logError("Scheduled integration failed for " + integrationType);
         }
@@ -249,7 +476,7 @@ public class SchedulerService {
             info.setIntegrationType(integrationType);
             info.setIntervalHours(intervalHours);
 
-            Date lastRun = syncManager.getLastSyncTime(integrationType);
+            Date lastRun = syncManager.getLastRunTime(integrationType);
             info.setLastRun(lastRun);
 
             if (lastRun != null) {
@@ -265,6 +492,15 @@ public class SchedulerService {
             result.put(integrationType, info);
         }
 
+        for (CronTask task : cronTasks.values()) {
+            ScheduleInfo info = result.computeIfAbsent(task.jobKey, key -> new ScheduleInfo());
+            info.setIntegrationType(task.jobKey);
+            info.setCronExpression(task.cron.toString());
+            info.setLastRun(syncManager.getLastRunTime(task.jobKey));
+            info.setNextRun(task.nextRun);
+            info.setActive(true);
+        }
+
         return result;
     }
 
@@ -273,7 +509,33 @@ public class SchedulerService {
      */
     public void runIntegrationNow(String integrationType) {
         logService.logInfo("Manually triggering integration for " + integrationType);
-        executeScheduledIntegration(integrationType);
+        trigger(integrationType, () -> executeScheduledIntegration(integrationType));
+    }
+
+    /**
+     * Get the number of triggers of a job that were absorbed by a queued or running run
+     */
+    public long getCoalescedRunCount(String jobKey) {
+        JobState state = jobStates.get(jobKey);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.coalescedRuns;
+        }
+    }
+
+    /**
+     * Check if a job is queued or running
+     */
+    public boolean isJobActive(String jobKey) {
+        JobState state = jobStates.get(jobKey);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return state.queued || state.running > 0;
+        }
     }
 
     /**
@@ -281,22 +543,142 @@ public class SchedulerService {
      */
     public void shutdown() {
         scheduler.shutdown();
+        workers.shutdown();
         try {
             if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
                 scheduler.shutdownNow();
             }
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
         } catch (InterruptedException e) {
             scheduler.shutdownNow();
+            workers.shutdownNow();
             Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * A job on a cron schedule; each run schedules the next one
+     */
+    private class CronTask implements Runnable {
+        private final String jobKey;
+        private final CronExpression cron;
+        private final Runnable job;
+        private ZonedDateTime nominalTime;
+        private volatile Date nextRun;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean cancelled;
+
+        private CronTask(String jobKey, CronExpression cron, Runnable job) {
+            this.jobKey = jobKey;
+            this.cron = cron;
+            this.job = job;
+        }
+
+        /**
+         * Schedule the first matching time after the given one, plus jitter.
+         * Times are computed from the unjittered time so jitter does not accumulate.
+         */
+        private synchronized void scheduleNext(ZonedDateTime after) {
+            if (cancelled) {
+                return;
+            }
+
+            nominalTime = cron.next(after);
+            if (nominalTime == null) {
+                log.warn("Cron schedule {} of {} never fires again", cron, jobKey);
+                return;
+            }
+            nextRun = Date.from(nominalTime.toInstant());
+
+            long delayMs = Math.max(0, nextRun.getTime() - System.currentTimeMillis()) + randomJitterMs();
+            future = scheduler.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            triggerScheduled(jobKey, job);
+            scheduleNext(nominalTime);
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Queue and run state of one job; guarded by its own monitor
+     */
+    private static class JobState {
+        private boolean queued;
+        private int running;
+        private boolean rerunPending;
+        private long coalescedRuns;
+    }
+
+    /**
+     * One queued run of a job, ordered by priority and then by trigger order
+     */
+    private class JobRun implements Runnable, Comparable<JobRun> {
+        private final String jobKey;
+        private final Runnable job;
+        private final int priority;
+        private final long sequence;
+
+        private JobRun(String jobKey, Runnable job, int priority, long sequence) {
+            this.jobKey = jobKey;
+            this.job = job;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            JobState state = jobStates.get(jobKey);
+            synchronized (state) {
+                state.queued = false;
+                state.running++;
+            }
+
+            boolean rerun;
+            try {
+                job.run();
+            } finally {
+                synchronized (state) {
+                    state.running--;
+                    rerun = state.rerunPending;
+                    state.rerunPending = false;
+                }
+            }
+
+            if (rerun) {
+                trigger(jobKey, job);
+            }
+        }
+
+        @Override
+        public int compareTo(JobRun other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
     /**
      * Class representing schedule information
      */
     public static class ScheduleInfo {
         private String integrationType;
         private int intervalHours;
+        private String cronExpression;
         private Date lastRun;
         private Date nextRun;
         private boolean active;
@@ -306,6 +688,8 @@ public class SchedulerService {
         public void setIntegrationType(String integrationType) { this.integrationType = integrationType; }
         public int getIntervalHours() { return intervalHours; }
         public void setIntervalHours(int intervalHours) { this.intervalHours = intervalHours; }
+        public String getCronExpression() { return cronExpression; }
+        public void setCronExpression(String cronExpression) { this.cronExpression = cronExpression; }
         public Date getLastRun() { return lastRun; }
         public void setLastRun(Date lastRun) { this.lastRun = lastRun; }
         public Date getNextRun() { return nextRun; }
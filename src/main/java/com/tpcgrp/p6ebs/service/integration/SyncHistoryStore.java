@@ -0,0 +1,334 @@
+/**
+ * Durable storage of synchronization history
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps synchronization records in an append-only JSON-lines file, so history
+ * survives restarts, and maintains per-type, per-hour rollups of the records.
+ * Each record is appended and forced to disk as it is added; a partly written
+ * last line left by a crash is skipped on load. Records older than the retention
+ * period are dropped by rewriting the file, at most once a day.
+ * Rollups are rebuilt from the file on load and then updated as records are
+ * added, together with per-type totals over the whole retention period, so
+ * aggregate views never have to scan the records.
+ */
+@Slf4j
+public class SyncHistoryStore {
+
+    private static final String HISTORY_FILE = "sync_history.jsonl";
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long COMPACTION_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Path historyFile;
+    private final long retentionMillis;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // Retained records, oldest first
+    private final Deque<SynchronizationManager.SyncRecord> records = new ArrayDeque<>();
+
+    // Per-type rollups by hour, and per-type totals over the retained records
+    private final Map<String, NavigableMap<Long, SyncRollup>> hourlyRollups = new HashMap<>();
+    private final Map<String, SyncRollup> typeTotals = new TreeMap<>();
+
+    private long nextCompaction;
+
+    public SyncHistoryStore(Path directory, int retentionDays) {
+        this.historyFile = directory.resolve(HISTORY_FILE);
+        this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+
+        try {
+            Files.createDirectories(directory);
+            load();
+        } catch (IOException e) {
+            log.error("Failed to load synchronization history, starting empty", e);
+        }
+        compact(System.currentTimeMillis());
+    }
+
+    /**
+     * Append a record to the file and add it to the rollups
+     */
+    public synchronized void add(SynchronizationManager.SyncRecord record) {
+        try (FileChannel channel = FileChannel.open(historyFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(record) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Failed to persist synchronization record {}", record.getSessionId(), e);
+        }
+
+        apply(record, 1);
+        records.addLast(record);
+
+        long now = System.currentTimeMillis();
+        if (now >= nextCompaction) {
+            compact(now);
+        }
+    }
+
+    /**
+     * Get retained records, oldest first, optionally restricted to one type
+     */
+    public synchronized List<SynchronizationManager.SyncRecord> getRecords(String syncType) {
+        List<SynchronizationManager.SyncRecord> result = new ArrayList<>();
+        for (SynchronizationManager.SyncRecord record : records) {
+            if (syncType == null || syncType.equals(record.getSyncType())) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get totals over the retention period for each type
+     */
+    public synchronized Map<String, SyncRollup> getTypeTotals() {
+        Map<String, SyncRollup> totals = new TreeMap<>();
+        for (Map.Entry<String, SyncRollup> entry : typeTotals.entrySet()) {
+            totals.put(entry.getKey(), entry.getValue().copy());
+        }
+        return totals;
+    }
+
+    /**
+     * Get totals over the retention period across all types
+     */
+    public synchronized SyncRollup getTotals() {
+        SyncRollup totals = new SyncRollup(null, null);
+        for (SyncRollup rollup : typeTotals.values()) {
+            totals.merge(rollup);
+        }
+        return totals;
+    }
+
+    /**
+     * Get the hourly rollups of a type that start within a time range, oldest first
+     */
+    public synchronized List<SyncRollup> getHourlyRollups(String syncType, Date from, Date to) {
+        NavigableMap<Long, SyncRollup> hours = hourlyRollups.get(syncType);
+        if (hours == null) {
+            return Collections.emptyList();
+        }
+
+        List<SyncRollup> result = new ArrayList<>();
+        for (SyncRollup rollup : hours.subMap(hourOf(from.getTime()), true, to.getTime(), true).values()) {
+            result.add(rollup.copy());
+        }
+        return result;
+    }
+
+    /**
+     * Remove all records and rollups
+     */
+    public synchronized void clear() {
+        records.clear();
+        hourlyRollups.clear();
+        typeTotals.clear();
+
+        try {
+            Files.deleteIfExists(historyFile);
+        } catch (IOException e) {
+            log.error("Failed to delete synchronization history file", e);
+        }
+    }
+
+    /**
+     * Replay the history file into memory
+     */
+    private void load() throws IOException {
+        if (!Files.exists(historyFile)) {
+            return;
+        }
+
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    SynchronizationManager.SyncRecord record =
+                            objectMapper.readValue(line, SynchronizationManager.SyncRecord.class);
+                    if (timeOf(record) != null) {
+                        apply(record, 1);
+                        records.addLast(record);
+                    }
+                } catch (IOException e) {
+                    skipped++;
+                }
+            }
+        }
+
+        if (skipped > 0) {
+            log.warn("Skipped {} unreadable synchronization records", skipped);
+        }
+        log.info("Loaded {} synchronization records", records.size());
+    }
+
+    /**
+     * Drop records past the retention period, rewriting the file if any were dropped.
+     * Records are kept in completion order, so the expired ones are at the front.
+     */
+    private void compact(long now) {
+        nextCompaction = now + COMPACTION_INTERVAL_MILLIS;
+        long cutoff = now - retentionMillis;
+
+        int expired = 0;
+        while (!records.isEmpty() && timeOf(records.peekFirst()).getTime() < cutoff) {
+            apply(records.removeFirst(), -1);
+            expired++;
+        }
+        if (expired == 0) {
+            return;
+        }
+
+        Path temp = historyFile.resolveSibling(HISTORY_FILE + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (SynchronizationManager.SyncRecord record : records) {
+                    writer.write(objectMapper.writeValueAsString(record));
+                    writer.newLine();
+                }
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, historyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Removed {} synchronization records older than {} days",
+                    expired, TimeUnit.MILLISECONDS.toDays(retentionMillis));
+        } catch (IOException e) {
+            // The expired records stay in the file and are dropped again on the next load
+            log.error("Failed to compact synchronization history file", e);
+        }
+    }
+
+    /**
+     * Add a record to, or with a negative sign remove it from, its hourly rollup and type totals
+     */
+    private void apply(SynchronizationManager.SyncRecord record, int sign) {
+        String syncType = record.getSyncType() != null ? record.getSyncType() : "unknown";
+        long hour = hourOf(timeOf(record).getTime());
+
+        NavigableMap<Long, SyncRollup> hours = hourlyRollups.computeIfAbsent(syncType, key -> new TreeMap<>());
+        SyncRollup rollup = hours.computeIfAbsent(hour, key -> new SyncRollup(syncType, new Date(key)));
+        rollup.add(record, sign);
+        if (rollup.getRunCount() == 0) {
+            hours.remove(hour);
+        }
+
+        SyncRollup totals = typeTotals.computeIfAbsent(syncType, key -> new SyncRollup(syncType, null));
+        totals.add(record, sign);
+        if (totals.getRunCount() == 0) {
+            typeTotals.remove(syncType);
+            hourlyRollups.remove(syncType);
+        }
+    }
+
+    private static Date timeOf(SynchronizationManager.SyncRecord record) {
+        return record.getEndTime() != null ? record.getEndTime() : record.getStartTime();
+    }
+
+    private static long hourOf(long time) {
+        return time - Math.floorMod(time, HOUR_MILLIS);
+    }
+
+    /**
+     * Aggregated counts, durations and entity totals of the runs of one type,
+     * either for one hour or for the whole retention period
+     */
+    public static class SyncRollup {
+        private final String syncType;
+        private final Date hourStart;
+        private int completedCount;
+        private int failedCount;
+        private int cancelledCount;
+        private long totalDurationMs;
+        private long entitiesProcessed;
+        private long entitiesUpdated;
+        private long entitiesFailed;
+
+        public SyncRollup(String syncType, Date hourStart) {
+            this.syncType = syncType;
+            this.hourStart = hourStart;
+        }
+
+        private void add(SynchronizationManager.SyncRecord record, int sign) {
+            if ("COMPLETED".equals(record.getStatus())) {
+                completedCount += sign;
+            } else if ("CANCELLED".equals(record.getStatus())) {
+                cancelledCount += sign;
+            } else {
+                failedCount += sign;
+            }
+            totalDurationMs += sign * record.getDurationMs();
+            entitiesProcessed += sign * record.getEntitiesProcessed();
+            entitiesUpdated += sign * record.getEntitiesUpdated();
+            entitiesFailed += sign * record.getEntitiesFailed();
+        }
+
+        private void merge(SyncRollup other) {
+            completedCount += other.completedCount;
+            failedCount += other.failedCount;
+            cancelledCount += other.cancelledCount;
+            totalDurationMs += other.totalDurationMs;
+            entitiesProcessed += other.entitiesProcessed;
+            entitiesUpdated += other.entitiesUpdated;
+            entitiesFailed += other.entitiesFailed;
+        }
+
+        private SyncRollup copy() {
+            SyncRollup copy = new SyncRollup(syncType, hourStart);
+            copy.merge(this);
+            return copy;
+        }
+
+        public int getRunCount() {
+            return completedCount + failedCount + cancelledCount;
+        }
+
+        public double getSuccessRate() {
+            int runs = getRunCount();
+            return runs > 0 ? (double) completedCount / runs : 0;
+        }
+
+        public long getAverageDurationMs() {
+            int runs = getRunCount();
+            return runs > 0 ? totalDurationMs / runs : 0;
+        }
+
+        // Getters
+        public String getSyncType() { return syncType; }
+        public Date getHourStart() { return hourStart; }
+        public int getCompletedCount() { return completedCount; }
+        public int getFailedCount() { return failedCount; }
+        public int getCancelledCount() { return cancelledCount; }
+        public long getTotalDurationMs() { return totalDurationMs; }
+        public long getEntitiesProcessed() { return entitiesProcessed; }
+        public long getEntitiesUpdated() { return entitiesUpdated; }
+        public long getEntitiesFailed() { return entitiesFailed; }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+/**
+ * Live metrics over synchronization runs
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Run counts, entity totals and a duration distribution, updated as each run is
+ * recorded. Updates and reads are lock-free, and reading costs the same however
+ * many runs have been recorded.
+ * Durations are counted in buckets that each span about 10% more than the last,
+ * so percentiles are accurate to within one bucket.
+ */
+public class SyncMetrics {
+
+    private static final double BUCKET_GROWTH = 1.1;
+    private static final int BUCKET_COUNT = 220; // Up to about 15 days
+
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder cancelledCount = new LongAdder();
+    private final LongAdder entitiesProcessed = new LongAdder();
+    private final LongAdder entitiesUpdated = new LongAdder();
+    private final LongAdder entitiesFailed = new LongAdder();
+    private final LongAdder totalDurationMs = new LongAdder();
+    private final AtomicLongArray durationBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Count a finished run
+     */
+    public void record(SynchronizationManager.SyncRecord record) {
+        if ("COMPLETED".equals(record.getStatus())) {
+            completedCount.increment();
+        } else if ("CANCELLED".equals(record.getStatus())) {
+            cancelledCount.increment(); // Stopped on request, so neither a success nor a failure
+        } else {
+            failedCount.increment();
+        }
+        entitiesProcessed.add(record.getEntitiesProcessed());
+        entitiesUpdated.add(record.getEntitiesUpdated());
+        entitiesFailed.add(record.getEntitiesFailed());
+        totalDurationMs.add(record.getDurationMs());
+        durationBuckets.incrementAndGet(bucketOf(record.getDurationMs()));
+    }
+
+    public long getRunCount() {
+        return completedCount.sum() + failedCount.sum() + cancelledCount.sum();
+    }
+
+    public double getSuccessRate() {
+        long runs = getRunCount();
+        return runs > 0 ? (double) completedCount.sum() / runs : 0;
+    }
+
+    public long getAverageDurationMs() {
+        long runs = getRunCount();
+        return runs > 0 ? totalDurationMs.sum() / runs : 0;
+    }
+
+    public long getMedianDurationMs() {
+        return getDurationPercentileMs(0.50);
+    }
+
+    public long getP95DurationMs() {
+        return getDurationPercentileMs(0.95);
+    }
+
+    /**
+     * Get the duration that the given share of runs finished within
+     *
+     * @param percentile Share of runs, between 0 and 1
+     * @return Upper bound of the bucket holding that run, or 0 if no runs were recorded
+     */
+    public long getDurationPercentileMs(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = durationBuckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    private static int bucketOf(long durationMs) {
+        if (durationMs <= 1) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log(durationMs) / Math.log(BUCKET_GROWTH));
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    private static long bucketUpperBound(int bucket) {
+        return Math.round(Math.pow(BUCKET_GROWTH, bucket));
+    }
+
+    // Getters
+    public long getCompletedCount() { return completedCount.sum(); }
+    public long getFailedCount() { return failedCount.sum(); }
+    public long getCancelledCount() { return cancelledCount.sum(); }
+    public long getEntitiesProcessed() { return entitiesProcessed.sum(); }
+    public long getEntitiesUpdated() { return entitiesUpdated.sum(); }
+    public long getEntitiesFailed() { return entitiesFailed.sum(); }
+    public long getTotalDurationMs() { return totalDurationMs.sum(); }
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+/**
+ * Per-stage timing of a synchronization run
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import java.util.*;
+
+/**
+ * Accumulates time, rows and bytes for each stage of one synchronization run.
+ * Stages may be entered many times, e.g. transform and load once per row; their
+ * times add up. A timer belongs to a single run and is used from one thread.
+ */
+public class SyncStageTimer {
+
+    /**
+     * Stages of a run, in the order they happen
+     */
+    public enum Stage {
+        CONNECT, VALIDATE, EXTRACT, TRANSFORM, LOAD, VERIFY;
+
+        public String getLabel() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Date startTime = new Date();
+    private final long[] nanos = new long[Stage.values().length];
+    private final long[] rows = new long[Stage.values().length];
+    private final long[] bytes = new long[Stage.values().length];
+    private final boolean[] entered = new boolean[Stage.values().length];
+
+    /**
+     * Run an action and add its elapsed time to a stage
+     */
+    public <T, E extends Exception> T time(Stage stage, StageAction<T, E> action) throws E {
+        long start = System.nanoTime();
+        try {
+            return action.run();
+        } finally {
+            nanos[stage.ordinal()] += System.nanoTime() - start;
+            entered[stage.ordinal()] = true;
+        }
+    }
+
+    /**
+     * Count rows and their approximate size against a stage
+     */
+    public void addRows(Stage stage, long rowCount, long byteCount) {
+        rows[stage.ordinal()] += rowCount;
+        bytes[stage.ordinal()] += byteCount;
+        entered[stage.ordinal()] = true;
+    }
+
+    /**
+     * Get the timings of the stages this run entered, in stage order
+     */
+    public List<SynchronizationManager.StageTiming> getStageTimings() {
+        List<SynchronizationManager.StageTiming> timings = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            int i = stage.ordinal();
+            if (entered[i]) {
+                SynchronizationManager.StageTiming timing = new SynchronizationManager.StageTiming();
+                timing.setStage(stage.getLabel());
+                timing.setDurationMs(nanos[i] / 1_000_000);
+                timing.setRows(rows[i]);
+                timing.setBytes(bytes[i]);
+                timings.add(timing);
+            }
+        }
+        return timings;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Approximate size of a row as the text length of its values
+     */
+    public static long estimateBytes(Map<String, Object> row) {
+        long size = 0;
+        for (Object value : row.values()) {
+            if (value != null) {
+                size += value.toString().length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Approximate size of a set of rows
+     */
+    public static long estimateBytes(List<Map<String, Object>> rows) {
+        long size = 0;
+        for (Map<String, Object> row : rows) {
+            size += estimateBytes(row);
+        }
+        return size;
+    }
+
+    /**
+     * Describe stage timings in one line, e.g. "extract 1.2s (800 rows/s), load 4.0s (240 rows/s)"
+     */
+    public static String describe(List<SynchronizationManager.StageTiming> timings) {
+        if (timings == null || timings.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (SynchronizationManager.StageTiming timing : timings) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(timing.getStage()).append(' ')
+                    .append(String.format("%.1fs", timing.getDurationMs() / 1000.0));
+            if (timing.getRows() > 0) {
+                text.append(String.format(" (%.0f rows/s)", timing.getRowsPerSecond()));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Work timed as part of a stage
+     */
+    @FunctionalInterface
+    public interface StageAction<T, E extends Exception> {
+        T run() throws E;
+    }
+}
\ No newline at end of file
@@ -7,9 +7,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -19,11 +19,18 @@ public class SynchronizationManager {
     private final IntegrationLogService logService;
     private final ConfigurationManager configManager;
 
-    // Store synchronization history
-    private final List<SyncRecord> syncHistory = Collections.synchronizedList(new ArrayList<>());
+    private static final int HISTORY_RETENTION_DAYS = 90;
+    private static final int RECENT_SYNC_LIMIT = 64;
 
-    // Track completed integrations
-    private final Map<String, Date> completedIntegrations = new ConcurrentHashMap<>();
+    // Synchronization history, persisted under ~/.p6ebs/history with hourly rollups
+    private final SyncHistoryStore historyStore;
+
+    // Live metrics and most recent runs; replaced when history is cleared
+    private volatile SyncMetrics syncMetrics = new SyncMetrics();
+    private volatile RingBuffer<SyncRecord> recentSyncs = new RingBuffer<>(RECENT_SYNC_LIMIT);
+
+    // How far each integration type and partition has been synchronized, persisted under ~/.p6ebs/watermarks
+    private final WatermarkStore watermarkStore;
 
     @Autowired
     public SynchronizationManager(MappingUtility mappingUtility,
@@ -32,6 +39,15 @@ public class SynchronizationManager {
         this.mappingUtility = mappingUtility;
         this.logService = logService;
         this.configManager = configManager;
+        this.historyStore = new SyncHistoryStore(
+                Paths.get(System.getProperty("user.home"), ".p6ebs", "history"), HISTORY_RETENTION_DAYS);
+        this.watermarkStore = new WatermarkStore(Paths.get(System.getProperty("user.home"), ".p6ebs", "watermarks"));
+
+        // Seed the live metrics from the retained history, once
+        for (SyncRecord record : historyStore.getRecords(null)) {
+            syncMetrics.record(record);
+            recentSyncs.add(record);
+        }
     }
 
     /**
@@ -62,10 +78,13 @@ public class SynchronizationManager {
 
         // Store in history
         SyncRecord record = createSyncRecord(session);
-        syncHistory.add(record);
+        addRecord(record);
 
-        // Update completed integrations
-        completedIntegrations.put(session.getSyncType(), session.getEndTime());
+        // Advance the whole-type watermark and the last run
+        Map<String, Date> advances = new HashMap<>();
+        advances.put(WatermarkStore.ALL_PARTITIONS, session.getEndTime());
+        advances.put(WatermarkStore.LAST_RUN, session.getEndTime());
+        commitWatermarks(session.getSyncType(), advances);
 
         // Save mapped IDs
         mappingUtility.saveIdCorrelations();
@@ -83,7 +102,7 @@ public class SynchronizationManager {
 
         // Store in history
         SyncRecord record = createSyncRecord(session);
-        syncHistory.add(record);
+        addRecord(record);
     }
 
     /**
@@ -115,20 +134,42 @@ public class SynchronizationManager {
     }
 
     /**
-     * Record the result of a synchronization process
+     * Record the result of a synchronization process. Partitions listed in the
+     * result's "committedPartitions" (partition to watermark) advance to their
+     * watermark; the whole type advances only if the run completed and its
+     * "failedPartitions" list is empty or absent. The last run advances whenever
+     * the run completed.
+     *
+     * @param integrationType Type of integration that ran
+     * @param result Result map returned by the integration
+     * @param timer Timer that tracked the run from its start
      */
-    public void recordSynchronizationResult(String integrationType, Map<String, Object> result) {
-        completedIntegrations.put(integrationType, new Date());
+    @SuppressWarnings("unchecked")
+    public void recordSynchronizationResult(String integrationType, Map<String, Object> result,
+                                            SyncStageTimer timer) {
+        Date endTime = new Date();
         // Log the result
         logService.logInfo("Recorded synchronization result for " + integrationType);
 
         // Create a sync record
         SyncRecord record = new SyncRecord();
-        record.setSessionId(UUID.randomUUID().toString());
+        record.setSessionId(logService.getSessionId() != null
+                ? logService.getSessionId() : UUID.randomUUID().toString());
         record.setSyncType(integrationType);
-        record.setStartTime(new Date(System.currentTimeMillis() - 1000)); // Approximate
-        record.setEndTime(new Date());
-        record.setStatus("COMPLETED");
+        record.setStartTime(timer.getStartTime());
+        record.setEndTime(endTime);
+        record.setDurationMs(endTime.getTime() - timer.getStartTime().getTime());
+        record.setStageTimings(timer.getStageTimings());
+
+        if ("error".equals(result.get("status"))) {
+            record.setStatus("FAILED");
+            record.setErrorMessage((String) result.get("message"));
+        } else if ("cancelled".equals(result.get("status"))) {
+            record.setStatus("CANCELLED");
+            record.setErrorMessage((String) result.get("message"));
+        } else {
+            record.setStatus("COMPLETED");
+        }
 
         // Extract statistics if available
         if (result.containsKey("totalProjects")) {
@@ -137,42 +178,134 @@ public class SynchronizationManager {
         if (result.containsKey("updatedProjects")) {
             record.setEntitiesUpdated((Integer) result.get("updatedProjects"));
         }
+        if (result.containsKey("totalTasks")) {
+            record.setEntitiesProcessed((Integer) result.get("totalTasks"));
+        }
+        if (result.containsKey("updatedTasks")) {
+            record.setEntitiesUpdated((Integer) result.get("updatedTasks"));
+        }
+        if (result.containsKey("failedTasks")) {
+            record.setEntitiesFailed((Integer) result.get("failedTasks"));
+        }
+
+        addRecord(record);
+
+        // Advance the partitions that fully committed, and the whole type only if none failed
+        Map<String, Date> advances = new HashMap<>();
+        if (result.get("committedPartitions") instanceof Map) {
+            advances.putAll((Map<String, Date>) result.get("committedPartitions"));
+        }
+        if ("COMPLETED".equals(record.getStatus())) {
+            advances.put(WatermarkStore.LAST_RUN, endTime);
+
+            Object failedPartitions = result.get("failedPartitions");
+            if (!(failedPartitions instanceof Collection) || ((Collection<?>) failedPartitions).isEmpty()) {
+                advances.put(WatermarkStore.ALL_PARTITIONS, endTime);
+            }
+        }
+        commitWatermarks(integrationType, advances);
+    }
+
+    /**
+     * Durably advance watermarks; on failure they stay where they were, so the
+     * affected partitions are processed again by the next run
+     */
+    private void commitWatermarks(String integrationType, Map<String, Date> advances) {
+        try {
+            watermarkStore.commit(integrationType, advances);
+        } catch (IOException e) {
+            logService.logError("Failed to save synchronization watermarks for {}: {}",
+                    integrationType, e.getMessage());
+        }
+    }
 
-        syncHistory.add(record);
+    /**
+     * Add a record to the live metrics and the persistent history
+     */
+    private void addRecord(SyncRecord record) {
+        syncMetrics.record(record);
+        recentSyncs.add(record);
+        historyStore.add(record);
     }
 
     /**
-     * Get the last synchronization time for an integration type
+     * Get the last time an integration type completed with every partition committed
      */
     public Date getLastSyncTime(String integrationType) {
-        return completedIntegrations.get(integrationType);
+        return watermarkStore.getWatermark(integrationType, WatermarkStore.ALL_PARTITIONS);
+    }
+
+    /**
+     * Get the last time an integration type completed a run, even if some of its
+     * partitions failed and stay behind; this is what schedules are timed from
+     */
+    public Date getLastRunTime(String integrationType) {
+        Date lastRun = watermarkStore.getWatermark(integrationType, WatermarkStore.LAST_RUN);
+        // Runs recorded before the last run was kept only moved the whole-type watermark
+        return lastRun != null ? lastRun : getLastSyncTime(integrationType);
     }
 
     /**
      * Get all completed integrations
      */
     public Map<String, Date> getCompletedIntegrations() {
-        return new HashMap<>(completedIntegrations);
+        return watermarkStore.getTypeWatermarks();
+    }
+
+    /**
+     * Get the watermark of every partition of an integration type that has committed at least once
+     */
+    public Map<String, Date> getPartitionWatermarks(String integrationType) {
+        return watermarkStore.getWatermarks(integrationType);
     }
 
     /**
      * Get synchronization history, optionally filtered by type
      */
     public List<SyncRecord> getSyncHistory(String integrationType) {
-        if (integrationType == null) {
-            return new ArrayList<>(syncHistory);
-        }
+        return historyStore.getRecords(integrationType);
+    }
 
-        return syncHistory.stream()
-                .filter(record -> record.getSyncType().equals(integrationType))
-                .collect(Collectors.toList());
+    /**
+     * Get the live metrics over all recorded runs; reading them never waits on history writes
+     */
+    public SyncMetrics getSyncMetrics() {
+        return syncMetrics;
+    }
+
+    /**
+     * Get the most recent runs, newest first
+     */
+    public List<SyncRecord> getRecentSyncs(int limit) {
+        return recentSyncs.newestFirst(limit);
+    }
+
+    /**
+     * Get aggregated counts, durations and entity totals across all types
+     */
+    public SyncHistoryStore.SyncRollup getSyncTotals() {
+        return historyStore.getTotals();
+    }
+
+    /**
+     * Get aggregated counts, durations and entity totals for each type
+     */
+    public Map<String, SyncHistoryStore.SyncRollup> getSyncTotalsByType() {
+        return historyStore.getTypeTotals();
+    }
+
+    /**
+     * Get hourly aggregates of a type within a time range
+     */
+    public List<SyncHistoryStore.SyncRollup> getHourlySyncRollups(String integrationType, Date from, Date to) {
+        return historyStore.getHourlyRollups(integrationType, from, to);
     }
 
     /**
      * Check if synchronization is needed based on last sync time and changes
      */
     public boolean isSyncRequired(String integrationType, Date lastChangeP6, Date lastChangeEbs) {
-        Date lastSync = completedIntegrations.get(integrationType);
+        Date lastSync = getLastSyncTime(integrationType);
 
         if (lastSync == null) {
             return true; // Never synced before
@@ -187,7 +320,9 @@ public class SynchronizationManager {
      * Clear synchronization history
      */
     public void clearSyncHistory() {
-        syncHistory.clear();
+        historyStore.clear();
+        syncMetrics = new SyncMetrics();
+        recentSyncs = new RingBuffer<>(RECENT_SYNC_LIMIT);
         logService.logInfo("Synchronization history cleared");
     }
 
@@ -242,6 +377,7 @@ public class SynchronizationManager {
         private int entitiesProcessed;
         private int entitiesUpdated;
         private int entitiesFailed;
+        private List<StageTiming> stageTimings = new ArrayList<>();
 
         // Getters and setters
         public String getSessionId() { return sessionId; }
@@ -266,5 +402,31 @@ public class SynchronizationManager {
         public void setEntitiesUpdated(int entitiesUpdated) { this.entitiesUpdated = entitiesUpdated; }
         public int getEntitiesFailed() { return entitiesFailed; }
         public void setEntitiesFailed(int entitiesFailed) { this.entitiesFailed = entitiesFailed; }
+        public List<StageTiming> getStageTimings() { return stageTimings; }
+        public void setStageTimings(List<StageTiming> stageTimings) { this.stageTimings = stageTimings; }
+    }
+
+    /**
+     * Class representing the time, rows and bytes of one stage of a synchronization
+     */
+    public static class StageTiming {
+        private String stage;
+        private long durationMs;
+        private long rows;
+        private long bytes;
+
+        public double getRowsPerSecond() {
+            return durationMs > 0 ? rows * 1000.0 / durationMs : 0;
+        }
+
+        // Getters and setters
+        public String getStage() { return stage; }
+        public void setStage(String stage) { this.stage = stage; }
+        public long getDurationMs() { return durationMs; }
+        public void setDurationMs(long durationMs) { this.durationMs = durationMs; }
+        public long getRows() { return rows; }
+        public void setRows(long rows) { this.rows = rows; }
+        public long getBytes() { return bytes; }
+        public void setBytes(long bytes) { this.bytes = bytes; }
     }
 }
\ No newline at end of file
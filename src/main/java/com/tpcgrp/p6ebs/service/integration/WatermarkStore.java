@@ -0,0 +1,295 @@
+/**
+ * Durable synchronization watermarks
+ */
+package com.tpcgrp.p6ebs.service.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Watermarks per integration type and partition (e.g. a project), recording how
+ * far each partition has been synchronized.
+ * All advances of one run are committed together: they are appended as a single
+ * checksummed record to a write-ahead log and forced to disk before they become
+ * visible, so after a crash either all of them apply or none do. A record whose
+ * checksum does not match (a torn write) ends replay and is cut off the log.
+ * Every so many commits the watermarks are written to a snapshot and the log is
+ * emptied; log records already contained in the snapshot are skipped on replay.
+ * Watermarks only move forward.
+ */
+@Slf4j
+public class WatermarkStore {
+
+    // Partition holding the time the whole type last completed without failures
+    public static final String ALL_PARTITIONS = "*";
+
+    // Partition holding the time the type last completed a run, even if some partitions failed
+    public static final String LAST_RUN = "#lastRun";
+
+    private static final String SNAPSHOT_FILE = "watermarks.json";
+    private static final String LOG_FILE = "watermarks.wal";
+    private static final int CHECKPOINT_INTERVAL = 100; // Commits between snapshots
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Integration type -> partition -> watermark in epoch millis
+    private final Map<String, Map<String, Long>> watermarks = new HashMap<>();
+    private long sequence;
+    private int commitsSinceCheckpoint;
+
+    public WatermarkStore(Path directory) {
+        this.snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        this.logFile = directory.resolve(LOG_FILE);
+
+        try {
+            Files.createDirectories(directory);
+            loadSnapshot();
+            replayLog();
+        } catch (IOException e) {
+            log.error("Failed to load synchronization watermarks, starting from none", e);
+        }
+    }
+
+    /**
+     * Get the watermark of a partition; null if it was never synchronized
+     */
+    public synchronized Date getWatermark(String integrationType, String partition) {
+        Map<String, Long> partitions = watermarks.get(integrationType);
+        Long watermark = partitions != null ? partitions.get(partition) : null;
+        return watermark != null ? new Date(watermark) : null;
+    }
+
+    /**
+     * Get the watermarks of every partition of a type, excluding the whole-type and last-run watermarks
+     */
+    public synchronized Map<String, Date> getWatermarks(String integrationType) {
+        Map<String, Date> result = new HashMap<>();
+        Map<String, Long> partitions = watermarks.get(integrationType);
+        if (partitions != null) {
+            for (Map.Entry<String, Long> entry : partitions.entrySet()) {
+                if (!ALL_PARTITIONS.equals(entry.getKey()) && !LAST_RUN.equals(entry.getKey())) {
+                    result.put(entry.getKey(), new Date(entry.getValue()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the whole-type watermark of every type that has one
+     */
+    public synchronized Map<String, Date> getTypeWatermarks() {
+        Map<String, Date> result = new HashMap<>();
+        for (Map.Entry<String, Map<String, Long>> entry : watermarks.entrySet()) {
+            Long watermark = entry.getValue().get(ALL_PARTITIONS);
+            if (watermark != null) {
+                result.put(entry.getKey(), new Date(watermark));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Atomically advance the watermarks of a type's partitions. The advances are
+     * durable before this returns; if writing them fails, none are applied.
+     *
+     * @param integrationType Type whose partitions advance
+     * @param advances New watermark per partition; {@link #ALL_PARTITIONS} for the whole type,
+     *                 {@link #LAST_RUN} for the end of the run
+     * @throws IOException If the log could not be written
+     */
+    public synchronized void commit(String integrationType, Map<String, Date> advances) throws IOException {
+        if (advances.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> partitions = new HashMap<>();
+        for (Map.Entry<String, Date> entry : advances.entrySet()) {
+            partitions.put(entry.getKey(), entry.getValue().getTime());
+        }
+
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("sequence", sequence + 1);
+        record.put("type", integrationType);
+        record.put("watermarks", partitions);
+
+        appendToLog(objectMapper.writeValueAsBytes(record));
+
+        sequence++;
+        apply(integrationType, partitions);
+
+        if (++commitsSinceCheckpoint >= CHECKPOINT_INTERVAL) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Append a record as "crc32 json" on its own line and force it to disk
+     */
+    private void appendToLog(byte[] json) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(json);
+
+        byte[] prefix = (Long.toHexString(crc.getValue()) + " ").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer line = ByteBuffer.allocate(prefix.length + json.length + 1);
+        line.put(prefix).put(json).put((byte) '\n');
+        line.flip();
+
+        try (FileChannel channel = FileChannel.open(logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Write all watermarks to a new snapshot, then empty the log
+     */
+    private void checkpoint() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("sequence", sequence);
+        snapshot.put("watermarks", watermarks);
+
+        Path temp = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try {
+            Files.write(temp, objectMapper.writeValueAsBytes(snapshot));
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // Records up to the snapshot's sequence are skipped on replay, so a crash before this is harmless
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(0);
+                channel.force(true);
+            }
+            commitsSinceCheckpoint = 0;
+        } catch (IOException e) {
+            // The log still holds every commit; try again after the next one
+            log.warn("Failed to checkpoint synchronization watermarks: {}", e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+
+        Map<String, Object> snapshot = objectMapper.readValue(Files.readAllBytes(snapshotFile), Map.class);
+        sequence = ((Number) snapshot.get("sequence")).longValue();
+
+        Map<String, Map<String, Number>> types = (Map<String, Map<String, Number>>) snapshot.get("watermarks");
+        for (Map.Entry<String, Map<String, Number>> type : types.entrySet()) {
+            apply(type.getKey(), toMillis(type.getValue()));
+        }
+    }
+
+    /**
+     * Apply the log records written after the snapshot, cutting off a torn tail
+     */
+    @SuppressWarnings("unchecked")
+    private void replayLog() throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+
+        byte[] bytes = Files.readAllBytes(logFile);
+        int position = 0;
+        int replayed = 0;
+
+        while (position < bytes.length) {
+            int end = position;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            if (end == bytes.length) {
+                break; // No line end: the last write did not finish
+            }
+
+            Map<String, Object> record = parseLogRecord(bytes, position, end);
+            if (record == null) {
+                break;
+            }
+
+            long recordSequence = ((Number) record.get("sequence")).longValue();
+            if (recordSequence > sequence) {
+                sequence = recordSequence;
+                apply((String) record.get("type"), toMillis((Map<String, Number>) record.get("watermarks")));
+                replayed++;
+                commitsSinceCheckpoint++;
+            }
+            position = end + 1;
+        }
+
+        if (position < bytes.length) {
+            log.warn("Discarding {} bytes of incomplete watermark log", bytes.length - position);
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+        }
+        if (replayed > 0) {
+            log.info("Replayed {} watermark commits", replayed);
+        }
+    }
+
+    /**
+     * Parse a "crc32 json" log line; null if it is malformed or fails its checksum
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseLogRecord(byte[] bytes, int start, int end) {
+        int space = start;
+        while (space < end && bytes[space] != ' ') {
+            space++;
+        }
+        if (space == end) {
+            return null;
+        }
+
+        try {
+            long expected = Long.parseLong(new String(bytes, start, space - start, StandardCharsets.US_ASCII), 16);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, space + 1, end - space - 1);
+            if (crc.getValue() != expected) {
+                return null;
+            }
+            return objectMapper.readValue(bytes, space + 1, end - space - 1, Map.class);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Merge watermarks into memory, keeping the later of the old and new value
+     */
+    private void apply(String integrationType, Map<String, Long> partitions) {
+        Map<String, Long> current = watermarks.computeIfAbsent(integrationType, key -> new HashMap<>());
+        for (Map.Entry<String, Long> entry : partitions.entrySet()) {
+            current.merge(entry.getKey(), entry.getValue(), Math::max);
+        }
+    }
+
+    private static Map<String, Long> toMillis(Map<String, Number> partitions) {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, Number> entry : partitions.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().longValue());
+        }
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.tpcgrp.p6ebs.service.integration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointJournalTest {
+
+    private static final String TYPE = "ebsTasksToP6";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadReturnsLatestCheckpoint() throws IOException {
+        CheckpointJournal journal = new CheckpointJournal(directory);
+        journal.record(checkpoint("run-1", TYPE, "T1", 1));
+        journal.record(checkpoint("run-1", TYPE, "T2", 2));
+
+        CheckpointJournal.Checkpoint loaded = new CheckpointJournal(directory).load("run-1", TYPE);
+        assertEquals("T2", loaded.getLastKey());
+        assertEquals("P1", loaded.getCurrentPartition());
+        assertEquals(Arrays.asList("P0"), loaded.getCompletedPartitions());
+        assertEquals(2, loaded.getCounters().get("updatedTasks"));
+        assertEquals(5L, loaded.getPartitionHighs().get("P0"));
+        assertNull(journal.load("run-2", TYPE));
+    }
+
+    @Test
+    void tornTailIsCutOffOnLoad() throws IOException {
+        CheckpointJournal journal = new CheckpointJournal(directory);
+        journal.record(checkpoint("run-1", TYPE, "T1", 1));
+        journal.record(checkpoint("run-1", TYPE, "T2", 2));
+        Path file = journalFile("run-1", TYPE);
+        long complete = Files.size(file);
+
+        // A checkpoint that was cut short before its line end
+        Files.write(file, "5f3e {\"runId\":\"run-1\",\"lastKey\":\"T".getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.APPEND);
+
+        journal = new CheckpointJournal(directory);
+        assertEquals("T2", journal.load("run-1", TYPE).getLastKey());
+        assertEquals(complete, Files.size(file));
+
+        // Checkpoints of the resumed run follow the last intact one
+        journal.record(checkpoint("run-1", TYPE, "T3", 3));
+        assertEquals("T3", new CheckpointJournal(directory).load("run-1", TYPE).getLastKey());
+    }
+
+    @Test
+    void loadStopsAtCheckpointFailingItsChecksum() throws IOException {
+        CheckpointJournal journal = new CheckpointJournal(directory);
+        journal.record(checkpoint("run-1", TYPE, "T1", 1));
+        journal.record(checkpoint("run-1", TYPE, "T2", 2));
+        journal.record(checkpoint("run-1", TYPE, "T3", 3));
+
+        // Change the second checkpoint without updating its checksum
+        Path file = journalFile("run-1", TYPE);
+        String content = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+        Files.write(file, content.replace("\"lastKey\":\"T2\"", "\"lastKey\":\"T9\"")
+                .getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals("T1", new CheckpointJournal(directory).load("run-1", TYPE).getLastKey());
+    }
+
+    @Test
+    void journalIsRewrittenCountingCheckpointsFromEarlierProcesses() throws IOException {
+        CheckpointJournal journal = new CheckpointJournal(directory);
+        for (int i = 1; i <= 60; i++) {
+            journal.record(checkpoint("run-1", TYPE, "T" + i, i));
+        }
+
+        // A new process continues the count from the file rather than from zero
+        journal = new CheckpointJournal(directory);
+        for (int i = 61; i <= 120; i++) {
+            journal.record(checkpoint("run-1", TYPE, "T" + i, i));
+        }
+
+        assertEquals(20, Files.readAllLines(journalFile("run-1", TYPE)).size());
+        assertEquals("T120", new CheckpointJournal(directory).load("run-1", TYPE).getLastKey());
+    }
+
+    @Test
+    void getUnfinishedReadsOnlyTheTypeOldestFirst() throws IOException {
+        CheckpointJournal journal = new CheckpointJournal(directory);
+        journal.record(checkpoint("run-2", TYPE, "T1", 1, 2000));
+        journal.record(checkpoint("run-1", TYPE, "T1", 1, 1000));
+        journal.record(checkpoint("run-3", "p6ProjectsToEbs", "T1", 1, 500));
+
+        List<CheckpointJournal.Checkpoint> unfinished = journal.getUnfinished(TYPE);
+        assertEquals(2, unfinished.size());
+        assertEquals("run-1", unfinished.get(0).getRunId());
+        assertEquals("run-2", unfinished.get(1).getRunId());
+    }
+
+    @Test
+    void completeDeletesSupersededJournalsOfTheType() throws IOException {
+        CheckpointJournal journal = new CheckpointJournal(directory);
+        journal.record(checkpoint("run-1", TYPE, "T1", 1));
+        journal.record(checkpoint("run-2", TYPE, "T1", 1));
+        journal.record(checkpoint("run-1", "p6ProjectsToEbs", "T1", 1));
+
+        journal.complete("run-2", TYPE);
+
+        assertFalse(Files.exists(journalFile("run-2", TYPE)));
+        assertFalse(Files.exists(journalFile("run-1", TYPE)));
+        assertTrue(Files.exists(journalFile("run-1", "p6ProjectsToEbs")));
+        assertTrue(journal.getUnfinished(TYPE).isEmpty());
+        assertEquals(1, journal.getUnfinished("p6ProjectsToEbs").size());
+    }
+
+    private Path journalFile(String runId, String integrationType) {
+        return directory.resolve(runId + "_" + integrationType + ".journal");
+    }
+
+    private static CheckpointJournal.Checkpoint checkpoint(String runId, String integrationType,
+                                                           String lastKey, int updated) {
+        return checkpoint(runId, integrationType, lastKey, updated, System.currentTimeMillis());
+    }
+
+    private static CheckpointJournal.Checkpoint checkpoint(String runId, String integrationType,
+                                                           String lastKey, int updated, long timestamp) {
+        CheckpointJournal.Checkpoint checkpoint = new CheckpointJournal.Checkpoint();
+        checkpoint.setRunId(runId);
+        checkpoint.setIntegrationType(integrationType);
+        checkpoint.setTimestamp(timestamp);
+        checkpoint.setLastKey(lastKey);
+        checkpoint.setCurrentPartition("P1");
+        checkpoint.setCompletedPartitions(Arrays.asList("P0"));
+        checkpoint.getPartitionHighs().put("P0", 5L);
+        checkpoint.getCounters().put("updatedTasks", updated);
+        return checkpoint;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.tpcgrp.p6ebs.service.integration;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CronExpressionTest {
+
+    private static final ZoneId ZONE = ZoneId.of("UTC");
+
+    @Test
+    void matchesStepsRangesAndLists() {
+        CronExpression cron = CronExpression.parse("*/15 9-17 * 1,3 1-5");
+
+        assertTrue(cron.matches(at(2024, 3, 4, 9, 45)));   // Monday
+        assertFalse(cron.matches(at(2024, 3, 4, 9, 50)));  // Not on a step
+        assertFalse(cron.matches(at(2024, 3, 4, 18, 0)));  // After the hour range
+        assertFalse(cron.matches(at(2024, 3, 9, 10, 0)));  // Saturday
+        assertFalse(cron.matches(at(2024, 2, 5, 10, 0)));  // Month not listed
+    }
+
+    @Test
+    void stepFromValueRunsToEndOfRange() {
+        CronExpression cron = CronExpression.parse("10/20 * * * *");
+
+        assertTrue(cron.matches(at(2024, 3, 4, 0, 10)));
+        assertTrue(cron.matches(at(2024, 3, 4, 0, 30)));
+        assertTrue(cron.matches(at(2024, 3, 4, 0, 50)));
+        assertFalse(cron.matches(at(2024, 3, 4, 0, 0)));
+    }
+
+    @Test
+    void sundayIsZeroOrSeven() {
+        ZonedDateTime sunday = at(2024, 3, 10, 12, 0);
+
+        assertTrue(CronExpression.parse("0 12 * * 0").matches(sunday));
+        assertTrue(CronExpression.parse("0 12 * * 7").matches(sunday));
+    }
+
+    @Test
+    void restrictedDayFieldsMatchEitherDay() {
+        CronExpression cron = CronExpression.parse("0 0 1 * 1");
+
+        assertTrue(cron.matches(at(2024, 3, 1, 0, 0)));    // The 1st, a Friday
+        assertTrue(cron.matches(at(2024, 3, 11, 0, 0)));   // A Monday
+        assertFalse(cron.matches(at(2024, 3, 12, 0, 0)));
+    }
+
+    @Test
+    void lastDayOfMonth() {
+        CronExpression cron = CronExpression.parse("0 0 L * *");
+
+        assertTrue(cron.matches(at(2024, 2, 29, 0, 0)));
+        assertFalse(cron.matches(at(2023, 2, 27, 0, 0)));
+        assertTrue(cron.matches(at(2023, 2, 28, 0, 0)));
+        assertTrue(cron.matches(at(2024, 4, 30, 0, 0)));
+        assertFalse(cron.matches(at(2024, 3, 30, 0, 0)));
+    }
+
+    @Test
+    void daysBeforeLastDayOfMonth() {
+        CronExpression cron = CronExpression.parse("* * L-2,L-1,L,1,2 * *");
+
+        assertFalse(cron.matches(at(2024, 4, 27, 12, 0)));
+        assertTrue(cron.matches(at(2024, 4, 28, 12, 0)));
+        assertTrue(cron.matches(at(2024, 4, 29, 12, 0)));
+        assertTrue(cron.matches(at(2024, 4, 30, 12, 0)));
+        assertTrue(cron.matches(at(2024, 5, 1, 12, 0)));
+        assertTrue(cron.matches(at(2024, 5, 2, 12, 0)));
+        assertFalse(cron.matches(at(2024, 5, 3, 12, 0)));
+        assertTrue(cron.matches(at(2024, 2, 27, 12, 0)));  // L-2 of a leap February
+    }
+
+    @Test
+    void nextFindsFollowingMatch() {
+        CronExpression cron = CronExpression.parse("0 9 * * 1-5");
+
+        assertEquals(at(2024, 3, 5, 9, 0), cron.next(at(2024, 3, 4, 9, 0)));
+        assertEquals(at(2024, 3, 11, 9, 0), cron.next(at(2024, 3, 8, 17, 30)));
+    }
+
+    @Test
+    void nextFindsLastDayOfMonth() {
+        CronExpression cron = CronExpression.parse("30 23 L-1 * *");
+
+        assertEquals(at(2024, 2, 28, 23, 30), cron.next(at(2024, 2, 10, 0, 0)));
+        assertEquals(at(2024, 3, 30, 23, 30), cron.next(at(2024, 2, 28, 23, 30)));
+    }
+
+    @Test
+    void nextIsNullWhenNothingMatches() {
+        assertNull(CronExpression.parse("0 0 31 2 *").next(at(2024, 1, 1, 0, 0)));
+    }
+
+    @Test
+    void rejectsMalformedExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("60 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* 5-1 * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * L-x * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * * 0 *"));
+    }
+
+    private static ZonedDateTime at(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, ZONE);
+    }
+}
\ No newline at end of file
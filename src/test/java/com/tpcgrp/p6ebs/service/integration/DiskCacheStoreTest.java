@@ -0,0 +1,242 @@
+package com.tpcgrp.p6ebs.service.integration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskCacheStoreTest {
+
+    private static final int CAPACITY = 4096;
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void codecRoundTripsJdbcValueTypes() throws IOException {
+        Timestamp timestamp = new Timestamp(1_700_000_000_123L);
+        timestamp.setNanos(123_456_789);
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("name", "Activity \u00e9");
+        row.put("int", 42);
+        row.put("long", 1L << 40);
+        row.put("double", 2.5);
+        row.put("float", 1.25f);
+        row.put("boolean", true);
+        row.put("decimal", new BigDecimal("12345.6789"));
+        row.put("integer", new BigInteger("123456789012345678901234567890"));
+        row.put("timestamp", timestamp);
+        row.put("sqlDate", new java.sql.Date(1_700_000_000_000L));
+        row.put("date", new Date(1_700_000_000_000L));
+        row.put("null", null);
+        row.put("list", Arrays.asList(1, "two", null));
+
+        Object decoded = DiskCacheStore.decode(DiskCacheStore.encode(row));
+
+        assertEquals(row, decoded);
+        Map<?, ?> decodedRow = (Map<?, ?>) decoded;
+        assertEquals(Timestamp.class, decodedRow.get("timestamp").getClass());
+        assertEquals(123_456_789, ((Timestamp) decodedRow.get("timestamp")).getNanos());
+        assertEquals(java.sql.Date.class, decodedRow.get("sqlDate").getClass());
+        assertEquals(Date.class, decodedRow.get("date").getClass());
+        assertEquals(4, ((BigDecimal) decodedRow.get("decimal")).scale());
+    }
+
+    @Test
+    void codecRejectsUnsupportedTypes() {
+        assertThrows(IllegalArgumentException.class, () -> DiskCacheStore.encode(new Object()));
+    }
+
+    @Test
+    void unsupportedValueRemovesOlderValue() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+        store.put("key", "old", 1, NEVER);
+
+        assertFalse(store.put("key", new Object(), 2, NEVER));
+        assertNull(store.get("key"));
+        store.close();
+    }
+
+    @Test
+    void valuesSurviveReopen() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+        store.put("a", "first", 1, NEVER);
+        store.put("b", 2, 2, NEVER);
+        store.put("a", "second", 3, NEVER);
+        store.put("c", "removed", 4, NEVER);
+        store.remove("c");
+        store.setRegionEpoch("projects", 3);
+        store.close();
+
+        store = new DiskCacheStore(directory, CAPACITY);
+        assertEquals(2, store.size());
+        DiskCacheStore.StoredValue a = store.get("a");
+        assertEquals("second", a.getValue());
+        assertEquals(3, a.getWriteTime());
+        assertEquals(2, store.get("b").getValue());
+        assertNull(store.get("c"));
+        assertEquals(3, store.getRegionEpoch("projects"));
+        store.close();
+    }
+
+    @Test
+    void expiredValuesAreNotServed() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+        store.put("key", "value", 1, System.currentTimeMillis() - 1);
+
+        assertNull(store.get("key"));
+        store.close();
+    }
+
+    @Test
+    void storeIsLockedWhileOpen() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+
+        assertThrows(IOException.class, () -> new DiskCacheStore(directory, CAPACITY));
+        store.close();
+        new DiskCacheStore(directory, CAPACITY).close();
+    }
+
+    @Test
+    void corruptRecordFailsChecksumOnRead() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+        store.put("first", "one", 1, NEVER);
+        store.put("second", "two", 2, NEVER);
+
+        corrupt("second");
+
+        assertNull(store.get("second"));
+        assertEquals("one", store.get("first").getValue());
+        store.close();
+    }
+
+    @Test
+    void replayStopsAtFirstCorruptRecord() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+        store.put("first", "one", 1, NEVER);
+        store.put("second", "two", 2, NEVER);
+        store.put("third", "three", 3, NEVER);
+        store.close();
+
+        corrupt("second");
+
+        store = new DiskCacheStore(directory, CAPACITY);
+        assertEquals(1, store.size());
+        assertEquals("one", store.get("first").getValue());
+        assertNull(store.get("third"));
+
+        // New records are appended after the last valid one
+        store.put("fourth", "four", 4, NEVER);
+        store.close();
+        store = new DiskCacheStore(directory, CAPACITY);
+        assertEquals("four", store.get("fourth").getValue());
+        store.close();
+    }
+
+    @Test
+    void compactionKeepsLatestValues() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(store.put("key-" + (i % 3), "value-" + i, i, NEVER));
+        }
+
+        assertEquals(3, store.size());
+        assertEquals("value-499", store.get("key-1").getValue());
+        store.close();
+
+        store = new DiskCacheStore(directory, CAPACITY);
+        assertEquals(3, store.size());
+        assertEquals("value-497", store.get("key-2").getValue());
+        assertEquals("value-498", store.get("key-0").getValue());
+        assertEquals("value-499", store.get("key-1").getValue());
+        store.close();
+    }
+
+    @Test
+    void compactionDropsLeastRecentlyUsedWhenFull() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+        String padding = String.join("", Collections.nCopies(100, "x"));
+        for (int i = 0; i < 20; i++) {
+            store.put("key-" + i, padding, i, NEVER);
+        }
+        assertNotNull(store.get("key-0")); // Now the most recently used of the first twenty
+        for (int i = 20; i < 30; i++) {
+            store.put("key-" + i, padding, i, NEVER);
+        }
+
+        assertNotNull(store.get("key-0"));
+        assertNull(store.get("key-1"));
+        assertNotNull(store.get("key-29"));
+        assertTrue(store.size() < 30);
+        store.close();
+    }
+
+    @Test
+    void compactionDropsRecordsOfInvalidatedRegions() throws IOException {
+        DiskCacheStore store = new DiskCacheStore(directory, CAPACITY);
+        store.put("projects#0:p1", "stale", 1, NEVER);
+        store.put("projects#1:p1", "fresh", 2, NEVER);
+        store.setRegionEpoch("projects", 1);
+        for (int i = 0; i < 500; i++) {
+            store.put("other", "value-" + i, i, NEVER);
+        }
+        store.close();
+
+        store = new DiskCacheStore(directory, CAPACITY);
+        assertNull(store.get("projects#0:p1"));
+        assertEquals("fresh", store.get("projects#1:p1").getValue());
+        assertEquals(1, store.getRegionEpoch("projects"));
+        store.close();
+    }
+
+    /**
+     * Flip a byte of the key of the record for a key in whichever cache file holds it
+     */
+    private void corrupt(String key) throws IOException {
+        byte[] needle = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 2; i++) {
+            Path file = directory.resolve("cache-" + i + ".dat");
+            byte[] content = Files.readAllBytes(file);
+            int at = indexOf(content, needle);
+            if (at >= 0) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.wrap(new byte[] {(byte) (content[at] ^ 0x20)}), at);
+                }
+                return;
+            }
+        }
+        throw new AssertionError("No record for " + key);
+    }
+
+    private static int indexOf(byte[] content, byte[] needle) {
+        for (int i = 0; i + needle.length <= content.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(content, i, i + needle.length), needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,145 @@
+package com.tpcgrp.p6ebs.service.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogFileReaderTest {
+
+    @TempDir
+    Path directory;
+
+    private LogArchiver archiver;
+    private LogFileWriter writer;
+    private LogFileReader reader;
+
+    // Entries are a second apart, starting a minute ago so they fall in today's segment
+    private final long start = System.currentTimeMillis() - 60_000;
+
+    @BeforeEach
+    void setUp() {
+        archiver = new LogArchiver(directory, 1L << 30);
+        writer = new LogFileWriter(directory, archiver);
+        reader = new LogFileReader(directory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+        archiver.close();
+    }
+
+    @Test
+    void queryReturnsEntriesInTimeRangeOldestFirst() throws Exception {
+        write(0, 40, IntegrationLogService.LogLevel.INFO, "a");
+        LogFileWriter.LogPosition end = committedAfter(40);
+
+        List<IntegrationLogService.LogEntry> entries = reader.query(at(10), at(19),
+                IntegrationLogService.LogLevel.DEBUG, null, 100, end);
+
+        assertEquals(messages(10, 20), messagesOf(entries));
+    }
+
+    @Test
+    void queryFiltersLevelAndSession() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            write(i, i + 1, i % 3 == 0 ? IntegrationLogService.LogLevel.ERROR : IntegrationLogService.LogLevel.INFO,
+                    i % 2 == 0 ? "even" : "odd");
+        }
+        LogFileWriter.LogPosition end = committedAfter(30);
+
+        List<IntegrationLogService.LogEntry> entries = reader.query(at(0), at(29),
+                IntegrationLogService.LogLevel.ERROR, "even", 100, end);
+
+        assertEquals(List.of("m0", "m6", "m12", "m18", "m24"), messagesOf(entries));
+    }
+
+    @Test
+    void queryStopsAtLimit() throws Exception {
+        write(0, 20, IntegrationLogService.LogLevel.INFO, "a");
+        LogFileWriter.LogPosition end = committedAfter(20);
+
+        List<IntegrationLogService.LogEntry> entries = reader.query(at(0), at(19),
+                IntegrationLogService.LogLevel.DEBUG, null, 5, end);
+
+        assertEquals(messages(0, 5), messagesOf(entries));
+    }
+
+    @Test
+    void queryLeavesOutEntriesAfterCommittedEnd() throws Exception {
+        write(0, 10, IntegrationLogService.LogLevel.INFO, "a");
+        LogFileWriter.LogPosition end = committedAfter(10);
+        write(10, 20, IntegrationLogService.LogLevel.INFO, "a");
+        committedAfter(20);
+
+        List<IntegrationLogService.LogEntry> entries = reader.query(at(0), at(19),
+                IntegrationLogService.LogLevel.DEBUG, null, 100, end);
+
+        assertEquals(messages(0, 10), messagesOf(entries));
+    }
+
+    @Test
+    void recentReturnsNewestEntriesOldestFirst() throws Exception {
+        write(0, 20, IntegrationLogService.LogLevel.INFO, "a");
+        LogFileWriter.LogPosition end = committedAfter(20);
+
+        List<IntegrationLogService.LogEntry> entries = reader.recent(IntegrationLogService.LogLevel.DEBUG,
+                null, 3, end);
+
+        assertEquals(messages(17, 20), messagesOf(entries));
+    }
+
+    private void write(int from, int to, IntegrationLogService.LogLevel level, String sessionId) {
+        for (int i = from; i < to; i++) {
+            IntegrationLogService.LogEntry entry = new IntegrationLogService.LogEntry();
+            entry.setTimestamp(at(i));
+            entry.setLevel(level);
+            entry.setSessionId(sessionId);
+            entry.setMessage("m" + i);
+            writer.write(entry);
+        }
+    }
+
+    /**
+     * Wait for the writer to commit a number of entries and return the end of the log
+     */
+    private LogFileWriter.LogPosition committedAfter(long records) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            LogFileWriter.LogPosition end = writer.atCommitBoundary(() -> { });
+            if (end.getRecords() >= records || System.currentTimeMillis() > deadline) {
+                assertEquals(records, end.getRecords());
+                return end;
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private Date at(int second) {
+        return new Date(start + second * 1000L);
+    }
+
+    private static List<String> messages(int from, int to) {
+        List<String> messages = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            messages.add("m" + i);
+        }
+        return messages;
+    }
+
+    private static List<String> messagesOf(List<IntegrationLogService.LogEntry> entries) {
+        List<String> messages = new ArrayList<>();
+        for (IntegrationLogService.LogEntry entry : entries) {
+            messages.add(entry.getMessage());
+        }
+        return messages;
+    }
+}
\ No newline at end of file
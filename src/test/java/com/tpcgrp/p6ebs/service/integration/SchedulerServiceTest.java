@@ -0,0 +1,53 @@
+package com.tpcgrp.p6ebs.service.integration;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchedulerServiceTest {
+
+    private static final ZoneId ZONE = ZoneId.of("UTC");
+
+    // Weeknights from 22:00 to 06:00, and the last two days of every month
+    private static final List<String> WINDOWS = Arrays.asList("* 22-23,0-5 * * 1-5", "* * L-1,L * *");
+
+    @Test
+    void blackoutMatchesAnyWindow() {
+        assertTrue(SchedulerService.isInBlackout(WINDOWS, at(2024, 3, 5, 23, 15)));
+        assertTrue(SchedulerService.isInBlackout(WINDOWS, at(2024, 3, 5, 5, 59)));
+        assertTrue(SchedulerService.isInBlackout(WINDOWS, at(2024, 3, 30, 12, 0)));  // L-1, a Saturday
+        assertTrue(SchedulerService.isInBlackout(WINDOWS, at(2024, 3, 31, 12, 0)));
+    }
+
+    @Test
+    void blackoutLeavesOtherTimesOpen() {
+        assertFalse(SchedulerService.isInBlackout(WINDOWS, at(2024, 3, 5, 6, 0)));
+        assertFalse(SchedulerService.isInBlackout(WINDOWS, at(2024, 3, 5, 21, 59)));
+        assertFalse(SchedulerService.isInBlackout(WINDOWS, at(2024, 3, 9, 23, 0)));  // Saturday night
+        assertFalse(SchedulerService.isInBlackout(WINDOWS, at(2024, 3, 29, 12, 0)));
+    }
+
+    @Test
+    void invalidWindowsAreIgnored() {
+        List<String> windows = Arrays.asList("not a cron", "* 22-23 * * *");
+
+        assertTrue(SchedulerService.isInBlackout(windows, at(2024, 3, 5, 22, 30)));
+        assertFalse(SchedulerService.isInBlackout(windows, at(2024, 3, 5, 12, 0)));
+    }
+
+    @Test
+    void noWindowsMeansNoBlackout() {
+        assertFalse(SchedulerService.isInBlackout(Collections.emptyList(), at(2024, 3, 5, 23, 0)));
+    }
+
+    private static ZonedDateTime at(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, ZONE);
+    }
+}
\ No newline at end of file
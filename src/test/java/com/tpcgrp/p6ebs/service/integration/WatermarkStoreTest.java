@@ -0,0 +1,117 @@
+package com.tpcgrp.p6ebs.service.integration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WatermarkStoreTest {
+
+    private static final String TYPE = "ebsTasksToP6";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void commitsSurviveReopen() throws IOException {
+        WatermarkStore store = new WatermarkStore(directory);
+        Map<String, Date> advances = new HashMap<>();
+        advances.put("P1", new Date(1000));
+        advances.put("P2", new Date(2000));
+        advances.put(WatermarkStore.ALL_PARTITIONS, new Date(3000));
+        advances.put(WatermarkStore.LAST_RUN, new Date(3000));
+        store.commit(TYPE, advances);
+
+        store = new WatermarkStore(directory);
+        assertEquals(new Date(1000), store.getWatermark(TYPE, "P1"));
+        assertEquals(new Date(2000), store.getWatermark(TYPE, "P2"));
+        assertEquals(new Date(3000), store.getTypeWatermarks().get(TYPE));
+
+        Map<String, Date> partitions = store.getWatermarks(TYPE);
+        assertEquals(2, partitions.size());
+        assertTrue(partitions.containsKey("P1"));
+        assertTrue(partitions.containsKey("P2"));
+    }
+
+    @Test
+    void watermarksOnlyMoveForward() throws IOException {
+        WatermarkStore store = new WatermarkStore(directory);
+        store.commit(TYPE, Collections.singletonMap("P1", new Date(2000)));
+        store.commit(TYPE, Collections.singletonMap("P1", new Date(1000)));
+
+        assertEquals(new Date(2000), store.getWatermark(TYPE, "P1"));
+        assertEquals(new Date(2000), new WatermarkStore(directory).getWatermark(TYPE, "P1"));
+    }
+
+    @Test
+    void tornTailIsCutOffOnReplay() throws IOException {
+        WatermarkStore store = new WatermarkStore(directory);
+        store.commit(TYPE, Collections.singletonMap("P1", new Date(1000)));
+        store.commit(TYPE, Collections.singletonMap("P2", new Date(2000)));
+        long complete = Files.size(logFile());
+
+        // A commit that was cut short before its line end
+        Files.write(logFile(), "1a2b3c {\"sequence\":3,\"type\":\"ebsTasks".getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.APPEND);
+
+        store = new WatermarkStore(directory);
+        assertEquals(new Date(1000), store.getWatermark(TYPE, "P1"));
+        assertEquals(new Date(2000), store.getWatermark(TYPE, "P2"));
+        assertEquals(complete, Files.size(logFile()));
+
+        // Later commits start on a fresh line and replay
+        store.commit(TYPE, Collections.singletonMap("P3", new Date(3000)));
+        store = new WatermarkStore(directory);
+        assertEquals(new Date(3000), store.getWatermark(TYPE, "P3"));
+    }
+
+    @Test
+    void replayStopsAtRecordFailingItsChecksum() throws IOException {
+        WatermarkStore store = new WatermarkStore(directory);
+        store.commit(TYPE, Collections.singletonMap("P1", new Date(1000)));
+        store.commit(TYPE, Collections.singletonMap("P2", new Date(2000)));
+        store.commit(TYPE, Collections.singletonMap("P3", new Date(3000)));
+
+        // Change the second record's watermark without updating its checksum
+        String log = new String(Files.readAllBytes(logFile()), StandardCharsets.US_ASCII);
+        Files.write(logFile(), log.replace("\"P2\":2000", "\"P2\":2001").getBytes(StandardCharsets.US_ASCII));
+
+        store = new WatermarkStore(directory);
+        assertEquals(new Date(1000), store.getWatermark(TYPE, "P1"));
+        assertNull(store.getWatermark(TYPE, "P2"));
+        assertNull(store.getWatermark(TYPE, "P3"));
+    }
+
+    @Test
+    void checkpointEmptiesLogAndKeepsWatermarks() throws IOException {
+        WatermarkStore store = new WatermarkStore(directory);
+        for (int i = 1; i <= 150; i++) {
+            store.commit(TYPE, Collections.singletonMap("P" + (i % 10), new Date(i)));
+        }
+
+        assertTrue(Files.exists(directory.resolve("watermarks.json")));
+        long logLines = Files.readAllLines(logFile()).size();
+        assertEquals(50, logLines);
+
+        store = new WatermarkStore(directory);
+        assertEquals(new Date(150), store.getWatermark(TYPE, "P0"));
+        assertEquals(new Date(141), store.getWatermark(TYPE, "P1"));
+        assertEquals(new Date(149), store.getWatermark(TYPE, "P9"));
+    }
+
+    private Path logFile() {
+        return directory.resolve("watermarks.wal");
+    }
+}
\ No newline at end of file